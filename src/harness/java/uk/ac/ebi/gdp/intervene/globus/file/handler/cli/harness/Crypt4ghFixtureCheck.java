@@ -0,0 +1,111 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.harness;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghInputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghPrivateKey;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Known answer check of the native crypt4gh decryption against files encrypted by the reference crypt4gh
+ * tool, generated by {@code src/harness/resources/crypt4gh-fixtures.sh}. Every file is decrypted on the
+ * reading thread and with parallel segment decryption, the plaintext has to match the expected one byte
+ * for byte and the tampered file has to be rejected.
+ */
+final class Crypt4ghFixtureCheck {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Crypt4ghFixtureCheck.class);
+    private static final int REORDER_WINDOW = 4;
+
+    private record Fixture(String name,
+                           String encryptedFile,
+                           Crypt4ghPrivateKey privateKey,
+                           String expectedFile) {
+    }
+
+    private Crypt4ghFixtureCheck() {
+    }
+
+    /**
+     * @param fixtures directory written by the fixture script.
+     * @return true if every fixture is decrypted as expected.
+     * @throws IOException in case a fixture or key cannot be read.
+     */
+    static boolean check(final Path fixtures) throws IOException {
+        final Crypt4ghPrivateKey privateKey = Crypt4ghPrivateKey.load(fixtures.resolve("nopass.sec"), null);
+        final Crypt4ghPrivateKey protectedPrivateKey = Crypt4ghPrivateKey.load(fixtures.resolve("pass.sec"),
+                Files.readString(fixtures.resolve("pass.txt"), US_ASCII).strip().toCharArray());
+        final List<Fixture> decryptedFixtures = List.of(
+                new Fixture("unprotected key, partial last segment", "nopass.c4gh", privateKey, "plain.bin"),
+                new Fixture("scrypt protected key", "pass.c4gh", protectedPrivateKey, "plain.bin"),
+                new Fixture("multiple header packets", "multi.c4gh", privateKey, "plain.bin"),
+                new Fixture("edit list", "range.c4gh", privateKey, "range.bin"));
+        final Fixture tamperedFixture = new Fixture("tampered segment", "tampered.c4gh", privateKey, null);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(REORDER_WINDOW);
+        try {
+            boolean passed = true;
+            for (final ExecutorService decryptionExecutor : Arrays.asList(null, executorService)) {
+                final String mode = decryptionExecutor == null ? "sequential" : "parallel";
+                for (final Fixture fixture : decryptedFixtures) {
+                    final byte[] expected = Files.readAllBytes(fixtures.resolve(fixture.expectedFile()));
+                    final byte[] actual = decrypt(fixtures.resolve(fixture.encryptedFile()), fixture.privateKey(), decryptionExecutor);
+                    final int mismatch = Arrays.mismatch(expected, actual);
+                    if (mismatch == -1) {
+                        LOGGER.info("Crypt4gh fixture {} ({}): {} bytes match", fixture.name(), mode, actual.length);
+                    } else {
+                        LOGGER.error("Crypt4gh fixture {} ({}): {} bytes expected, {} decrypted, first mismatch at byte {}",
+                                fixture.name(), mode, expected.length, actual.length, mismatch);
+                        passed = false;
+                    }
+                }
+                try {
+                    decrypt(fixtures.resolve(tamperedFixture.encryptedFile()), tamperedFixture.privateKey(), decryptionExecutor);
+                    LOGGER.error("Crypt4gh fixture {} ({}): decrypted instead of rejected", tamperedFixture.name(), mode);
+                    passed = false;
+                } catch (IOException e) {
+                    LOGGER.info("Crypt4gh fixture {} ({}): rejected, {}", tamperedFixture.name(), mode, e.getMessage());
+                }
+            }
+            return passed;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static byte[] decrypt(final Path encryptedFile,
+                                  final Crypt4ghPrivateKey privateKey,
+                                  final ExecutorService executorService) throws IOException {
+        try (final InputStream inputStream = new Crypt4ghInputStream(Files.newInputStream(encryptedFile), privateKey,
+                executorService, executorService == null ? 0 : REORDER_WINDOW, TransferMetrics.noop())) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
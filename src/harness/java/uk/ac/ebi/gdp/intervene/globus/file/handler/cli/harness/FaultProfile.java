@@ -0,0 +1,46 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.harness;
+
+/**
+ * Faults injected by {@link MockGlobusServer} into the responses of file requests.
+ *
+ * @param latencyMillis        delay before the response headers are sent.
+ * @param bytesPerSecond       bandwidth of each response, 0 for unlimited.
+ * @param errorRate            fraction of requests answered with a 503.
+ * @param disconnectRate       fraction of responses cut before their end.
+ * @param disconnectAfterBytes number of bytes sent before a response is cut.
+ */
+public record FaultProfile(long latencyMillis,
+                           long bytesPerSecond,
+                           double errorRate,
+                           double disconnectRate,
+                           long disconnectAfterBytes) {
+    public FaultProfile {
+        if (latencyMillis < 0 || bytesPerSecond < 0 || disconnectAfterBytes < 0) {
+            throw new IllegalArgumentException("Latency, bandwidth and disconnect offset cannot be negative");
+        }
+        if (errorRate < 0 || errorRate > 1 || disconnectRate < 0 || disconnectRate > 1) {
+            throw new IllegalArgumentException("Error and disconnect rates should be between 0 and 1");
+        }
+    }
+
+    public static FaultProfile none() {
+        return new FaultProfile(0, 0, 0, 0, 0);
+    }
+}
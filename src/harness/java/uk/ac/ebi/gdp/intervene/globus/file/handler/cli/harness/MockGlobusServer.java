@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Local HTTPS server standing in for a Globus guest collection and auth.globus.org. It serves a single
+ * file at any path, honouring {@code Range} requests, issues client credentials tokens and injects the
+ * faults of its {@link FaultProfile} into file responses. The certificate is self-signed for
+ * {@code localhost}, {@link #getKeyStore()} is meant to be used as the client trust store.
+ */
+public class MockGlobusServer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MockGlobusServer.class);
+    public static final String TOKEN_PATH = "/v2/oauth2/token";
+    public static final char[] KEY_STORE_PASSWORD = "changeit".toCharArray();
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final String BEARER = "Bearer ";
+    private static final int WRITE_SIZE = 16 * 1024;
+
+    private final HttpsServer server;
+    private final ExecutorService executorService;
+    private final Path keyStore;
+    private final Path file;
+    private final long fileSize;
+    private final FaultProfile faultProfile;
+    private final long tokenTtlSeconds;
+    private final String accessToken;
+    private final AtomicLong tokenRequests = new AtomicLong();
+    private final AtomicLong fileRequests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedDisconnects = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    /**
+     * @param file            file served at every path.
+     * @param faultProfile    faults injected into file responses.
+     * @param tokenTtlSeconds lifetime of the issued access tokens.
+     * @throws Exception in case the certificate cannot be generated or the server cannot be started.
+     */
+    public MockGlobusServer(final Path file,
+                            final FaultProfile faultProfile,
+                            final long tokenTtlSeconds) throws Exception {
+        this.file = file;
+        this.fileSize = Files.size(file);
+        this.faultProfile = faultProfile;
+        this.tokenTtlSeconds = tokenTtlSeconds;
+        this.accessToken = UUID.randomUUID().toString();
+        this.keyStore = generateKeyStore();
+        this.executorService = newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "mock-globus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext(keyStore)));
+        server.setExecutor(executorService);
+        server.createContext(TOKEN_PATH, this::handleToken);
+        server.createContext("/", this::handleFile);
+        server.start();
+        LOGGER.info("Mock Globus server listening on {}, serving {} ({} bytes)", getBaseURL(), file, fileSize);
+    }
+
+    public String getBaseURL() {
+        return "https://localhost:%s".formatted(server.getAddress().getPort());
+    }
+
+    public String getTokenURL() {
+        return getBaseURL() + TOKEN_PATH;
+    }
+
+    public Path getKeyStore() {
+        return keyStore;
+    }
+
+    public long getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public long getFileRequests() {
+        return fileRequests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getInjectedDisconnects() {
+        return injectedDisconnects.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    private void handleToken(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            tokenRequests.incrementAndGet();
+            final byte[] body = """
+                    {"access_token":"%s","token_type":"Bearer","expires_in":%s,"scope":"harness"}"""
+                    .formatted(accessToken, tokenTtlSeconds)
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private void handleFile(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            fileRequests.incrementAndGet();
+            final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !authorization.equals(BEARER + accessToken)) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            sleep(faultProfile.latencyMillis());
+            if (ThreadLocalRandom.current().nextDouble() < faultProfile.errorRate()) {
+                injectedErrors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            long start = 0;
+            long end = fileSize - 1;
+            int status = 200;
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                final Matcher matcher = RANGE.matcher(range);
+                if (!matcher.matches()) {
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                start = Long.parseLong(matcher.group(1));
+                end = matcher.group(2).isEmpty() ? fileSize - 1 : Math.min(Long.parseLong(matcher.group(2)), fileSize - 1);
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes %s-%s/%s".formatted(start, end, fileSize));
+            }
+            final long length = end - start + 1;
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, length);
+            final long cutAt = ThreadLocalRandom.current().nextDouble() < faultProfile.disconnectRate() ?
+                    Math.min(faultProfile.disconnectAfterBytes(), length - 1) : length;
+            send(exchange.getResponseBody(), start, length, cutAt);
+        }
+    }
+
+    private void send(final OutputStream outputStream,
+                      final long start,
+                      final long length,
+                      final long cutAt) throws IOException {
+        final byte[] buffer = new byte[WRITE_SIZE];
+        final long startNanos = System.nanoTime();
+        long sent = 0;
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "r")) {
+            randomAccessFile.seek(start);
+            while (sent < cutAt) {
+                final int read = randomAccessFile.read(buffer, 0, (int) Math.min(buffer.length, cutAt - sent));
+                outputStream.write(buffer, 0, read);
+                sent += read;
+                bytesServed.addAndGet(read);
+                throttle(sent, startNanos);
+            }
+        }
+        if (sent < length) {
+            injectedDisconnects.incrementAndGet();
+            outputStream.flush();
+            // Failing the exchange with bytes still owed makes the server drop the connection
+            throw new IOException("Injected disconnect after %s of %s bytes".formatted(sent, length));
+        }
+    }
+
+    private void throttle(final long sent,
+                          final long startNanos) {
+        if (faultProfile.bytesPerSecond() == 0) {
+            return;
+        }
+        final long dueNanos = startNanos + sent * 1_000_000_000L / faultProfile.bytesPerSecond();
+        final long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            sleep(waitNanos / 1_000_000);
+        }
+    }
+
+    private static void sleep(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Path generateKeyStore() throws IOException, InterruptedException {
+        final Path keyStore = Files.createTempFile("mock-globus", ".p12");
+        Files.delete(keyStore);
+        keyStore.toFile().deleteOnExit();
+        final Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "localhost", "-keyalg", "EC", "-validity", "1",
+                "-dname", "CN=localhost", "-ext", "san=dns:localhost,ip:127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+                "-storepass", new String(KEY_STORE_PASSWORD))
+                .redirectErrorStream(true)
+                .start();
+        final String output;
+        try (final InputStream inputStream = process.getInputStream()) {
+            output = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("Unable to generate the mock server certificate: " + output);
+        }
+        return keyStore;
+    }
+
+    private static SSLContext sslContext(final Path keyStorePath) throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (final InputStream inputStream = Files.newInputStream(keyStorePath)) {
+            keyStore.load(inputStream, KEY_STORE_PASSWORD);
+        }
+        final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEY_STORE_PASSWORD);
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return sslContext;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.harness;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingInitializationContext;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import uk.ac.ebi.gdp.file.handler.core.properties.WebClientProperties;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.config.GlobusOauth2ClientConfig;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.config.RetryTemplateConfig;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listener.BytesTransferredListener;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.properties.WebClientTuningProperties;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.Crypt4gh;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.DefaultGlobusFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.DirectBufferPool;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.GlobusCrypt4ghLocalFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.TransferOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static uk.ac.ebi.gdp.file.handler.core.utils.Checksum.getMD5MessageDigest;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.SUCCESS;
+
+/**
+ * Offline end to end harness: downloads a file from a {@link MockGlobusServer} with the same web client,
+ * OAuth2 client credentials flow, retry template and transfers as the application, then reports the
+ * throughput and retry behaviour of every run. Run with {@code mvn -P harness verify -Dharness.args="..."},
+ * {@code -h} lists the options.
+ */
+public final class TransferHarness {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferHarness.class);
+    private static final double BYTES_TO_MIB = 1024 * 1024;
+    private static final String CLIENT_ID = "harness";
+    private static final int READ_SIZE = 1024 * 1024;
+
+    private TransferHarness() {
+    }
+
+    public static void main(final String... args) throws Exception {
+        initLogging();
+        final OptionParser parser = new OptionParser();
+        final OptionSpec<Void> help = parser.accepts("h", "Display help").forHelp();
+        final OptionSpec<String> fileOption = parser.accepts("file", "File served by the mock server, a random file of --size bytes otherwise (required with --crypt4gh-bin, encrypted)").withRequiredArg();
+        final OptionSpec<String> sizeOption = parser.accepts("size", "Size of the generated file").withRequiredArg().defaultsTo("256MB");
+        final OptionSpec<Integer> runsOption = parser.accepts("runs", "Number of downloads").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+        final OptionSpec<Long> latencyOption = parser.accepts("latency", "Milliseconds before each response").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+        final OptionSpec<String> bandwidthOption = parser.accepts("bandwidth", "Bandwidth of each response per second, 0 for unlimited").withRequiredArg().defaultsTo("0");
+        final OptionSpec<Double> errorRateOption = parser.accepts("error-rate", "Fraction of file requests answered with a 503").withRequiredArg().ofType(Double.class).defaultsTo(0.0);
+        final OptionSpec<Double> disconnectRateOption = parser.accepts("disconnect-rate", "Fraction of file responses cut before their end").withRequiredArg().ofType(Double.class).defaultsTo(0.0);
+        final OptionSpec<String> disconnectAfterOption = parser.accepts("disconnect-after", "Bytes sent before a response is cut").withRequiredArg().defaultsTo("16MB");
+        final OptionSpec<Long> tokenTtlOption = parser.accepts("token-ttl", "Lifetime of the access tokens in seconds").withRequiredArg().ofType(Long.class).defaultsTo(3600L);
+        final OptionSpec<Integer> streamsOption = parser.accepts("streams", "Parallel range streams per file").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        final OptionSpec<String> chunkSizeOption = parser.accepts("chunk-size", "Range size of parallel downloads").withRequiredArg().defaultsTo("64MB");
+        final OptionSpec<Integer> bufferSizeOption = parser.accepts("buffer-size", "Copy buffer size in bytes").withRequiredArg().ofType(Integer.class).defaultsTo(8192);
+        final OptionSpec<Integer> pipeSizeOption = parser.accepts("pipe-size", "Web client pipe size in bytes").withRequiredArg().ofType(Integer.class).defaultsTo(8192);
+        final OptionSpec<Integer> directBufferSizeOption = parser.accepts("direct-buffer-size", "Direct buffer size in bytes, 0 to copy through streams").withRequiredArg().ofType(Integer.class).defaultsTo(1024 * 1024);
+        final OptionSpec<Integer> retryAttemptsOption = parser.accepts("retry-attempts", "Maximum attempts of each request").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+        final OptionSpec<Long> retryBackOffOption = parser.accepts("retry-back-off", "Milliseconds between two attempts").withRequiredArg().ofType(Long.class).defaultsTo(2000L);
+        final OptionSpec<String> crypt4ghBinOption = parser.accepts("crypt4gh-bin", "crypt4gh executable, downloads through GlobusCrypt4ghLocalFileTransfer").withRequiredArg();
+        final OptionSpec<String> privateKeyOption = parser.accepts("sk", "Crypt4gh private key, copied for every run").requiredIf(crypt4ghBinOption).withRequiredArg();
+        final OptionSpec<String> outputOption = parser.accepts("output", "Directory of the downloaded files").withRequiredArg();
+        final OptionSpec<String> crypt4ghFixturesOption = parser.accepts("crypt4gh-fixtures", "Directory of the crypt4gh known answer fixtures, checked instead of running downloads").withRequiredArg();
+        final OptionSet options = parser.parse(args);
+        if (options.has(help)) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+        if (options.has(crypt4ghFixturesOption)) {
+            System.exit(Crypt4ghFixtureCheck.check(Path.of(options.valueOf(crypt4ghFixturesOption))) ? 0 : 1);
+        }
+
+        final boolean crypt4gh = options.has(crypt4ghBinOption);
+        if (crypt4gh && !options.has(fileOption)) {
+            throw new IllegalArgumentException("--crypt4gh-bin requires an encrypted --file");
+        }
+        final Path file = options.has(fileOption) ?
+                Path.of(options.valueOf(fileOption)) : generateFile(DataSize.parse(options.valueOf(sizeOption)).toBytes());
+        final long fileSize = Files.size(file);
+        final String expectedChecksum = crypt4gh ? null : "md5:" + md5(file);
+        final Path outputDirectory = options.has(outputOption) ?
+                Files.createDirectories(Path.of(options.valueOf(outputOption))) : Files.createTempDirectory("harness");
+
+        final FaultProfile faultProfile = new FaultProfile(
+                options.valueOf(latencyOption),
+                DataSize.parse(options.valueOf(bandwidthOption)).toBytes(),
+                options.valueOf(errorRateOption),
+                options.valueOf(disconnectRateOption),
+                DataSize.parse(options.valueOf(disconnectAfterOption)).toBytes());
+
+        final List<RunResult> results = new ArrayList<>();
+        try (final MockGlobusServer server = new MockGlobusServer(file, faultProfile, options.valueOf(tokenTtlOption))) {
+            trust(server.getKeyStore());
+            final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            final TransferMetrics transferMetrics = new TransferMetrics(registry, Duration.ofSeconds(1));
+            final RetryTemplate retryTemplate = new RetryTemplateConfig().fixedDelayRetryTemplate(
+                    options.valueOf(retryBackOffOption), options.valueOf(retryAttemptsOption), 300000,
+                    Optional.empty(), transferMetrics);
+            final WebClient webClient = webClient(server, options.valueOf(pipeSizeOption));
+            final ScheduledExecutorService progressExecutorService = Executors.newSingleThreadScheduledExecutor();
+            try {
+                for (int run = 1; run <= options.valueOf(runsOption); run++) {
+                    final IGlobusFileTransfer transfer = crypt4gh ?
+                            new GlobusCrypt4ghLocalFileTransfer(
+                                    webClient,
+                                    retryTemplate,
+                                    options.valueOf(pipeSizeOption),
+                                    Crypt4gh.builder(Path.of(options.valueOf(crypt4ghBinOption)),
+                                            copyPrivateKey(Path.of(options.valueOf(privateKeyOption)), outputDirectory)).build(),
+                                    List.of("/bin/bash", "-c"),
+                                    options.valueOf(bufferSizeOption),
+                                    TransferOptions.builder()
+                                            .transferMetrics(transferMetrics)
+                                            .build()) :
+                            new DefaultGlobusFileTransfer(
+                                    webClient,
+                                    retryTemplate,
+                                    options.valueOf(pipeSizeOption),
+                                    options.valueOf(bufferSizeOption),
+                                    TransferOptions.builder()
+                                            .parallelism(options.valueOf(streamsOption))
+                                            .chunkSize(DataSize.parse(options.valueOf(chunkSizeOption)).toBytes())
+                                            .directBufferPool(options.valueOf(directBufferSizeOption) > 0 ? new DirectBufferPool(options.valueOf(directBufferSizeOption), 4) : null)
+                                            .transferMetrics(transferMetrics)
+                                            .build());
+                    final URI destination = outputDirectory.resolve("run-%s.out".formatted(run)).toUri();
+                    final double retriesBefore = retries(registry);
+                    final long fileRequestsBefore = server.getFileRequests();
+                    final long startNanos = System.nanoTime();
+                    final ApplicationStatus status;
+                    try (final BytesTransferredListener progressListener = new BytesTransferredListener(file.getFileName().toString(), progressExecutorService)) {
+                        status = transfer.downloadFile(URI.create("globus:///harness/" + file.getFileName()), destination,
+                                fileSize, expectedChecksum, progressListener);
+                    }
+                    final RunResult result = new RunResult(run, status, fileSize, System.nanoTime() - startNanos,
+                            (long) (retries(registry) - retriesBefore), server.getFileRequests() - fileRequestsBefore);
+                    LOGGER.info("{}", result);
+                    results.add(result);
+                    Files.deleteIfExists(Path.of(destination));
+                }
+            } finally {
+                progressExecutorService.shutdownNow();
+            }
+            report(results, server, faultProfile);
+        }
+        System.exit(results.stream().allMatch(result -> result.status() == SUCCESS) ? 0 : 1);
+    }
+
+    private record RunResult(int run,
+                             ApplicationStatus status,
+                             long fileSize,
+                             long durationNanos,
+                             long retries,
+                             long requests) {
+        double throughput() {
+            return fileSize / BYTES_TO_MIB / (durationNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return "Run %s: %s, %.1f MiB/s, %.2f s, %s retries, %s requests"
+                    .formatted(run, status, throughput(), durationNanos / 1e9, retries, requests);
+        }
+    }
+
+    private static void report(final List<RunResult> results,
+                               final MockGlobusServer server,
+                               final FaultProfile faultProfile) {
+        final double[] throughputs = results.stream()
+                .filter(result -> result.status() == SUCCESS)
+                .mapToDouble(RunResult::throughput)
+                .sorted()
+                .toArray();
+        LOGGER.info("Faults: {}", faultProfile);
+        LOGGER.info("Succeeded: {}/{}, throughput MiB/s min: {}, median: {}, max: {}",
+                throughputs.length, results.size(),
+                throughputs.length == 0 ? "-" : "%.1f".formatted(throughputs[0]),
+                throughputs.length == 0 ? "-" : "%.1f".formatted(throughputs[throughputs.length / 2]),
+                throughputs.length == 0 ? "-" : "%.1f".formatted(throughputs[throughputs.length - 1]));
+        LOGGER.info("Retries: {}, file requests: {}, token requests: {}, injected 503s: {}, injected disconnects: {}, bytes served: {}",
+                results.stream().mapToLong(RunResult::retries).sum(), server.getFileRequests(), server.getTokenRequests(),
+                server.getInjectedErrors(), server.getInjectedDisconnects(), server.getBytesServed());
+    }
+
+    private static WebClient webClient(final MockGlobusServer server,
+                                       final int pipeSize) {
+        final WebClientProperties webClientProperties = new Binder(new MapConfigurationPropertySource(Map.of(
+                "webclient.connection.pipe-size", pipeSize,
+                "webclient.connection.connection-timeout", 5,
+                "webclient.connection.socket-timeout", 0,
+                "webclient.connection.read-write-timeout", 30000)))
+                .bind("webclient.connection", Bindable.ofInstance(new WebClientProperties()))
+                .get();
+        final GlobusOauth2ClientConfig config = new GlobusOauth2ClientConfig();
+        final ReactiveClientRegistrationRepository clientRegistrationRepository =
+                config.getRegistration(server.getTokenURL(), CLIENT_ID, CLIENT_ID, CLIENT_ID, CLIENT_ID);
+        final ReactiveOAuth2AuthorizedClientService authorizedClientService =
+                config.reactiveOAuth2AuthorizedClientService(clientRegistrationRepository);
+        final WebClientTuningProperties webClientTuningProperties = new WebClientTuningProperties();
+        return config.globusWebClient(config.authorizedClientManager(clientRegistrationRepository, authorizedClientService, Optional.empty()),
+                webClientProperties, webClientTuningProperties, config.globusConnectionProvider(webClientTuningProperties),
+                server.getBaseURL());
+    }
+
+    /**
+     * Reactor Netty builds its default client SSL context from the JVM trust store, including the one
+     * used by Spring Security to fetch tokens.
+     */
+    private static void trust(final Path keyStore) {
+        System.setProperty("javax.net.ssl.trustStore", keyStore.toString());
+        System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+        System.setProperty("javax.net.ssl.trustStorePassword", new String(MockGlobusServer.KEY_STORE_PASSWORD));
+    }
+
+    private static double retries(final SimpleMeterRegistry registry) {
+        return registry.get("globus.transfer.retries").counter().count();
+    }
+
+    private static Path generateFile(final long size) throws IOException {
+        final Path file = Files.createTempFile("harness", ".bin");
+        file.toFile().deleteOnExit();
+        final Random random = new Random(size);
+        final byte[] buffer = new byte[READ_SIZE];
+        try (final OutputStream outputStream = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                outputStream.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    private static String md5(final Path file) throws IOException {
+        final MessageDigest messageDigest = getMD5MessageDigest();
+        try (final InputStream inputStream = new DigestInputStream(Files.newInputStream(file), messageDigest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+
+    /**
+     * The crypt4gh command removes the private key once the file is decrypted.
+     */
+    private static Path copyPrivateKey(final Path privateKey,
+                                       final Path outputDirectory) throws IOException {
+        return Files.copy(privateKey, outputDirectory.resolve(privateKey.getFileName()), REPLACE_EXISTING);
+    }
+
+    private static void initLogging() {
+        final LoggingSystem loggingSystem = LoggingSystem.get(TransferHarness.class.getClassLoader());
+        loggingSystem.beforeInitialize();
+        loggingSystem.initialize(new LoggingInitializationContext(new StandardEnvironment()), null, null);
+        loggingSystem.setLogLevel("io.netty", LogLevel.WARN);
+        loggingSystem.setLogLevel("reactor", LogLevel.WARN);
+    }
+}
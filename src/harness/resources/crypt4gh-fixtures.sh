@@ -0,0 +1,39 @@
+#!/bin/bash
+#
+# Generates the crypt4gh known answer fixtures checked by the harness with --crypt4gh-fixtures, using the
+# reference crypt4gh tool (pip install crypt4gh): crypt4gh-fixtures.sh {fixtures directory}
+#
+set -euo pipefail
+
+SEGMENT_SIZE=65536
+CIPHER_SEGMENT_SIZE=$((SEGMENT_SIZE + 28))
+PLAIN_SIZE=$((3 * SEGMENT_SIZE + 3392))
+PASSPHRASE=harness
+
+FIXTURES=${1:?"Usage: $0 {fixtures directory}"}
+mkdir -p "${FIXTURES}"
+cd "${FIXTURES}"
+
+# Plaintext ending with a partial segment
+head -c "${PLAIN_SIZE}" /dev/urandom > plain.bin
+
+crypt4gh-keygen -f --nocrypt --sk nopass.sec --pk nopass.pub
+crypt4gh-keygen -f --nocrypt --sk other.sec --pk other.pub
+printf '%s' "${PASSPHRASE}" > pass.txt
+# Protected with scrypt, the default key derivation of crypt4gh-keygen
+C4GH_PASSPHRASE=${PASSPHRASE} crypt4gh-keygen -f --sk pass.sec --pk pass.pub
+
+crypt4gh encrypt --recipient_pk nopass.pub < plain.bin > nopass.c4gh
+crypt4gh encrypt --recipient_pk pass.pub < plain.bin > pass.c4gh
+# One header packet per recipient, the first one can't be decrypted with nopass.sec
+crypt4gh encrypt --recipient_pk other.pub --recipient_pk nopass.pub < plain.bin > multi.c4gh
+# Edit list packet starting and ending inside a segment, the expected plaintext is the one of the reference tool
+crypt4gh rearrange --sk nopass.sec --range 70000-150000 < nopass.c4gh > range.c4gh
+crypt4gh decrypt --sk nopass.sec < range.c4gh > range.bin
+
+# One byte of the second segment flipped
+cp nopass.c4gh tampered.c4gh
+DATA_SIZE=$(((PLAIN_SIZE / SEGMENT_SIZE) * CIPHER_SEGMENT_SIZE + PLAIN_SIZE % SEGMENT_SIZE + 28))
+OFFSET=$(($(stat -c %s tampered.c4gh) - DATA_SIZE + CIPHER_SEGMENT_SIZE + 1000))
+BYTE=$(od -An -tu1 -j "${OFFSET}" -N1 tampered.c4gh | tr -d ' ')
+printf "\\$(printf '%03o' $((BYTE ^ 0xff)))" | dd of=tampered.c4gh bs=1 seek="${OFFSET}" conv=notrunc status=none
@@ -0,0 +1,65 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Sources and sinks shared by the benchmarks. Files are created on tmpfs ({@code /dev/shm} unless the
+ * {@code benchmark.tmpfs} system property says otherwise) so that the page cache, not the disk, is measured.
+ */
+final class BenchmarkData {
+    private static final String TMPFS_PROPERTY = "benchmark.tmpfs";
+    private static final Path DEFAULT_TMPFS = Path.of("/dev/shm");
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    enum Source {
+        MEMORY,
+        TMPFS
+    }
+
+    enum Sink {
+        NULL,
+        TMPFS
+    }
+
+    static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(SEED).nextBytes(bytes);
+        return bytes;
+    }
+
+    static Path tmpfsFile(final String prefix) throws IOException {
+        final String configured = System.getProperty(TMPFS_PROPERTY);
+        final Path directory = configured != null ? Path.of(configured) :
+                Files.isDirectory(DEFAULT_TMPFS) ? DEFAULT_TMPFS : Path.of(System.getProperty("java.io.tmpdir"));
+        return Files.createTempFile(directory, prefix, ".bin");
+    }
+
+    static OutputStream openSink(final Sink sink,
+                                 final Path sinkFile) throws IOException {
+        return sink == Sink.TMPFS ? Files.newOutputStream(sinkFile) : OutputStream.nullOutputStream();
+    }
+}
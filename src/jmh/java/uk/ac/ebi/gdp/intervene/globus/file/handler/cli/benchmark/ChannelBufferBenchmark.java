@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculator;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculatorFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.DirectBufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm.MD5;
+
+/**
+ * Copies a file into a {@link FileChannel} through a heap buffer or a pooled direct buffer, as done by
+ * {@code FileChannelSink}, optionally feeding the same buffer to an MD5 calculator. The score is the time
+ * to copy {@code fileSize} bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChannelBufferBenchmark {
+
+    public enum BufferType {
+        HEAP,
+        DIRECT
+    }
+
+    @Param({"8192", "65536", "262144", "1048576"})
+    private int bufferSize;
+
+    @Param({"67108864"})
+    private int fileSize;
+
+    @Param({"MEMORY", "TMPFS"})
+    private BenchmarkData.Source source;
+
+    @Param({"HEAP", "DIRECT"})
+    private BufferType bufferType;
+
+    @Param({"false", "true"})
+    private boolean checksum;
+
+    private byte[] content;
+    private Path sourceFile;
+    private Path sinkFile;
+    private DirectBufferPool directBufferPool;
+    private ChecksumCalculatorFactory checksumCalculatorFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        content = BenchmarkData.randomBytes(fileSize);
+        sourceFile = BenchmarkData.tmpfsFile("channel-source");
+        Files.write(sourceFile, content);
+        sinkFile = BenchmarkData.tmpfsFile("channel-sink");
+        directBufferPool = new DirectBufferPool(bufferSize, 1);
+        checksumCalculatorFactory = new ChecksumCalculatorFactory(List.of(MD5), false, bufferSize, 8, TransferMetrics.noop());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(sourceFile);
+        Files.deleteIfExists(sinkFile);
+    }
+
+    @Benchmark
+    public void copy(final Blackhole blackhole) throws Exception {
+        final ByteBuffer buffer = bufferType == BufferType.DIRECT ? directBufferPool.acquire() : ByteBuffer.allocate(bufferSize);
+        try (final ReadableByteChannel sourceChannel = openSource();
+             final FileChannel sinkChannel = FileChannel.open(sinkFile, WRITE, TRUNCATE_EXISTING);
+             final ChecksumCalculator checksumCalculator = checksum ? checksumCalculatorFactory.create() : null) {
+            while (sourceChannel.read(buffer.clear()) != -1) {
+                buffer.flip();
+                if (checksumCalculator != null) {
+                    checksumCalculator.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    sinkChannel.write(buffer);
+                }
+            }
+            if (checksumCalculator != null) {
+                blackhole.consume(checksumCalculator.finish());
+            }
+        } finally {
+            if (bufferType == BufferType.DIRECT) {
+                directBufferPool.release(buffer);
+            }
+        }
+    }
+
+    private ReadableByteChannel openSource() throws IOException {
+        return source == BenchmarkData.Source.TMPFS ?
+                FileChannel.open(sourceFile, READ) :
+                Channels.newChannel(new ByteArrayInputStream(content));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ebi.gdp.file.handler.core.stream.ProgressListenerOutputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculator;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculatorFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumOutputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listener.BytesTransferredListener;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.ebi.gdp.file.handler.core.utils.Checksum.getMD5MessageDigest;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm.MD5;
+
+/**
+ * Copies a file through the output stream stack of {@code DefaultGlobusFileTransfer}, one layer at a time,
+ * with the same read loop as the transfer. The score is the time to copy {@code fileSize} bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CopyStackBenchmark {
+
+    /**
+     * Output stream layers, {@link #ASYNC_CHECKSUM} is the stack of a default single stream download
+     * and {@link #DIGEST} the one of a resumable download.
+     */
+    public enum Stack {
+        PLAIN,
+        PROGRESS,
+        DIGEST,
+        INLINE_CHECKSUM,
+        ASYNC_CHECKSUM
+    }
+
+    @Param({"8192", "65536", "262144", "1048576"})
+    private int bufferSize;
+
+    @Param({"67108864"})
+    private int fileSize;
+
+    @Param({"MEMORY", "TMPFS"})
+    private BenchmarkData.Source source;
+
+    @Param({"NULL", "TMPFS"})
+    private BenchmarkData.Sink sink;
+
+    @Param({"PLAIN", "PROGRESS", "DIGEST", "INLINE_CHECKSUM", "ASYNC_CHECKSUM"})
+    private Stack stack;
+
+    private byte[] content;
+    private Path sourceFile;
+    private Path sinkFile;
+    private ScheduledExecutorService progressExecutorService;
+    private ChecksumCalculatorFactory inlineChecksumCalculatorFactory;
+    private ChecksumCalculatorFactory asyncChecksumCalculatorFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        content = BenchmarkData.randomBytes(fileSize);
+        sourceFile = BenchmarkData.tmpfsFile("copy-source");
+        Files.write(sourceFile, content);
+        sinkFile = BenchmarkData.tmpfsFile("copy-sink");
+        progressExecutorService = Executors.newSingleThreadScheduledExecutor();
+        inlineChecksumCalculatorFactory = new ChecksumCalculatorFactory(List.of(MD5), false, bufferSize, 8, TransferMetrics.noop());
+        asyncChecksumCalculatorFactory = new ChecksumCalculatorFactory(List.of(MD5), true, bufferSize, 8, TransferMetrics.noop());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        progressExecutorService.shutdownNow();
+        Files.deleteIfExists(sourceFile);
+        Files.deleteIfExists(sinkFile);
+    }
+
+    @Benchmark
+    public void copy(final Blackhole blackhole) throws Exception {
+        try (final InputStream inputStream = openSource();
+             final BytesTransferredListener progressListener = new BytesTransferredListener("benchmark", progressExecutorService);
+             final ChecksumCalculator checksumCalculator = createChecksumCalculator()) {
+            try (final OutputStream outputStream = wrap(BenchmarkData.openSink(sink, sinkFile), progressListener, checksumCalculator, blackhole)) {
+                final byte[] buffer = new byte[bufferSize];
+                int read;
+                while ((read = inputStream.read(buffer, 0, bufferSize)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+            if (checksumCalculator != null) {
+                blackhole.consume(checksumCalculator.finish());
+            }
+        }
+    }
+
+    private InputStream openSource() throws IOException {
+        return source == BenchmarkData.Source.TMPFS ? Files.newInputStream(sourceFile) : new ByteArrayInputStream(content);
+    }
+
+    private ChecksumCalculator createChecksumCalculator() {
+        return switch (stack) {
+            case INLINE_CHECKSUM -> inlineChecksumCalculatorFactory.create();
+            case ASYNC_CHECKSUM -> asyncChecksumCalculatorFactory.create();
+            default -> null;
+        };
+    }
+
+    private OutputStream wrap(final OutputStream sinkOutputStream,
+                              final BytesTransferredListener progressListener,
+                              final ChecksumCalculator checksumCalculator,
+                              final Blackhole blackhole) {
+        return switch (stack) {
+            case PLAIN -> sinkOutputStream;
+            case PROGRESS -> new ProgressListenerOutputStream(sinkOutputStream, progressListener);
+            case DIGEST -> new DigestOutputStream(sinkOutputStream, getMD5MessageDigest()) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    blackhole.consume(getMessageDigest().digest());
+                }
+            };
+            case INLINE_CHECKSUM, ASYNC_CHECKSUM -> new ChecksumOutputStream(
+                    new ProgressListenerOutputStream(sinkOutputStream, progressListener), checksumCalculator);
+        };
+    }
+}
@@ -21,6 +21,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.PropertySource;
+import org.springframework.core.metrics.jfr.FlightRecorderApplicationStartup;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.FlightRecording;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParameters;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIPropertySource;
 
@@ -30,6 +32,7 @@ import java.util.List;
 import java.util.Optional;
 
 import static java.lang.System.exit;
+import static java.net.URI.create;
 import static java.util.Arrays.asList;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.INPUT_PROCESSING_ERROR;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ProfileType.CRYPT4GH_SECRET_KEY_LOCAL;
@@ -37,6 +40,7 @@ import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ProfileTy
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ProfileType.DEFAULT_PLAIN;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.parse;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.Crypt4gh.SECRET_DETAILS_FILE_SUFFIX;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.OutputDestination.isStdout;
 
 @SpringBootApplication
 public class GlobusFileHandlerApplication {
@@ -45,8 +49,18 @@ public class GlobusFileHandlerApplication {
         final Optional<CLIParameters> cliParameters = parse(args);
 
         if (cliParameters.isPresent()) {
+            final String destination = cliParameters.get().getFileDownloadDestinationLocation();
+            if (destination != null && isStdout(create(destination))) {
+                // Downloaded bytes own the standard output, the banner and logs go to the standard error
+                System.setOut(System.err);
+            }
             final PropertySource<CLIParameters> propertySource = new CLIPropertySource("cliPropertySource", cliParameters.get());
-            new SpringApplicationBuilder(GlobusFileHandlerApplication.class)
+            final SpringApplicationBuilder applicationBuilder = new SpringApplicationBuilder(GlobusFileHandlerApplication.class);
+            if (cliParameters.get().getRecordingPath() != null) {
+                FlightRecording.start(cliParameters.get().getRecordingPath());
+                applicationBuilder.applicationStartup(new FlightRecorderApplicationStartup());
+            }
+            applicationBuilder
                     .initializers((applicationContext) -> {
                         applicationContext
                                 .getEnvironment()
@@ -0,0 +1,155 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.lang.Math.min;
+
+/**
+ * Hands the bytes over to a dedicated thread which computes the checksums, so the copying
+ * thread only pays for a memory copy. Bytes are gathered into buffers which are queued in
+ * order, the copying thread only waits when {@code queueCapacity} buffers are pending.
+ * Buffers are recycled, at most {@code queueCapacity + 2} are ever allocated.
+ */
+public class AsyncChecksumCalculator implements ChecksumCalculator {
+    private static final ByteBuffer END_OF_DATA = ByteBuffer.allocate(0);
+    private final InlineChecksumCalculator delegate;
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> filledBuffers;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final Thread consumer;
+    private volatile Throwable failure;
+    private ByteBuffer currentBuffer;
+
+    public AsyncChecksumCalculator(final InlineChecksumCalculator delegate,
+                                   final int bufferSize,
+                                   final int queueCapacity) {
+        if (bufferSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Checksum buffer size and queue capacity should be at least 1, found %s and %s"
+                    .formatted(bufferSize, queueCapacity));
+        }
+        this.delegate = delegate;
+        this.bufferSize = bufferSize;
+        this.filledBuffers = new ArrayBlockingQueue<>(queueCapacity + 1);
+        this.freeBuffers = new ArrayBlockingQueue<>(queueCapacity + 2);
+        this.consumer = new Thread(this::consume, "checksum");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    @Override
+    public void update(final byte[] bytes,
+                       final int offset,
+                       final int length) throws IOException {
+        int position = offset;
+        final int end = offset + length;
+        while (position < end) {
+            final ByteBuffer buffer = currentBuffer();
+            final int count = min(buffer.remaining(), end - position);
+            buffer.put(bytes, position, count);
+            position += count;
+            handOffIfFull(buffer);
+        }
+    }
+
+    @Override
+    public void update(final ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            final ByteBuffer buffer = currentBuffer();
+            final int count = min(buffer.remaining(), source.remaining());
+            buffer.put(buffer.position(), source, source.position(), count);
+            buffer.position(buffer.position() + count);
+            source.position(source.position() + count);
+            handOffIfFull(buffer);
+        }
+    }
+
+    @Override
+    public Map<ChecksumAlgorithm, String> finish() throws IOException {
+        if (currentBuffer != null && currentBuffer.position() > 0) {
+            handOff(currentBuffer);
+            currentBuffer = null;
+        }
+        handOff(END_OF_DATA);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for checksum computation");
+        }
+        checkFailure();
+        return delegate.finish();
+    }
+
+    @Override
+    public void close() {
+        consumer.interrupt();
+    }
+
+    private ByteBuffer currentBuffer() throws IOException {
+        checkFailure();
+        if (currentBuffer == null) {
+            final ByteBuffer freeBuffer = freeBuffers.poll();
+            currentBuffer = freeBuffer != null ? freeBuffer : ByteBuffer.allocate(bufferSize);
+        }
+        return currentBuffer;
+    }
+
+    private void handOffIfFull(final ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            handOff(buffer);
+            currentBuffer = null;
+        }
+    }
+
+    private void handOff(final ByteBuffer buffer) throws IOException {
+        try {
+            filledBuffers.put(buffer == END_OF_DATA ? buffer : buffer.flip());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while handing data over for checksum computation");
+        }
+    }
+
+    private void consume() {
+        try {
+            ByteBuffer buffer;
+            while ((buffer = filledBuffers.take()) != END_OF_DATA) {
+                delegate.update(buffer);
+                freeBuffers.offer(buffer.clear());
+            }
+        } catch (InterruptedException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+            filledBuffers.clear();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Checksum computation failed: %s".formatted(failure.getMessage()), failure);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static java.util.stream.Collectors.joining;
+import static uk.ac.ebi.gdp.file.handler.core.utils.Checksum.getMD5MessageDigest;
+
+/**
+ * Checksum algorithms which can be computed while a file is downloaded.
+ */
+public enum ChecksumAlgorithm {
+    MD5("md5", 32) {
+        @Override
+        ChecksumFunction newFunction() {
+            return new MessageDigestFunction(getMD5MessageDigest());
+        }
+    },
+    SHA256("sha256", 64) {
+        @Override
+        ChecksumFunction newFunction() {
+            return MessageDigestFunction.of("SHA-256");
+        }
+    },
+    CRC32C("crc32c", 8) {
+        @Override
+        ChecksumFunction newFunction() {
+            return new ZipChecksumFunction(new CRC32C());
+        }
+    },
+    XXH64("xxh64", 16) {
+        @Override
+        ChecksumFunction newFunction() {
+            return new XXHash64Function();
+        }
+    };
+
+    private final String name;
+    private final int hexLength;
+
+    ChecksumAlgorithm(final String name,
+                      final int hexLength) {
+        this.name = name;
+        this.hexLength = hexLength;
+    }
+
+    abstract ChecksumFunction newFunction();
+
+    /**
+     * @return lower case name, also used as file extension of checksum files.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of hexadecimal digits of a checksum.
+     */
+    public int getHexLength() {
+        return hexLength;
+    }
+
+    /**
+     * @param name algorithm name, case insensitive.
+     * @return matching algorithm.
+     */
+    public static ChecksumAlgorithm of(final String name) {
+        return Arrays.stream(values())
+                .filter(algorithm -> algorithm.name.equalsIgnoreCase(name.trim())
+                        || algorithm.name().equalsIgnoreCase(name.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported checksum algorithm %s, expected one of %s"
+                        .formatted(name, Arrays.stream(values()).map(ChecksumAlgorithm::getName).collect(joining(", ")))));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Computes one or more checksums over the bytes of a file fed in order.
+ */
+public interface ChecksumCalculator extends AutoCloseable {
+    void update(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Consumes the remaining bytes of the buffer, the buffer can be reused once this method returns.
+     */
+    void update(ByteBuffer buffer) throws IOException;
+
+    /**
+     * @return hexadecimal checksum of every algorithm, in the configured order.
+     * @throws IOException in case checksum computation failed.
+     */
+    Map<ChecksumAlgorithm, String> finish() throws IOException;
+
+    /**
+     * Releases resources, abandoning the computation if {@link #finish()} wasn't called.
+     */
+    @Override
+    default void close() {
+    }
+}
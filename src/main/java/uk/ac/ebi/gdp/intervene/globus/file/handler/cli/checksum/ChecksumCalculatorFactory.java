@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm.MD5;
+
+/**
+ * Creates the checksum calculator of each download from the configured algorithms.
+ */
+public class ChecksumCalculatorFactory {
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_QUEUE_CAPACITY = 8;
+    private final List<ChecksumAlgorithm> algorithms;
+    private final boolean async;
+    private final int bufferSize;
+    private final int queueCapacity;
+    private final TransferMetrics transferMetrics;
+
+    /**
+     * @param algorithms    algorithms computed in a single pass.
+     * @param async         true to compute checksums on a dedicated thread.
+     * @param bufferSize    size in bytes of the buffers handed over to the checksum thread.
+     * @param queueCapacity   number of filled buffers the checksum thread may lag behind.
+     * @param transferMetrics meters recording the time spent computing checksums.
+     */
+    public ChecksumCalculatorFactory(final List<ChecksumAlgorithm> algorithms,
+                                     final boolean async,
+                                     final int bufferSize,
+                                     final int queueCapacity,
+                                     final TransferMetrics transferMetrics) {
+        if (algorithms.isEmpty()) {
+            throw new IllegalArgumentException("At least one checksum algorithm is required");
+        }
+        this.algorithms = List.copyOf(algorithms);
+        this.async = async;
+        this.bufferSize = bufferSize;
+        this.queueCapacity = queueCapacity;
+        this.transferMetrics = transferMetrics;
+    }
+
+    /**
+     * @return factory computing MD5 on a dedicated thread.
+     */
+    public static ChecksumCalculatorFactory defaultFactory() {
+        return new ChecksumCalculatorFactory(List.of(MD5), true, DEFAULT_BUFFER_SIZE, DEFAULT_QUEUE_CAPACITY, TransferMetrics.noop());
+    }
+
+    public ChecksumCalculator create() {
+        return create(null);
+    }
+
+    /**
+     * @param requiredAlgorithm algorithm computed in addition to the configured ones, may be null.
+     * @return checksum calculator.
+     */
+    public ChecksumCalculator create(final ChecksumAlgorithm requiredAlgorithm) {
+        final List<ChecksumAlgorithm> calculatedAlgorithms = requiredAlgorithm == null || algorithms.contains(requiredAlgorithm) ?
+                algorithms : Stream.concat(algorithms.stream(), Stream.of(requiredAlgorithm)).toList();
+        final InlineChecksumCalculator inlineChecksumCalculator = new InlineChecksumCalculator(calculatedAlgorithms, transferMetrics);
+        return async ?
+                new AsyncChecksumCalculator(inlineChecksumCalculator, bufferSize, queueCapacity) :
+                inlineChecksumCalculator;
+    }
+
+    public List<ChecksumAlgorithm> getAlgorithms() {
+        return algorithms;
+    }
+}
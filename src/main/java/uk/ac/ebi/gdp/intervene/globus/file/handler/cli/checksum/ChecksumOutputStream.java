@@ -0,0 +1,49 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Feeds every byte written to the underlying stream to a {@link ChecksumCalculator}.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+    private final ChecksumCalculator checksumCalculator;
+
+    public ChecksumOutputStream(final OutputStream outputStream,
+                                final ChecksumCalculator checksumCalculator) {
+        super(outputStream);
+        this.checksumCalculator = checksumCalculator;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        checksumCalculator.update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes,
+                      final int offset,
+                      final int length) throws IOException {
+        out.write(bytes, offset, length);
+        checksumCalculator.update(bytes, offset, length);
+    }
+}
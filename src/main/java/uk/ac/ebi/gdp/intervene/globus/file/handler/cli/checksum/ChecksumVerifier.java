@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.readString;
+import static java.nio.file.Files.writeString;
+
+/**
+ * Resolves the checksum a download is expected to match, either supplied by the caller or
+ * fetched from the checksum endpoint, and writes checksum sidecar files next to verified
+ * downloads. A sidecar {@code file.md5} holds {@code checksum  file} as written by
+ * {@code md5sum}, so it can be checked with {@code md5sum -c}.
+ */
+public class ChecksumVerifier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumVerifier.class);
+    public static final String PATH_PLACEHOLDER = "{path}";
+    private final WebClient webClient;
+    private final String checksumEndpoint;
+    private final boolean sidecarEnabled;
+
+    /**
+     * @param webClient        client used to fetch checksums from the endpoint.
+     * @param checksumEndpoint URI template of the checksum of a file, {@value #PATH_PLACEHOLDER} is
+     *                         replaced with the file path. Null or blank to disable.
+     * @param sidecarEnabled   true to write a sidecar file per computed checksum.
+     */
+    public ChecksumVerifier(final WebClient webClient,
+                            final String checksumEndpoint,
+                            final boolean sidecarEnabled) {
+        this.webClient = webClient;
+        this.checksumEndpoint = checksumEndpoint == null || checksumEndpoint.isBlank() ? null : checksumEndpoint;
+        this.sidecarEnabled = sidecarEnabled;
+    }
+
+    /**
+     * @return verifier which writes sidecars and has no checksum endpoint.
+     */
+    public static ChecksumVerifier defaultVerifier() {
+        return new ChecksumVerifier(null, null, true);
+    }
+
+    /**
+     * @return true when expected checksums are fetched from a checksum endpoint.
+     */
+    public boolean hasEndpoint() {
+        return checksumEndpoint != null;
+    }
+
+    /**
+     * @param source           Globus file path.
+     * @param expectedChecksum checksum supplied by the caller, may be null.
+     * @return checksum the download must match, null if none is known.
+     */
+    public ExpectedChecksum resolve(final URI source,
+                                    final String expectedChecksum) {
+        if (expectedChecksum != null && !expectedChecksum.isBlank()) {
+            return ExpectedChecksum.parse(expectedChecksum);
+        }
+        if (checksumEndpoint == null) {
+            return null;
+        }
+        final String checksumURI = checksumEndpoint.replace(PATH_PLACEHOLDER, source.getPath());
+        final String response = webClient
+                .get()
+                .uri(checksumURI)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+        if (response == null || response.isBlank()) {
+            throw new IllegalStateException("Checksum endpoint %s returned no checksum".formatted(checksumURI));
+        }
+        final ExpectedChecksum checksum = ExpectedChecksum.parse(response.strip().split("\\s+")[0]);
+        LOGGER.info("Expected checksum of {} fetched from {}: {}", source.getPath(), checksumURI, checksum);
+        return checksum;
+    }
+
+    /**
+     * Removes sidecars left by a previous download of the same file, so that a failed
+     * download never leaves a sidecar behind.
+     */
+    public void deleteSidecars(final Path destinationFile) throws IOException {
+        if (!sidecarEnabled) {
+            return;
+        }
+        for (final ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            deleteIfExists(sidecarPath(destinationFile, algorithm));
+        }
+    }
+
+    public void writeSidecars(final Path destinationFile,
+                              final Map<ChecksumAlgorithm, String> checksums) throws IOException {
+        if (!sidecarEnabled) {
+            return;
+        }
+        for (final Map.Entry<ChecksumAlgorithm, String> checksum : checksums.entrySet()) {
+            writeString(sidecarPath(destinationFile, checksum.getKey()),
+                    "%s  %s%n".formatted(checksum.getValue(), destinationFile.getFileName()));
+        }
+    }
+
+    /**
+     * @return checksum recorded in the sidecar of the given algorithm, null if there is none.
+     */
+    public String readSidecar(final Path destinationFile,
+                              final ChecksumAlgorithm algorithm) throws IOException {
+        final Path sidecar = sidecarPath(destinationFile, algorithm);
+        if (!sidecarEnabled || !exists(sidecar)) {
+            return null;
+        }
+        final String content = readString(sidecar).strip();
+        return content.isEmpty() ? null : content.split("\\s+")[0];
+    }
+
+    /**
+     * @return true if a sidecar of any algorithm exists, sidecars are only written once a download is verified.
+     */
+    public boolean hasSidecar(final Path destinationFile) {
+        return sidecarEnabled && Arrays.stream(ChecksumAlgorithm.values())
+                .anyMatch(algorithm -> exists(sidecarPath(destinationFile, algorithm)));
+    }
+
+    private static Path sidecarPath(final Path destinationFile,
+                                    final ChecksumAlgorithm algorithm) {
+        return destinationFile.resolveSibling(destinationFile.getFileName() + "." + algorithm.getName());
+    }
+}
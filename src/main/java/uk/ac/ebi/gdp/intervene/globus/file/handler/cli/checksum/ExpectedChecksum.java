@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Checksum a downloaded file is expected to match, written as {@code [algorithm:]hex}. When
+ * the algorithm is omitted it is inferred from the number of hexadecimal digits.
+ */
+public record ExpectedChecksum(ChecksumAlgorithm algorithm, String value) {
+    private static final String ALGORITHM_SEPARATOR = ":";
+
+    public static ExpectedChecksum parse(final String checksum) {
+        final String trimmedChecksum = checksum.trim();
+        final int separator = trimmedChecksum.indexOf(ALGORITHM_SEPARATOR);
+        final String value = trimmedChecksum.substring(separator + 1).toLowerCase(Locale.ROOT);
+        final ChecksumAlgorithm algorithm = separator > 0 ?
+                ChecksumAlgorithm.of(trimmedChecksum.substring(0, separator)) :
+                Arrays.stream(ChecksumAlgorithm.values())
+                        .filter(candidate -> candidate.getHexLength() == value.length())
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException(
+                                "Unable to infer the algorithm of checksum %s, use algorithm:checksum".formatted(checksum)));
+        if (value.length() != algorithm.getHexLength() || !value.chars().allMatch(ExpectedChecksum::isHexDigit)) {
+            throw new IllegalArgumentException("Checksum %s is not a valid %s checksum".formatted(checksum, algorithm.getName()));
+        }
+        return new ExpectedChecksum(algorithm, value);
+    }
+
+    private static boolean isHexDigit(final int c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+    }
+
+    @Override
+    public String toString() {
+        return algorithm.getName() + ALGORITHM_SEPARATOR + value;
+    }
+}
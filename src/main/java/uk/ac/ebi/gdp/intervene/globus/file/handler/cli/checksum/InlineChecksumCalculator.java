@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferStage;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes checksums on the calling thread, all algorithms in a single pass. The time spent
+ * is recorded as the {@link TransferStage#DIGEST} stage.
+ */
+public class InlineChecksumCalculator implements ChecksumCalculator {
+    private final Map<ChecksumAlgorithm, ChecksumFunction> functions;
+    private final TransferMetrics transferMetrics;
+
+    public InlineChecksumCalculator(final List<ChecksumAlgorithm> algorithms,
+                                    final TransferMetrics transferMetrics) {
+        this.functions = new LinkedHashMap<>();
+        this.transferMetrics = transferMetrics;
+        algorithms.forEach(algorithm -> functions.put(algorithm, algorithm.newFunction()));
+    }
+
+    @Override
+    public void update(final byte[] bytes,
+                       final int offset,
+                       final int length) {
+        final long startNanos = System.nanoTime();
+        for (final ChecksumFunction function : functions.values()) {
+            function.update(bytes, offset, length);
+        }
+        transferMetrics.recordStage(TransferStage.DIGEST, System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        final long startNanos = System.nanoTime();
+        final int position = buffer.position();
+        for (final ChecksumFunction function : functions.values()) {
+            function.update(buffer.position(position));
+        }
+        transferMetrics.recordStage(TransferStage.DIGEST, System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public Map<ChecksumAlgorithm, String> finish() {
+        final Map<ChecksumAlgorithm, String> checksums = new LinkedHashMap<>();
+        functions.forEach((algorithm, function) -> checksums.put(algorithm, function.getValue()));
+        return checksums;
+    }
+}
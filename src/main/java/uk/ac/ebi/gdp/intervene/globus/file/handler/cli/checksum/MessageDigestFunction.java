@@ -0,0 +1,57 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static uk.ac.ebi.gdp.file.handler.core.utils.Checksum.normalize;
+
+class MessageDigestFunction implements ChecksumFunction {
+    private final MessageDigest messageDigest;
+
+    MessageDigestFunction(final MessageDigest messageDigest) {
+        this.messageDigest = messageDigest;
+    }
+
+    static MessageDigestFunction of(final String algorithm) {
+        try {
+            return new MessageDigestFunction(MessageDigest.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("%s is not supported by this JVM".formatted(algorithm), e);
+        }
+    }
+
+    @Override
+    public void update(final byte[] bytes,
+                       final int offset,
+                       final int length) {
+        messageDigest.update(bytes, offset, length);
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        messageDigest.update(buffer);
+    }
+
+    @Override
+    public String getValue() {
+        return normalize(messageDigest);
+    }
+}
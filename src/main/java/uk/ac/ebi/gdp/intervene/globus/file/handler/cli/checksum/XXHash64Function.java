@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+import static java.lang.Long.rotateLeft;
+import static java.lang.Math.min;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Streaming XXH64 (seed 0). The value is printed in the canonical big endian form used by
+ * {@code xxhsum -H64}.
+ */
+class XXHash64Function implements ChecksumFunction {
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, LITTLE_ENDIAN);
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private final byte[] stripe = new byte[STRIPE];
+    private byte[] copyBuffer;
+    private int stripeLength;
+    private long totalLength;
+    private long v1 = PRIME1 + PRIME2;
+    private long v2 = PRIME2;
+    private long v3 = 0;
+    private long v4 = -PRIME1;
+
+    @Override
+    public void update(final byte[] bytes,
+                       final int offset,
+                       final int length) {
+        totalLength += length;
+        int position = offset;
+        final int end = offset + length;
+        if (stripeLength > 0) {
+            final int count = min(STRIPE - stripeLength, length);
+            System.arraycopy(bytes, position, stripe, stripeLength, count);
+            stripeLength += count;
+            position += count;
+            if (stripeLength < STRIPE) {
+                return;
+            }
+            consumeStripe(stripe, 0);
+            stripeLength = 0;
+        }
+        while (end - position >= STRIPE) {
+            consumeStripe(bytes, position);
+            position += STRIPE;
+        }
+        stripeLength = end - position;
+        System.arraycopy(bytes, position, stripe, 0, stripeLength);
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (copyBuffer == null) {
+            copyBuffer = new byte[8192];
+        }
+        while (buffer.hasRemaining()) {
+            final int count = min(copyBuffer.length, buffer.remaining());
+            buffer.get(copyBuffer, 0, count);
+            update(copyBuffer, 0, count);
+        }
+    }
+
+    @Override
+    public String getValue() {
+        long hash;
+        if (totalLength >= STRIPE) {
+            hash = rotateLeft(v1, 1) + rotateLeft(v2, 7) + rotateLeft(v3, 12) + rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += totalLength;
+
+        int position = 0;
+        while (stripeLength - position >= 8) {
+            hash ^= round(0, (long) LONG_LE.get(stripe, position));
+            hash = rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            position += 8;
+        }
+        if (stripeLength - position >= 4) {
+            hash ^= ((int) INT_LE.get(stripe, position) & 0xFFFFFFFFL) * PRIME1;
+            hash = rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        while (position < stripeLength) {
+            hash ^= (stripe[position++] & 0xFFL) * PRIME5;
+            hash = rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return "%016x".formatted(hash);
+    }
+
+    private void consumeStripe(final byte[] bytes,
+                               final int offset) {
+        v1 = round(v1, (long) LONG_LE.get(bytes, offset));
+        v2 = round(v2, (long) LONG_LE.get(bytes, offset + 8));
+        v3 = round(v3, (long) LONG_LE.get(bytes, offset + 16));
+        v4 = round(v4, (long) LONG_LE.get(bytes, offset + 24));
+    }
+
+    private static long round(final long accumulator,
+                              final long input) {
+        return rotateLeft(accumulator + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long mergeRound(final long accumulator,
+                                   final long value) {
+        return (accumulator ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Adapts 32-bit {@link Checksum}s such as {@link java.util.zip.CRC32C}.
+ */
+class ZipChecksumFunction implements ChecksumFunction {
+    private final Checksum checksum;
+
+    ZipChecksumFunction(final Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+    @Override
+    public void update(final byte[] bytes,
+                       final int offset,
+                       final int length) {
+        checksum.update(bytes, offset, length);
+    }
+
+    @Override
+    public void update(final ByteBuffer buffer) {
+        checksum.update(buffer);
+    }
+
+    @Override
+    public String getValue() {
+        return "%08x".formatted(checksum.getValue());
+    }
+}
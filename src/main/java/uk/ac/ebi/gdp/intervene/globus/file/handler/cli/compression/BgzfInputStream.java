@@ -0,0 +1,276 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferStage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.lang.Math.min;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.CompressionFormat.readIntLE;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.CompressionFormat.readShortLE;
+
+/**
+ * Inflating view of a BGZF stream, a series of gzip members of at most 64 KiB each that
+ * record their own compressed size. Blocks are checked against their CRC32 and size as
+ * plaintext is consumed.
+ * <p>
+ * When an executor is supplied, up to {@code reorderWindow} blocks read ahead are inflated
+ * concurrently by the executor while plaintext is still handed out strictly in file order,
+ * so memory stays capped at {@code reorderWindow + 1} block buffers.
+ */
+public class BgzfInputStream extends InputStream {
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+    private static final int FIXED_HEADER_LENGTH = 12;
+    private static final int FOOTER_LENGTH = 8;
+    private final InputStream compressedInputStream;
+    private final ExecutorService executorService;
+    private final int reorderWindow;
+    private final TransferMetrics transferMetrics;
+    private final Queue<Inflater> inflaters;
+    private final ArrayDeque<Future<Block>> pendingBlocks;
+    private final ArrayDeque<Block> freeBlocks;
+    private final byte[] header;
+    private Block currentBlock;
+    private boolean endOfStream;
+
+    public BgzfInputStream(final InputStream compressedInputStream) {
+        this(compressedInputStream, null, 0, TransferMetrics.noop());
+    }
+
+    /**
+     * @param compressedInputStream BGZF compressed stream.
+     * @param executorService       executor inflating blocks, null to inflate on the reading thread.
+     * @param reorderWindow         maximum number of blocks inflated ahead of the reader.
+     * @param transferMetrics       meters recording the time spent inflating.
+     */
+    public BgzfInputStream(final InputStream compressedInputStream,
+                           final ExecutorService executorService,
+                           final int reorderWindow,
+                           final TransferMetrics transferMetrics) {
+        if (executorService != null && reorderWindow < 1) {
+            throw new IllegalArgumentException("Reorder window should be at least 1 block, found %s".formatted(reorderWindow));
+        }
+        this.compressedInputStream = compressedInputStream;
+        this.executorService = executorService;
+        this.reorderWindow = reorderWindow;
+        this.transferMetrics = transferMetrics;
+        this.inflaters = new ConcurrentLinkedQueue<>();
+        this.pendingBlocks = new ArrayDeque<>();
+        this.freeBlocks = new ArrayDeque<>();
+        this.header = new byte[FIXED_HEADER_LENGTH];
+        this.currentBlock = new Block();
+        this.endOfStream = false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] singleByte = new byte[1];
+        return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes,
+                    final int offset,
+                    final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (currentBlock.position == currentBlock.plainLength) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        final int count = min(length, currentBlock.plainLength - currentBlock.position);
+        System.arraycopy(currentBlock.plain, currentBlock.position, bytes, offset, count);
+        currentBlock.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return currentBlock.plainLength - currentBlock.position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pendingBlocks.forEach(future -> future.cancel(true));
+        pendingBlocks.clear();
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        compressedInputStream.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        final Block block;
+        if (executorService == null) {
+            block = currentBlock;
+            if (!readBlock(block)) {
+                return false;
+            }
+            block.inflate();
+        } else {
+            fillReorderWindow();
+            if (pendingBlocks.isEmpty()) {
+                return false;
+            }
+            block = await(pendingBlocks.poll());
+            freeBlocks.add(currentBlock);
+            currentBlock = block;
+        }
+        block.position = 0;
+        return true;
+    }
+
+    private void fillReorderWindow() throws IOException {
+        while (!endOfStream && pendingBlocks.size() < reorderWindow) {
+            final Block block = freeBlocks.isEmpty() ? new Block() : freeBlocks.poll();
+            if (!readBlock(block)) {
+                freeBlocks.add(block);
+                return;
+            }
+            pendingBlocks.add(executorService.submit(() -> {
+                block.inflate();
+                return block;
+            }));
+        }
+    }
+
+    /**
+     * Reads the next block as it is on the wire, only its header is parsed here.
+     */
+    private boolean readBlock(final Block block) throws IOException {
+        final int headerLength = compressedInputStream.readNBytes(header, 0, FIXED_HEADER_LENGTH);
+        if (headerLength == 0) {
+            endOfStream = true;
+            return false;
+        }
+        if (headerLength < FIXED_HEADER_LENGTH) {
+            throw new EOFException("Truncated BGZF block header");
+        }
+        if (CompressionFormat.detect(header, FIXED_HEADER_LENGTH) != CompressionFormat.GZIP || (header[3] & 4) == 0) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        final int extraLength = readShortLE(header, 10);
+        final byte[] extra = compressedInputStream.readNBytes(extraLength);
+        if (extra.length < extraLength) {
+            throw new EOFException("Truncated BGZF block header");
+        }
+        final int blockSize = blockSize(extra) + 1;
+        final int remaining = blockSize - FIXED_HEADER_LENGTH - extraLength;
+        if (remaining < FOOTER_LENGTH || remaining > block.compressed.length) {
+            throw new IOException("Invalid BGZF block size %s".formatted(blockSize));
+        }
+        if (compressedInputStream.readNBytes(block.compressed, 0, remaining) < remaining) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        block.compressedLength = remaining - FOOTER_LENGTH;
+        block.expectedCrc = readIntLE(block.compressed, block.compressedLength) & 0xffffffffL;
+        block.expectedSize = readIntLE(block.compressed, block.compressedLength + 4);
+        if (block.expectedSize < 0 || block.expectedSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid BGZF block uncompressed size %s".formatted(block.expectedSize));
+        }
+        return true;
+    }
+
+    private static int blockSize(final byte[] extra) throws IOException {
+        int offset = 0;
+        while (offset + 4 <= extra.length) {
+            final int subfieldLength = readShortLE(extra, offset + 2);
+            if (extra[offset] == 'B' && extra[offset + 1] == 'C' && subfieldLength == 2 && offset + 6 <= extra.length) {
+                return readShortLE(extra, offset + 4);
+            }
+            offset += 4 + subfieldLength;
+        }
+        throw new IOException("Gzip member without a BGZF block size, the file isn't BGZF");
+    }
+
+    private Block await(final Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating BGZF block");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Unable to inflate BGZF block: %s".formatted(e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    /**
+     * Reusable compressed and plaintext buffers of one block.
+     */
+    private class Block {
+        private final byte[] compressed = new byte[MAX_BLOCK_SIZE];
+        private final byte[] plain = new byte[MAX_BLOCK_SIZE];
+        private final CRC32 crc32 = new CRC32();
+        private int compressedLength;
+        private long expectedCrc;
+        private int expectedSize;
+        private int plainLength;
+        private int position;
+
+        private void inflate() throws IOException {
+            Inflater inflater = inflaters.poll();
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+            final long startNanos = System.nanoTime();
+            try {
+                inflater.setInput(compressed, 0, compressedLength);
+                plainLength = 0;
+                while (!inflater.finished() && plainLength < plain.length) {
+                    final int inflated = inflater.inflate(plain, plainLength, plain.length - plainLength);
+                    if (inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new EOFException("Truncated BGZF block data");
+                    }
+                    plainLength += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt BGZF block: %s".formatted(e.getMessage()), e);
+            } finally {
+                inflater.reset();
+                inflaters.add(inflater);
+                transferMetrics.recordStage(TransferStage.DECOMPRESS, System.nanoTime() - startNanos);
+            }
+            crc32.reset();
+            crc32.update(plain, 0, plainLength);
+            if (plainLength != expectedSize || crc32.getValue() != expectedCrc) {
+                throw new IOException("BGZF block failed its integrity check, expected %s bytes, inflated %s"
+                        .formatted(expectedSize, plainLength));
+            }
+        }
+    }
+}
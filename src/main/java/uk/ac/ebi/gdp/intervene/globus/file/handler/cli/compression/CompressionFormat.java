@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression;
+
+/**
+ * Compression formats recognised from the first bytes of a file.
+ */
+public enum CompressionFormat {
+    GZIP,
+    BGZF,
+    ZSTD;
+
+    /**
+     * Number of leading bytes needed to tell the formats apart.
+     */
+    public static final int MAGIC_LENGTH = 16;
+
+    private static final int GZIP_ID1 = 0x1f;
+    private static final int GZIP_ID2 = 0x8b;
+    private static final int GZIP_CM_DEFLATE = 8;
+    private static final int GZIP_FLG_FEXTRA = 4;
+    private static final int ZSTD_MAGIC = 0xfd2fb528;
+
+    /**
+     * @param magic  leading bytes of the file.
+     * @param length number of valid bytes in {@code magic}.
+     * @return format of the file, null if it isn't compressed by a known format.
+     */
+    public static CompressionFormat detect(final byte[] magic,
+                                           final int length) {
+        if (length >= 4 && readIntLE(magic, 0) == ZSTD_MAGIC) {
+            return ZSTD;
+        }
+        if (length < 10 || (magic[0] & 0xff) != GZIP_ID1 || (magic[1] & 0xff) != GZIP_ID2 || magic[2] != GZIP_CM_DEFLATE) {
+            return null;
+        }
+        // BGZF is gzip whose first extra subfield is 'BC', holding the block size
+        final boolean bgzf = (magic[3] & GZIP_FLG_FEXTRA) != 0
+                && length >= 16
+                && magic[12] == 'B'
+                && magic[13] == 'C'
+                && readShortLE(magic, 14) == 2;
+        return bgzf ? BGZF : GZIP;
+    }
+
+    static int readShortLE(final byte[] bytes,
+                           final int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    static int readIntLE(final byte[] bytes,
+                         final int offset) {
+        return readShortLE(bytes, offset) | readShortLE(bytes, offset + 2) << 16;
+    }
+}
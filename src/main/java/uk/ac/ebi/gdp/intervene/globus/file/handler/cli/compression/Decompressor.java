@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.BgzfInputStream.MAX_BLOCK_SIZE;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.CompressionFormat.MAGIC_LENGTH;
+
+/**
+ * Optional decompression stage of the copy path. The format is detected from the first
+ * bytes of each file: BGZF blocks are inflated concurrently, gzip and zstd are decompressed
+ * on the reading thread and any other file is passed through unchanged.
+ */
+public class Decompressor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Decompressor.class);
+    private final boolean enabled;
+    private final int threads;
+    private final int reorderWindow;
+    private final TransferMetrics transferMetrics;
+
+    private Decompressor(final boolean enabled,
+                         final int threads,
+                         final int reorderWindow,
+                         final TransferMetrics transferMetrics) {
+        this.enabled = enabled;
+        this.threads = threads;
+        this.reorderWindow = reorderWindow;
+        this.transferMetrics = transferMetrics != null ? transferMetrics : TransferMetrics.noop();
+    }
+
+    /**
+     * @param threads         threads inflating the blocks of a BGZF file, 1 to inflate on the reading thread.
+     * @param reorderWindow   maximum number of BGZF blocks inflated ahead of the reader.
+     * @param transferMetrics meters recording the time spent inflating.
+     */
+    public Decompressor(final int threads,
+                        final int reorderWindow,
+                        final TransferMetrics transferMetrics) {
+        this(true, threads, reorderWindow, transferMetrics);
+        if (threads < 1) {
+            throw new IllegalArgumentException("Decompression threads should be at least 1, found %s".formatted(threads));
+        }
+        if (reorderWindow < 1) {
+            throw new IllegalArgumentException("Reorder window should be at least 1 block, found %s".formatted(reorderWindow));
+        }
+    }
+
+    /**
+     * @return decompressor passing every file through unchanged.
+     */
+    public static Decompressor disabled() {
+        return new Decompressor(false, 1, 1, null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param inputStream stream which may be compressed, closed with the returned stream.
+     * @param name        name of the file, used in logs.
+     * @return plaintext view of the stream, the stream itself when decompression is disabled.
+     * @throws IOException in case the first bytes cannot be read.
+     */
+    public InputStream decompress(final InputStream inputStream,
+                                  final String name) throws IOException {
+        if (!enabled) {
+            return inputStream;
+        }
+        final PeekingInputStream peekingInputStream = new PeekingInputStream(inputStream);
+        final byte[] magic = peekingInputStream.readNBytes(MAGIC_LENGTH);
+        peekingInputStream.unread(magic);
+        final CompressionFormat format = CompressionFormat.detect(magic, magic.length);
+        if (format == null) {
+            LOGGER.info("{} isn't compressed by a known format, written as is", name);
+            return peekingInputStream;
+        }
+        LOGGER.info("Decompressing {} as {}", name, format);
+        return switch (format) {
+            case GZIP -> new GZIPInputStream(peekingInputStream, MAX_BLOCK_SIZE);
+            case ZSTD -> new ZstdInputStream(peekingInputStream);
+            case BGZF -> bgzf(peekingInputStream);
+        };
+    }
+
+    private InputStream bgzf(final InputStream inputStream) {
+        if (threads == 1) {
+            return new BgzfInputStream(inputStream, null, 0, transferMetrics);
+        }
+        final ExecutorService executorService = newFixedThreadPool(threads);
+        return new BgzfInputStream(inputStream, executorService, reorderWindow, transferMetrics) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    executorService.shutdownNow();
+                }
+            }
+        };
+    }
+
+    /**
+     * {@link GZIPInputStream} only looks for a further member when bytes are available right
+     * after a member ends, a network stream may have none buffered yet and the rest of a
+     * concatenated file would be silently dropped. Availability is answered by peeking, which
+     * waits for the next byte or the end of the stream.
+     */
+    private static class PeekingInputStream extends PushbackInputStream {
+        private PeekingInputStream(final InputStream inputStream) {
+            super(inputStream, MAGIC_LENGTH);
+        }
+
+        @Override
+        public int available() throws IOException {
+            final int available = super.available();
+            if (available > 0) {
+                return available;
+            }
+            final int next = read();
+            if (next == -1) {
+                return 0;
+            }
+            unread(next);
+            return 1;
+        }
+    }
+}
@@ -25,30 +25,39 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import uk.ac.ebi.gdp.file.handler.core.properties.WebClientProperties;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.Crypt4ghEngine;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.service.KeyHandlerService;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.Crypt4gh;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.Crypt4ghProvider;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.GlobusCrypt4ghFileTransfer;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.GlobusCrypt4ghLocalFileTransfer;
-import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransferFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.TransferOptions;
 
-import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static uk.ac.ebi.gdp.file.handler.core.exception.ClientException.clientException;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.Crypt4ghEngine.SHELL;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ProfileType.CRYPT4GH_SECRET_KEY_LOCAL;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ProfileType.CRYPT4GH_SECRET_KEY_SECRET_MANAGER;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CHECKSUM_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CRYPT4GH_PRIVATE_KEY_PATH_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.ManifestParser.privateKeyPath;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.Crypt4gh.SECRET_DETAILS_FILE_SUFFIX;
 
 @Configuration
 public class Crypt4ghConfig {
-
     @Profile(CRYPT4GH_SECRET_KEY_LOCAL)
     @Configuration
     public static class Crypt4ghLocalSecretKeyConfig {
         @Bean
-        public Crypt4gh crypt4gh(@Value("${crypt4gh.binary-path}") final Path binPath,
-                                 @Value("${" + CRYPT4GH_PRIVATE_KEY_PATH_LONG + "}") final Path privateKeyPath) {
-            return Crypt4gh
+        public Crypt4ghProvider crypt4ghProvider(@Value("${crypt4gh.binary-path:#{null}}") final Path binPath) {
+            return privateKeyPath -> Crypt4gh
                     .builder(binPath,
                             privateKeyPath)
                     .build();
@@ -59,16 +68,20 @@ public class Crypt4ghConfig {
     @Configuration
     public static class Crypt4ghConfigSecretManager {
         @Bean
-        public Crypt4gh crypt4gh(@Value("${crypt4gh.binary-path}") final Path binPath,
-                                 @Value("${" + CRYPT4GH_PRIVATE_KEY_PATH_LONG + "}") final Path privateKeyPath,
-                                 final KeyHandlerService keyHandlerService,
-                                 @Value("${intervene.key-handler.secret-key.password}") final String password) throws IOException {
-            return Crypt4gh
-                    .builder(binPath,
-                            privateKeyPath,
-                            keyHandlerService,
-                            password.toCharArray())
-                    .build();
+        public Crypt4ghProvider crypt4ghProvider(@Value("${crypt4gh.binary-path:#{null}}") final Path binPath,
+                                                 final KeyHandlerService keyHandlerService,
+                                                 @Value("${intervene.key-handler.secret-key.password}") final String password) {
+            return privateKeyPath -> privateKeyPath.getFileName().toString().endsWith(SECRET_DETAILS_FILE_SUFFIX) ?
+                    Crypt4gh
+                            .builder(binPath,
+                                    privateKeyPath,
+                                    keyHandlerService,
+                                    password.toCharArray())
+                            .build() :
+                    Crypt4gh
+                            .builder(binPath,
+                                    privateKeyPath)
+                            .build();
         }
 
         @Bean
@@ -91,20 +104,64 @@ public class Crypt4ghConfig {
     @Profile({CRYPT4GH_SECRET_KEY_LOCAL, CRYPT4GH_SECRET_KEY_SECRET_MANAGER})
     @Configuration
     public static class Crypt4ghGlobusConfig {
+        /**
+         * Private keys are removed once a file has been decrypted, so each key (or secret
+         * config) can only be used for one file per run. Files are decrypted inside the JVM
+         * unless {@code crypt4gh.engine} is set to {@link Crypt4ghEngine#SHELL}.
+         */
         @Bean
-        public IGlobusFileTransfer crypt4ghGlobusFileTransfer(@Qualifier("globusWebClient") final WebClient webClient,
-                                                              final RetryTemplate retryTemplate,
-                                                              final WebClientProperties webClientProperties,
-                                                              final Crypt4gh crypt4gh,
-                                                              @Value("#{'${crypt4gh.shell-path}'.split(' ')}") final List<String> shellInterpreterCmds,
-                                                              @Value("${data.copy.buffer-size:8192}") final int bufferSize) {
-            return new GlobusCrypt4ghLocalFileTransfer(
-                    webClient,
-                    retryTemplate,
-                    webClientProperties.getPipeSize(),
-                    crypt4gh,
-                    shellInterpreterCmds,
-                    bufferSize);
+        public IGlobusFileTransferFactory crypt4ghGlobusFileTransferFactory(@Qualifier("globusWebClient") final WebClient webClient,
+                                                                            final RetryTemplate retryTemplate,
+                                                                            final WebClientProperties webClientProperties,
+                                                                            final Crypt4ghProvider crypt4ghProvider,
+                                                                            @Value("${" + CRYPT4GH_PRIVATE_KEY_PATH_LONG + "}") final Path defaultPrivateKeyPath,
+                                                                            @Value("${crypt4gh.engine:NATIVE}") final Crypt4ghEngine engine,
+                                                                            @Value("${crypt4gh.shell-path:}") final String shellPath,
+                                                                            @Value("${crypt4gh.passphrase:}") final String passphrase,
+                                                                            @Value("${crypt4gh.decryption.threads:0}") final int decryptionThreads,
+                                                                            @Value("${crypt4gh.decryption.reorder-window:64}") final int reorderWindow,
+                                                                            @Value("${" + CHECKSUM_SHORT + ":#{null}}") final String expectedChecksum,
+                                                                            final TransferOptions transferOptions,
+                                                                            @Value("${data.copy.buffer-size:8192}") final int bufferSize) {
+            if (engine == SHELL && shellPath.isBlank()) {
+                throw new IllegalStateException("crypt4gh.shell-path is required by the %s crypt4gh engine".formatted(SHELL));
+            }
+            if (engine == SHELL && transferOptions.getDecompressor().isEnabled()) {
+                throw new IllegalStateException("Decompression isn't available with the %s crypt4gh engine, decrypted bytes never reach the JVM".formatted(SHELL));
+            }
+            if (engine == SHELL && (expectedChecksum != null || transferOptions.getChecksumVerifier().hasEndpoint())) {
+                throw new IllegalStateException("Checksum verification (-c or data.copy.checksum.endpoint) isn't available with the %s crypt4gh engine, decrypted bytes never reach the JVM".formatted(SHELL));
+            }
+            final int threads = decryptionThreads > 0 ? decryptionThreads : Runtime.getRuntime().availableProcessors();
+            final List<String> shellInterpreterCmds = Arrays.asList(shellPath.trim().split(" "));
+            final Set<Path> usedPrivateKeys = ConcurrentHashMap.newKeySet();
+            return crypt4ghPrivateKeyPath -> {
+                final Path privateKeyPath = crypt4ghPrivateKeyPath == null ?
+                        defaultPrivateKeyPath : privateKeyPath(crypt4ghPrivateKeyPath);
+                if (!usedPrivateKeys.add(privateKeyPath.toAbsolutePath().normalize())) {
+                    throw clientException(400, "Private key %s has already been used to decrypt another file"
+                            .formatted(privateKeyPath));
+                }
+                return engine == SHELL ?
+                        new GlobusCrypt4ghLocalFileTransfer(
+                                webClient,
+                                retryTemplate,
+                                webClientProperties.getPipeSize(),
+                                crypt4ghProvider.crypt4gh(privateKeyPath),
+                                shellInterpreterCmds,
+                                bufferSize,
+                                transferOptions) :
+                        new GlobusCrypt4ghFileTransfer(
+                                webClient,
+                                retryTemplate,
+                                webClientProperties.getPipeSize(),
+                                crypt4ghProvider.crypt4gh(privateKeyPath),
+                                passphrase.toCharArray(),
+                                bufferSize,
+                                threads,
+                                reorderWindow,
+                                transferOptions);
+            };
         }
     }
 }
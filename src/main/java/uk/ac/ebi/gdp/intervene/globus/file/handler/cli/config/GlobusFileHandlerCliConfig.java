@@ -17,8 +17,11 @@
  */
 package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,44 +29,279 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import uk.ac.ebi.gdp.file.handler.core.properties.WebClientProperties;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculatorFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumVerifier;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.Decompressor;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ListingType;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.daemon.DaemonServer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.FileTransferDTO;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing.DirectoryLister;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing.DirectoryWalker;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing.GlobusTransferDirectoryLister;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing.LocalDirectoryLister;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.CircuitBreaker;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.runner.GlobusFileHandlerCommandLineRunner;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.runner.GlobusFileHandlerDaemonRunner;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.BandwidthLimiter;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.DefaultGlobusFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.DirectBufferPool;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransferFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.StallDetector;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.SyncPolicy;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.TransferOptions;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.TransferTuner;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
 
+import static uk.ac.ebi.gdp.file.handler.core.exception.ClientException.clientException;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ProfileType.DEFAULT_PLAIN;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CHECKSUM_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CRYPT4GH_OPTION;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.DAEMON_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.DECOMPRESS_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_SOURCE_PATH_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.MANIFEST_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.PARALLEL_STREAMS_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RECURSIVE_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RESUME_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.SYNC_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.ManifestParser.parse;
 
 @Configuration
 public class GlobusFileHandlerCliConfig {
 
+    @Bean
+    public ChecksumCalculatorFactory checksumCalculatorFactory(@Value("${data.copy.checksum.algorithms:md5}") final List<String> algorithms,
+                                                               @Value("${data.copy.checksum.async:true}") final boolean async,
+                                                               @Value("${data.copy.checksum.buffer-size:1048576}") final int bufferSize,
+                                                               @Value("${data.copy.checksum.queue-capacity:8}") final int queueCapacity,
+                                                               final TransferMetrics transferMetrics) {
+        return new ChecksumCalculatorFactory(
+                algorithms.stream()
+                        .map(ChecksumAlgorithm::of)
+                        .distinct()
+                        .toList(),
+                async,
+                bufferSize,
+                queueCapacity,
+                transferMetrics);
+    }
+
+    @Bean
+    public ChecksumVerifier checksumVerifier(@Qualifier("globusWebClient") final WebClient webClient,
+                                             @Value("${data.copy.checksum.endpoint:}") final String checksumEndpoint,
+                                             @Value("${data.copy.checksum.sidecar:true}") final boolean sidecarEnabled) {
+        return new ChecksumVerifier(webClient, checksumEndpoint, sidecarEnabled);
+    }
+
+    @Bean
+    public TransferTuner transferTuner(final WebClientProperties webClientProperties,
+                                       @Value("${data.copy.buffer-size:8192}") final int bufferSize,
+                                       @Value("${data.copy.auto-tune.enabled:false}") final boolean enabled,
+                                       @Value("${data.copy.auto-tune.buffer-size.min:8192}") final int minBufferSize,
+                                       @Value("${data.copy.auto-tune.buffer-size.max:4194304}") final int maxBufferSize,
+                                       @Value("${data.copy.auto-tune.pipe-size.min:8192}") final int minPipeSize,
+                                       @Value("${data.copy.auto-tune.pipe-size.max:4194304}") final int maxPipeSize,
+                                       @Value("${data.copy.auto-tune.sample-interval:1000}") final long sampleIntervalMillis,
+                                       @Value("${data.copy.auto-tune.period:10000}") final long tuningPeriodMillis) {
+        if (!enabled) {
+            return TransferTuner.fixed(bufferSize, webClientProperties.getPipeSize());
+        }
+        return new TransferTuner(
+                bufferSize,
+                webClientProperties.getPipeSize(),
+                minBufferSize,
+                maxBufferSize,
+                minPipeSize,
+                maxPipeSize,
+                sampleIntervalMillis,
+                tuningPeriodMillis);
+    }
+
+    @Bean
+    public BandwidthLimiter bandwidthLimiter(@Value("${data.copy.rate-limit.bytes-per-second:0}") final String bytesPerSecond,
+                                             @Value("${data.copy.rate-limit.burst:0}") final String burst,
+                                             @Value("${data.copy.rate-limit.schedule:}") final String schedule) {
+        return new BandwidthLimiter(
+                BandwidthLimiter.parseRate(bytesPerSecond),
+                BandwidthLimiter.parseRate(burst),
+                BandwidthLimiter.parseSchedule(schedule));
+    }
+
+    @Bean
+    public StallDetector stallDetector(@Value("${data.copy.stall.min-rate:0}") final String minRate,
+                                       @Value("${data.copy.stall.window:30000}") final long windowMillis,
+                                       @Value("${data.copy.stall.max-reconnects:5}") final int maxReconnects,
+                                       @Value("${data.copy.hedge.delay:0}") final long hedgeDelayMillis,
+                                       final TransferMetrics transferMetrics) {
+        return new StallDetector(
+                BandwidthLimiter.parseRate(minRate),
+                windowMillis,
+                maxReconnects,
+                hedgeDelayMillis,
+                transferMetrics);
+    }
+
+    @Bean
+    public SyncPolicy syncPolicy(@Value("${" + SYNC_LONG + ":${data.copy.sync.enabled:false}}") final boolean enabled,
+                                 @Value("${data.copy.sync.compare:size,mtime}") final String criteria) {
+        return enabled ? new SyncPolicy(SyncPolicy.parseCriteria(criteria)) : SyncPolicy.disabled();
+    }
+
+    @Bean
+    public Decompressor decompressor(@Value("${" + DECOMPRESS_LONG + ":${data.copy.decompress.enabled:false}}") final boolean enabled,
+                                     @Value("${data.copy.decompress.threads:0}") final int threads,
+                                     @Value("${data.copy.decompress.reorder-window:64}") final int reorderWindow,
+                                     final TransferMetrics transferMetrics) {
+        if (!enabled) {
+            return Decompressor.disabled();
+        }
+        return new Decompressor(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), reorderWindow, transferMetrics);
+    }
+
+    @Bean
+    public TransferOptions transferOptions(@Value("${" + PARALLEL_STREAMS_SHORT + ":${data.copy.parallelism:1}}") final int parallelism,
+                                           @Value("${data.copy.chunk-size:67108864}") final long chunkSize,
+                                           @Value("${" + RESUME_SHORT + ":${data.copy.resume.enabled:false}}") final boolean resume,
+                                           @Value("${data.copy.resume.checkpoint-interval:67108864}") final long checkpointInterval,
+                                           @Value("${data.copy.direct-buffer.enabled:true}") final boolean directBufferEnabled,
+                                           @Value("${data.copy.direct-buffer.size:1048576}") final int directBufferSize,
+                                           @Value("${data.copy.direct-buffer.pool-size:4}") final int directBufferPoolSize,
+                                           final ChecksumCalculatorFactory checksumCalculatorFactory,
+                                           final ChecksumVerifier checksumVerifier,
+                                           final TransferTuner transferTuner,
+                                           final BandwidthLimiter bandwidthLimiter,
+                                           final StallDetector stallDetector,
+                                           final SyncPolicy syncPolicy,
+                                           final Decompressor decompressor,
+                                           final TransferMetrics transferMetrics) {
+        return TransferOptions.builder()
+                .parallelism(parallelism)
+                .chunkSize(chunkSize)
+                .resume(resume)
+                .checkpointInterval(checkpointInterval)
+                .directBufferPool(directBufferEnabled ? new DirectBufferPool(directBufferSize, directBufferPoolSize) : null)
+                .checksumCalculatorFactory(checksumCalculatorFactory)
+                .checksumVerifier(checksumVerifier)
+                .transferTuner(transferTuner)
+                .bandwidthLimiter(bandwidthLimiter)
+                .stallDetector(stallDetector)
+                .syncPolicy(syncPolicy)
+                .decompressor(decompressor)
+                .transferMetrics(transferMetrics)
+                .build();
+    }
+
     @Profile(DEFAULT_PLAIN)
     @Bean
     public IGlobusFileTransfer defaultGlobusFileTransfer(@Qualifier("globusWebClient") final WebClient webClient,
                                                          final RetryTemplate retryTemplate,
                                                          final WebClientProperties webClientProperties,
-                                                         @Value("${data.copy.buffer-size:8192}") final int bufferSize) {
+                                                         @Value("${data.copy.buffer-size:8192}") final int bufferSize,
+                                                         final TransferOptions transferOptions) {
         return new DefaultGlobusFileTransfer(
                 webClient,
                 retryTemplate,
                 webClientProperties.getPipeSize(),
-                bufferSize);
+                bufferSize,
+                transferOptions);
+    }
+
+    @Profile(DEFAULT_PLAIN)
+    @Bean
+    public IGlobusFileTransferFactory defaultGlobusFileTransferFactory(final IGlobusFileTransfer defaultGlobusFileTransfer) {
+        return crypt4ghPrivateKeyPath -> {
+            if (crypt4ghPrivateKeyPath != null) {
+                throw clientException(400, "Private key %s supplied but --%s option is not enabled"
+                        .formatted(crypt4ghPrivateKeyPath, CRYPT4GH_OPTION));
+            }
+            return defaultGlobusFileTransfer;
+        };
+    }
+
+    /**
+     * Lists the source directory of {@code --recursive}, through the Transfer API unless
+     * {@code globus.listing.type} points to a local mount of the guest collection.
+     */
+    @ConditionalOnProperty(RECURSIVE_LONG)
+    @Bean
+    public DirectoryWalker directoryWalker(@Qualifier("globusTransferWebClient") final WebClient webClient,
+                                           final RetryTemplate retryTemplate,
+                                           @Value("${globus.listing.type:TRANSFER_API}") final ListingType listingType,
+                                           @Value("${globus.guest-collection.id:}") final String collectionId,
+                                           @Value("${globus.listing.page-size:1000}") final int pageSize,
+                                           @Value("${globus.listing.local-root:}") final String localRoot,
+                                           @Value("${globus.listing.concurrency:8}") final int concurrency) {
+        final DirectoryLister directoryLister = listingType == ListingType.LOCAL ?
+                new LocalDirectoryLister(Path.of(localRoot)) :
+                new GlobusTransferDirectoryLister(
+                        webClient,
+                        retryTemplate,
+                        collectionId,
+                        pageSize);
+        return new DirectoryWalker(directoryLister, concurrency);
+    }
+
+    /**
+     * Jobs are closed to new submissions and given {@code daemon.shutdown-timeout} to complete when the context is closed.
+     */
+    @ConditionalOnProperty(DAEMON_LONG)
+    @Bean
+    public DaemonServer daemonServer(final IGlobusFileTransferFactory globusFileTransferFactory,
+                                     final CircuitBreaker circuitBreaker,
+                                     @Value("${" + DAEMON_LONG + "}") final Path socketPath,
+                                     @Value("${daemon.concurrency:${batch.concurrency:4}}") final int concurrency,
+                                     @Value("${daemon.queue-capacity:100}") final int queueCapacity,
+                                     @Value("${daemon.progress-interval:10000}") final long progressIntervalMillis,
+                                     @Value("${daemon.shutdown-timeout:600000}") final long shutdownTimeoutMillis) {
+        return new DaemonServer(
+                socketPath,
+                globusFileTransferFactory,
+                circuitBreaker,
+                concurrency,
+                queueCapacity,
+                progressIntervalMillis,
+                shutdownTimeoutMillis);
     }
 
     @Bean
-    public GlobusFileHandlerCommandLineRunner globusFileHandlerCLRunner(final ApplicationContext applicationContext,
-                                                                        final IGlobusFileTransfer globusFileDownloader,
-                                                                        @Value("${" + GLOBUS_FILE_TRANSFER_SOURCE_PATH_SHORT + "}") final URI fileTransferSource,
-                                                                        @Value("${" + GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT + "}") final URI fileTransferDestination,
-                                                                        @Value("${" + GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT + "}") final long fileSize) {
+    public ApplicationRunner globusFileHandlerCLRunner(final ApplicationContext applicationContext,
+                                                       final IGlobusFileTransferFactory globusFileTransferFactory,
+                                                       final CircuitBreaker circuitBreaker,
+                                                       final ObjectProvider<DaemonServer> daemonServer,
+                                                       final ObjectProvider<DirectoryWalker> directoryWalker,
+                                                       @Value("${" + MANIFEST_SHORT + ":#{null}}") final Path manifestPath,
+                                                       @Value("${" + GLOBUS_FILE_TRANSFER_SOURCE_PATH_SHORT + ":#{null}}") final URI fileTransferSource,
+                                                       @Value("${" + GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT + ":#{null}}") final URI fileTransferDestination,
+                                                       @Value("${" + GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT + ":#{null}}") final Long fileSize,
+                                                       @Value("${" + CHECKSUM_SHORT + ":#{null}}") final String checksum,
+                                                       @Value("${batch.concurrency:4}") final int concurrency,
+                                                       @Value("${batch.result-file:#{null}}") final Path resultFile,
+                                                       @Value("${cds.training:false}") final boolean trainingRun) throws IOException {
+        final DaemonServer server = daemonServer.getIfAvailable();
+        if (server != null && !trainingRun) {
+            return new GlobusFileHandlerDaemonRunner(server);
+        }
+        final List<FileTransferDTO> fileTransfers = manifestPath != null ?
+                parse(manifestPath) :
+                server != null ? List.of() :
+                List.of(new FileTransferDTO(fileTransferSource, fileTransferDestination, fileSize, null, checksum));
         return new GlobusFileHandlerCommandLineRunner(
                 applicationContext,
-                globusFileDownloader,
-                fileTransferSource,
-                fileTransferDestination,
-                fileSize);
+                globusFileTransferFactory,
+                circuitBreaker,
+                directoryWalker.getIfAvailable(),
+                fileTransfers,
+                concurrency,
+                resultFile,
+                trainingRun);
     }
 }
@@ -20,6 +20,7 @@ package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.config;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -37,22 +38,47 @@ import org.springframework.security.oauth2.client.registration.ReactiveClientReg
 import org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 import uk.ac.ebi.gdp.file.handler.core.properties.WebClientProperties;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.exception.RetryAfterException;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhase;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhaseEvent;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.oauth2.TokenCache;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.oauth2.TokenCacheAuthorizedClientProvider;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.oauth2.TokenRefresher;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.properties.WebClientTuningProperties;
 
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 
 import static io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS;
+import static io.netty.channel.ChannelOption.SO_RCVBUF;
+import static io.netty.channel.ChannelOption.SO_SNDBUF;
+import static io.netty.channel.ChannelOption.TCP_NODELAY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static org.springframework.security.oauth2.core.AuthorizationGrantType.CLIENT_CREDENTIALS;
+import static reactor.core.publisher.Mono.defer;
 import static reactor.core.publisher.Mono.error;
 import static reactor.core.publisher.Mono.just;
 import static uk.ac.ebi.gdp.file.handler.core.exception.ClientException.clientException;
 import static uk.ac.ebi.gdp.file.handler.core.exception.ServerException.serverException;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.exception.RetryAfterException.parseRetryAfter;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RECURSIVE_LONG;
 
 @Configuration
 public class GlobusOauth2ClientConfig {
 
     private static final String GLOBUS_RESOURCE_ID = "GLOBUS_RESOURCE_ID";
+    private static final String GLOBUS_TRANSFER_ID = "GLOBUS_TRANSFER_ID";
+    private static final Duration TOKEN_CLOCK_SKEW = Duration.ofSeconds(60);
 
     @ConfigurationProperties(prefix = "webclient.connection")
     @Bean
@@ -60,17 +86,40 @@ public class GlobusOauth2ClientConfig {
         return new WebClientProperties();
     }
 
+    @ConfigurationProperties(prefix = "webclient.connection")
+    @Bean
+    public WebClientTuningProperties webClientTuningProperties() {
+        return new WebClientTuningProperties();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider globusConnectionProvider(final WebClientTuningProperties webClientTuningProperties) {
+        final WebClientTuningProperties.Pool pool = webClientTuningProperties.getPool();
+        final ConnectionProvider.Builder builder = ConnectionProvider.builder(pool.getName())
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireTimeout(Duration.ofMillis(pool.getPendingAcquireTimeout()));
+        if (pool.getMaxIdleTime() > 0) {
+            builder.maxIdleTime(Duration.ofMillis(pool.getMaxIdleTime()));
+        }
+        if (pool.getMaxLifeTime() > 0) {
+            builder.maxLifeTime(Duration.ofMillis(pool.getMaxLifeTime()));
+        }
+        if (pool.getEvictInBackground() > 0) {
+            builder.evictInBackground(Duration.ofMillis(pool.getEvictInBackground()));
+        }
+        return builder.build();
+    }
+
     @Bean
     public ReactiveClientRegistrationRepository getRegistration(
             @Value("${globus.aai.access-token.uri}") final String tokenUri,
             @Value("${globus.aai.client-id}") final String clientId,
             @Value("${globus.aai.client-secret}") final String clientSecret,
-            @Value("${globus.aai.scopes}") final String scope) {
-        return getRegistration(
-                tokenUri,
-                clientId,
-                clientSecret,
-                List.of(scope)
+            @Value("${globus.aai.scopes}") final String scope,
+            @Value("${globus.transfer.scopes:urn:globus:auth:scope:transfer.api.globus.org:all}") final String transferScope) {
+        return new InMemoryReactiveClientRegistrationRepository(
+                registration(GLOBUS_RESOURCE_ID, tokenUri, clientId, clientSecret, List.of(scope)),
+                registration(GLOBUS_TRANSFER_ID, tokenUri, clientId, clientSecret, List.of(transferScope))
         );
     }
 
@@ -80,13 +129,63 @@ public class GlobusOauth2ClientConfig {
         return new InMemoryReactiveOAuth2AuthorizedClientService(clientRegistrationRepository);
     }
 
+    @ConditionalOnProperty(name = "globus.aai.token-cache.enabled", havingValue = "true")
+    @Bean
+    public TokenCache tokenCache(@Value("${globus.aai.token-cache.dir}") final Path cacheDirectory) {
+        return new TokenCache(cacheDirectory, Clock.systemUTC());
+    }
+
+    @ConditionalOnProperty(name = "globus.aai.token-refresh.enabled", havingValue = "true")
+    @Bean
+    public TokenRefresher tokenRefresher(final ReactiveOAuth2AuthorizedClientService authorizedClientService,
+                                         final Optional<TokenCache> tokenCache,
+                                         @Value("${globus.aai.token-refresh.before-expiry}") final long refreshBeforeExpiryMillis,
+                                         @Value("${globus.aai.token-refresh.check-interval}") final long checkIntervalMillis) {
+        final Duration refreshWindow = Duration.ofMillis(refreshBeforeExpiryMillis);
+        final TokenRefresher tokenRefresher = new TokenRefresher(
+                authorizedClientService,
+                tokenProvider(tokenCache.orElse(null), refreshWindow),
+                GLOBUS_RESOURCE_ID,
+                refreshWindow,
+                Duration.ofMillis(checkIntervalMillis),
+                Clock.systemUTC());
+        tokenRefresher.start();
+        return tokenRefresher;
+    }
+
     @Bean("globusWebClient")
     public WebClient globusWebClient(final ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
                                      final WebClientProperties webClientProperties,
+                                     final WebClientTuningProperties webClientTuningProperties,
+                                     final ConnectionProvider globusConnectionProvider,
                                      @Value("${globus.guest-collection.domain}") final String baseURL) {
         return webClient(
                 authorizedClientManager,
                 webClientProperties,
+                webClientTuningProperties,
+                globusConnectionProvider,
+                GLOBUS_RESOURCE_ID,
+                baseURL
+        );
+    }
+
+    /**
+     * Client of the Globus Transfer API, used to list directories of a recursive download. Its
+     * token is fetched with the transfer scope on the first listing.
+     */
+    @ConditionalOnProperty(RECURSIVE_LONG)
+    @Bean("globusTransferWebClient")
+    public WebClient globusTransferWebClient(final ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
+                                             final WebClientProperties webClientProperties,
+                                             final WebClientTuningProperties webClientTuningProperties,
+                                             final ConnectionProvider globusConnectionProvider,
+                                             @Value("${globus.transfer.api-url:https://transfer.api.globus.org/v0.10}") final String baseURL) {
+        return webClient(
+                authorizedClientManager,
+                webClientProperties,
+                webClientTuningProperties,
+                globusConnectionProvider,
+                GLOBUS_TRANSFER_ID,
                 baseURL
         );
     }
@@ -94,34 +193,34 @@ public class GlobusOauth2ClientConfig {
     @Bean
     public ReactiveOAuth2AuthorizedClientManager authorizedClientManager(
             final ReactiveClientRegistrationRepository clientRegistrationRepository,
-            final ReactiveOAuth2AuthorizedClientService authorizedClientService) {
+            final ReactiveOAuth2AuthorizedClientService authorizedClientService,
+            final Optional<TokenCache> tokenCache) {
         return reactiveO2ACMClientCredentials(
                 clientRegistrationRepository,
-                authorizedClientService
+                authorizedClientService,
+                tokenCache.orElse(null)
         );
     }
 
-    private ReactiveClientRegistrationRepository getRegistration(final String tokenUri,
-                                                                 final String clientId,
-                                                                 final String clientSecret,
-                                                                 final List<String> scopes) {
-        final ClientRegistration registration = ClientRegistration
-                .withRegistrationId(GLOBUS_RESOURCE_ID)
+    private ClientRegistration registration(final String registrationId,
+                                            final String tokenUri,
+                                            final String clientId,
+                                            final String clientSecret,
+                                            final List<String> scopes) {
+        return ClientRegistration
+                .withRegistrationId(registrationId)
                 .tokenUri(tokenUri)
                 .clientId(clientId)
                 .clientSecret(clientSecret)
                 .authorizationGrantType(CLIENT_CREDENTIALS)
                 .scope(scopes)
                 .build();
-        return new InMemoryReactiveClientRegistrationRepository(registration);
     }
 
     private ReactiveOAuth2AuthorizedClientManager reactiveO2ACMClientCredentials(final ReactiveClientRegistrationRepository clientRegistrationRepository,
-                                                                                 final ReactiveOAuth2AuthorizedClientService authorizedClientService) {
-        final ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider =
-                ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
-                        .clientCredentials()
-                        .build();
+                                                                                 final ReactiveOAuth2AuthorizedClientService authorizedClientService,
+                                                                                 final TokenCache tokenCache) {
+        final ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider = tokenProvider(tokenCache, TOKEN_CLOCK_SKEW);
 
         final AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager authorizedClientManager =
                 reactiveOAuth2AuthorizedClientManager(clientRegistrationRepository, authorizedClientService);
@@ -129,6 +228,36 @@ public class GlobusOauth2ClientConfig {
         return authorizedClientManager;
     }
 
+    /**
+     * Client credentials provider looking up the token cache first when enabled.
+     *
+     * @param tokenCache      token cache, null if disabled.
+     * @param minimumValidity time a token should still be valid for to be used.
+     */
+    private ReactiveOAuth2AuthorizedClientProvider tokenProvider(final TokenCache tokenCache,
+                                                                 final Duration minimumValidity) {
+        final ReactiveOAuth2AuthorizedClientProvider tokenFetchProvider =
+                tracedTokenFetch(ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
+                        .clientCredentials(builder -> builder.clockSkew(TOKEN_CLOCK_SKEW))
+                        .build());
+        return tokenCache != null ?
+                new TokenCacheAuthorizedClientProvider(tokenFetchProvider, tokenCache, minimumValidity) :
+                tokenFetchProvider;
+    }
+
+    /**
+     * Records a {@link TransferPhase#TOKEN_FETCH} event whenever the provider fetches a new access token,
+     * the provider completes empty while the cached token is still valid.
+     */
+    private ReactiveOAuth2AuthorizedClientProvider tracedTokenFetch(final ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider) {
+        return context -> defer(() -> {
+            final TransferPhaseEvent tokenFetchEvent = TransferPhaseEvent.begin(TransferPhase.TOKEN_FETCH,
+                    context.getClientRegistration().getRegistrationId());
+            return authorizedClientProvider.authorize(context)
+                    .doOnNext(authorizedClient -> tokenFetchEvent.commit());
+        });
+    }
+
     private AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager reactiveOAuth2AuthorizedClientManager(final ReactiveClientRegistrationRepository clientRegistrationRepository,
                                                                                                                final ReactiveOAuth2AuthorizedClientService authorizedClientService) {
         return new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(
@@ -137,17 +266,28 @@ public class GlobusOauth2ClientConfig {
 
     private WebClient webClient(final ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
                                 final WebClientProperties webClientProperties,
+                                final WebClientTuningProperties webClientTuningProperties,
+                                final ConnectionProvider connectionProvider,
+                                final String registrationId,
                                 final String baseURL) {
-        final HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .protocol(webClientTuningProperties.getProtocols().toArray(HttpProtocol[]::new))
                 .option(CONNECT_TIMEOUT_MILLIS, webClientProperties.getConnectionTimeout() * 1000)
+                .option(TCP_NODELAY, webClientTuningProperties.isTcpNoDelay())
                 .doOnConnected(connection -> connection
-                        .addHandlerFirst(new ReadTimeoutHandler(webClientProperties.getReadWriteTimeout()))
-                        .addHandlerFirst(new WriteTimeoutHandler(webClientProperties.getReadWriteTimeout())));
+                        .addHandlerFirst(new ReadTimeoutHandler(webClientProperties.getReadWriteTimeout(), MILLISECONDS))
+                        .addHandlerFirst(new WriteTimeoutHandler(webClientProperties.getReadWriteTimeout(), MILLISECONDS)));
+        if (webClientTuningProperties.getReceiveBufferSize() > 0) {
+            httpClient = httpClient.option(SO_RCVBUF, webClientTuningProperties.getReceiveBufferSize());
+        }
+        if (webClientTuningProperties.getSendBufferSize() > 0) {
+            httpClient = httpClient.option(SO_SNDBUF, webClientTuningProperties.getSendBufferSize());
+        }
 
         final ServerOAuth2AuthorizedClientExchangeFilterFunction oauth =
                 new ServerOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
 
-        oauth.setDefaultClientRegistrationId(GLOBUS_RESOURCE_ID);
+        oauth.setDefaultClientRegistrationId(registrationId);
         return WebClient.builder()
                 .filters(exchangeFilterFunctions -> {
                     exchangeFilterFunctions.add(oauth);
@@ -160,7 +300,13 @@ public class GlobusOauth2ClientConfig {
 
     private ExchangeFilterFunction errorHandler() {
         return ExchangeFilterFunction.ofResponseProcessor(clientResponse -> {
-            if (clientResponse.statusCode().is4xxClientError()) {
+            final int statusCode = clientResponse.statusCode().value();
+            final Duration retryAfter = parseRetryAfter(clientResponse.headers().asHttpHeaders().getFirst(RETRY_AFTER));
+            if (statusCode == TOO_MANY_REQUESTS.value() || (statusCode == SERVICE_UNAVAILABLE.value() && retryAfter != null)) {
+                return clientResponse.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .flatMap(errorBody -> error(new RetryAfterException(statusCode, retryAfter, errorBody)));
+            } else if (clientResponse.statusCode().is4xxClientError()) {
                 return clientResponse.bodyToMono(String.class)
                         .flatMap(errorBody -> error(clientException(clientResponse.statusCode().value(), errorBody)));
             } else if (clientResponse.statusCode().is5xxServerError()) {
@@ -0,0 +1,64 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.MetricsExportFormat;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.MetricsExporter;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.MetricsExportFormat.PROMETHEUS;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterRegistry transferMeterRegistry(@Value("${metrics.export.format:PROMETHEUS}") final MetricsExportFormat format) {
+        return format == PROMETHEUS ?
+                new PrometheusMeterRegistry(PrometheusConfig.DEFAULT) :
+                new SimpleMeterRegistry();
+    }
+
+    @Bean
+    public TransferMetrics transferMetrics(final MeterRegistry transferMeterRegistry,
+                                           @Value("${metrics.stall-threshold:1000}") final long stallThresholdMillis) {
+        return new TransferMetrics(transferMeterRegistry, Duration.ofMillis(stallThresholdMillis));
+    }
+
+    /**
+     * Metrics are written when the application context is closed, i.e. once all downloads are over.
+     */
+    @Bean
+    public MetricsExporter metricsExporter(final MeterRegistry transferMeterRegistry,
+                                           @Value("${metrics.export.format:PROMETHEUS}") final MetricsExportFormat format,
+                                           @Value("${metrics.export.path:}") final String exportPath) {
+        return new MetricsExporter(
+                transferMeterRegistry,
+                format,
+                exportPath.isBlank() ? null : Path.of(exportPath));
+    }
+}
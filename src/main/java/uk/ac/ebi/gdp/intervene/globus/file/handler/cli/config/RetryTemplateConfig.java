@@ -17,29 +17,61 @@
  */
 package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.classify.BinaryExceptionClassifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
 import org.springframework.retry.backoff.BackOffPolicy;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.listener.RetryListenerSupport;
 import org.springframework.retry.support.RetryTemplate;
 import uk.ac.ebi.gdp.file.handler.core.exception.ServerException;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.exception.RetryAfterException;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.RetryEvent;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.CircuitBreaker;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.DecorrelatedJitterBackOffPolicy;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.RetryAfterBackOffPolicy;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.RetryBudget;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 @Configuration
 public class RetryTemplateConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryTemplateConfig.class);
+
+    @ConditionalOnProperty(name = "file.download.retry.budget.enabled", havingValue = "true")
+    @Bean
+    public RetryBudget retryBudget(@Value("${file.download.retry.budget.ratio}") final double ratio,
+                                   @Value("${file.download.retry.budget.min-per-second}") final double minPerSecond,
+                                   @Value("${file.download.retry.budget.max-balance}") final double maxBalance) {
+        return new RetryBudget(ratio, minPerSecond, maxBalance);
+    }
+
+    @Bean
+    public CircuitBreaker circuitBreaker(@Value("${batch.circuit-breaker.failure-threshold:0}") final int failureThreshold,
+                                         @Value("${batch.circuit-breaker.open-duration:60000}") final long openDurationMillis) {
+        return new CircuitBreaker(failureThreshold, openDurationMillis);
+    }
 
     @ConditionalOnProperty(name = "file.download.retry.strategy", havingValue = "FIXED")
     @Bean("fixedDelayRetryTemplate")
     public RetryTemplate fixedDelayRetryTemplate(@Value("${file.download.retry.attempts.back-off-period}") final long backOffPeriod,
-                                                 @Value("${file.download.retry.attempts.max}") final int maxAttempts) {
-        return initFixedDelayRetryTemplate(backOffPeriod, maxAttempts);
+                                                 @Value("${file.download.retry.attempts.max}") final int maxAttempts,
+                                                 @Value("${file.download.retry.retry-after.max:300000}") final long maxRetryAfter,
+                                                 final Optional<RetryBudget> retryBudget,
+                                                 final TransferMetrics transferMetrics) {
+        return initFixedDelayRetryTemplate(backOffPeriod, maxAttempts, maxRetryAfter, retryBudget.orElse(null), transferMetrics);
     }
 
     @ConditionalOnProperty(name = "file.download.retry.strategy", havingValue = "EXPONENTIAL")
@@ -47,42 +79,98 @@ public class RetryTemplateConfig {
     public RetryTemplate exponentialDelayRetryTemplate(@Value("${file.download.retry.attempts.delay}") final int delay,
                                                        @Value("${file.download.retry.attempts.maxDelay}") final int maxDelay,
                                                        @Value("${file.download.retry.attempts.multiplier}") final double multiplier,
-                                                       @Value("${file.download.retry.attempts.max}") final int maxAttempts) {
+                                                       @Value("${file.download.retry.attempts.max}") final int maxAttempts,
+                                                       @Value("${file.download.retry.retry-after.max:300000}") final long maxRetryAfter,
+                                                       final Optional<RetryBudget> retryBudget,
+                                                       final TransferMetrics transferMetrics) {
         return initExponentialDelayRetryTemplate(
-                delay, maxDelay, multiplier, maxAttempts
+                delay, maxDelay, multiplier, maxAttempts, maxRetryAfter, retryBudget.orElse(null), transferMetrics
         );
     }
 
+    @ConditionalOnProperty(name = "file.download.retry.strategy", havingValue = "DECORRELATED_JITTER")
+    @Bean("decorrelatedJitterRetryTemplate")
+    public RetryTemplate decorrelatedJitterRetryTemplate(@Value("${file.download.retry.attempts.delay}") final int delay,
+                                                         @Value("${file.download.retry.attempts.maxDelay}") final int maxDelay,
+                                                         @Value("${file.download.retry.attempts.max}") final int maxAttempts,
+                                                         @Value("${file.download.retry.retry-after.max:300000}") final long maxRetryAfter,
+                                                         final Optional<RetryBudget> retryBudget,
+                                                         final TransferMetrics transferMetrics) {
+        return retryTemplate(maxAttempts, new DecorrelatedJitterBackOffPolicy(delay, maxDelay), maxRetryAfter,
+                retryBudget.orElse(null), transferMetrics);
+    }
+
     private RetryTemplate initFixedDelayRetryTemplate(final long backOffPeriod,
-                                                      final int maxAttempts) {
+                                                      final int maxAttempts,
+                                                      final long maxRetryAfter,
+                                                      final RetryBudget retryBudget,
+                                                      final TransferMetrics transferMetrics) {
         final FixedBackOffPolicy backOffPolicy = new FixedBackOffPolicy();
         backOffPolicy.setBackOffPeriod(backOffPeriod);
-        return retryTemplate(maxAttempts, backOffPolicy);
+        return retryTemplate(maxAttempts, backOffPolicy, maxRetryAfter, retryBudget, transferMetrics);
     }
 
     private RetryTemplate initExponentialDelayRetryTemplate(final int delay,
                                                             final int maxDelay,
                                                             final double multiplier,
-                                                            final int maxAttempts) {
+                                                            final int maxAttempts,
+                                                            final long maxRetryAfter,
+                                                            final RetryBudget retryBudget,
+                                                            final TransferMetrics transferMetrics) {
         final ExponentialBackOffPolicy backOffPolicy = new ExponentialBackOffPolicy();
         backOffPolicy.setInitialInterval(delay);
         backOffPolicy.setMaxInterval(maxDelay);
         backOffPolicy.setMultiplier(multiplier);
-        return retryTemplate(maxAttempts, backOffPolicy);
+        return retryTemplate(maxAttempts, backOffPolicy, maxRetryAfter, retryBudget, transferMetrics);
     }
 
+    /**
+     * @param retryBudget budget every retry is withdrawn from, null for unlimited retries.
+     */
     private RetryTemplate retryTemplate(final int maxAttempts,
-                                        final BackOffPolicy backOffPolicy) {
+                                        final BackOffPolicy backOffPolicy,
+                                        final long maxRetryAfter,
+                                        final RetryBudget retryBudget,
+                                        final TransferMetrics transferMetrics) {
+        final Map<Class<? extends Throwable>, Boolean> retryableExceptions = retryableExceptions();
+        final BinaryExceptionClassifier retryableClassifier = new BinaryExceptionClassifier(retryableExceptions, false, true);
         final RetryTemplate retryTemplate = new RetryTemplate();
-        retryTemplate.setRetryPolicy(simpleRetryPolicy(maxAttempts));
-        retryTemplate.setBackOffPolicy(backOffPolicy);
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(maxAttempts, retryableExceptions, true));
+        retryTemplate.setBackOffPolicy(new RetryAfterBackOffPolicy(backOffPolicy, maxRetryAfter));
+        retryTemplate.registerListener(new RetryListenerSupport() {
+            @Override
+            public <T, E extends Throwable> boolean open(final RetryContext context,
+                                                         final RetryCallback<T, E> callback) {
+                if (retryBudget != null) {
+                    retryBudget.deposit();
+                }
+                return true;
+            }
+
+            @Override
+            public <T, E extends Throwable> void onError(final RetryContext context,
+                                                         final RetryCallback<T, E> callback,
+                                                         final Throwable throwable) {
+                transferMetrics.recordRetry();
+                RetryEvent.record(context.getRetryCount(), throwable);
+                if (retryBudget != null && context.getRetryCount() < maxAttempts && retryableClassifier.classify(throwable)
+                        && !retryBudget.tryWithdraw()) {
+                    LOGGER.warn("Retry budget exhausted, not retrying after {}", throwable.getMessage());
+                    context.setExhaustedOnly();
+                }
+            }
+        });
         return retryTemplate;
     }
 
-    private SimpleRetryPolicy simpleRetryPolicy(final int maxAttempts) {
-        final Map<Class<? extends Throwable>, Boolean> retryableExceptions = new HashMap<>(1);
+    /**
+     * Causes are looked up too, so failures wrapped by the stream reading from Globus are retried.
+     */
+    private Map<Class<? extends Throwable>, Boolean> retryableExceptions() {
+        final Map<Class<? extends Throwable>, Boolean> retryableExceptions = new HashMap<>(3);
         retryableExceptions.put(IOException.class, true);
         retryableExceptions.put(ServerException.class, true);
-        return new SimpleRetryPolicy(maxAttempts, retryableExceptions);
+        retryableExceptions.put(RetryAfterException.class, true);
+        return retryableExceptions;
     }
 }
@@ -17,9 +17,13 @@
  */
 package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant;
 
+import java.util.Collection;
+
 public enum ApplicationStatus {
     SUCCESS(0),
     APPLICATION_FAILED(1),
+    PARTIAL_FAILURE(2),
+    CHECKSUM_MISMATCH(3),
     INPUT_PROCESSING_ERROR(-1);
 
     private final int value;
@@ -31,4 +35,20 @@ public enum ApplicationStatus {
     public int getValue() {
         return value;
     }
+
+    /**
+     * @param statuses statuses of individual file transfers.
+     * @return SUCCESS if all transfers succeeded, PARTIAL_FAILURE if some did, otherwise the common
+     * status of all transfers if they failed the same way, APPLICATION_FAILED if not.
+     */
+    public static ApplicationStatus combine(final Collection<ApplicationStatus> statuses) {
+        final long succeeded = statuses.stream().filter(SUCCESS::equals).count();
+        if (succeeded == statuses.size()) {
+            return SUCCESS;
+        }
+        if (succeeded > 0) {
+            return PARTIAL_FAILURE;
+        }
+        return statuses.stream().distinct().count() == 1 ? statuses.iterator().next() : APPLICATION_FAILED;
+    }
 }
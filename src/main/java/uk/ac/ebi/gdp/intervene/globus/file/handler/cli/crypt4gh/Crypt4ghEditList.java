@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh;
+
+import static java.lang.Math.min;
+
+/**
+ * Applies a crypt4gh edit list (alternating lengths of plaintext to skip and to keep) to
+ * consecutive plaintext segments. When the list ends on a skip the rest of the plaintext is
+ * kept, when it ends on a keep the rest is discarded.
+ */
+public class Crypt4ghEditList {
+    private final long[] lengths;
+    private int index;
+    private long remaining;
+
+    public Crypt4ghEditList(final long[] lengths) {
+        this.lengths = lengths;
+        this.index = 0;
+        this.remaining = lengths.length > 0 ? lengths[0] : 0;
+    }
+
+    /**
+     * Moves the kept bytes of the next plaintext segment to the start of the buffer.
+     *
+     * @param plainSegment plaintext segment, in file order.
+     * @param length       number of plaintext bytes in the segment.
+     * @return number of kept bytes.
+     */
+    public int compact(final byte[] plainSegment,
+                       final int length) {
+        int read = 0;
+        int write = 0;
+        while (read < length) {
+            if (index >= lengths.length) {
+                if (isExhausted()) {
+                    return write;
+                }
+                System.arraycopy(plainSegment, read, plainSegment, write, length - read);
+                return write + length - read;
+            }
+            final int count = (int) min(remaining, length - read);
+            if (index % 2 == 1) {
+                System.arraycopy(plainSegment, read, plainSegment, write, count);
+                write += count;
+            }
+            read += count;
+            remaining -= count;
+            while (remaining == 0 && index < lengths.length) {
+                index++;
+                remaining = index < lengths.length ? lengths[index] : 0;
+            }
+        }
+        return write;
+    }
+
+    /**
+     * @return true if no further plaintext will be kept.
+     */
+    public boolean isExhausted() {
+        return index >= lengths.length && lengths.length % 2 == 0;
+    }
+}
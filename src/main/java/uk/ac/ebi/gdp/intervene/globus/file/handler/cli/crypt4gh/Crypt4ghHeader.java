@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghPrivateKey.KEY_LENGTH;
+
+/**
+ * Crypt4gh (v1) header: the data encryption keys and the optional edit list found in the
+ * header packets readable with the reader's private key. Packets encrypted for other
+ * recipients are ignored.
+ */
+public class Crypt4ghHeader {
+    private static final byte[] MAGIC = "crypt4gh".getBytes(US_ASCII);
+    private static final int VERSION = 1;
+    private static final int X25519_CHACHA20_IETF_POLY1305 = 0;
+    private static final int CHACHA20_IETF_POLY1305 = 0;
+    private static final int DATA_ENCRYPTION_PARAMETERS = 0;
+    private static final int DATA_EDIT_LIST = 1;
+    private static final int NONCE_LENGTH = 12;
+
+    private final List<byte[]> dataKeys;
+    private final long[] editList;
+
+    private Crypt4ghHeader(final List<byte[]> dataKeys,
+                           final long[] editList) {
+        this.dataKeys = dataKeys;
+        this.editList = editList;
+    }
+
+    /**
+     * Reads the header from the stream, leaving the stream positioned at the first data segment.
+     *
+     * @param inputStream crypt4gh encrypted stream.
+     * @param privateKey  reader private key.
+     * @return header.
+     * @throws IOException in case the header is malformed or holds no data key for the reader.
+     */
+    public static Crypt4ghHeader read(final InputStream inputStream,
+                                      final Crypt4ghPrivateKey privateKey) throws IOException {
+        final ByteBuffer preamble = ByteBuffer.wrap(readFully(inputStream, 16)).order(LITTLE_ENDIAN);
+        final byte[] magic = new byte[MAGIC.length];
+        preamble.get(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a crypt4gh encrypted stream");
+        }
+        final int version = preamble.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported crypt4gh version %s".formatted(version));
+        }
+
+        final int packetCount = preamble.getInt();
+        final List<byte[]> dataKeys = new ArrayList<>(1);
+        long[] editList = null;
+        for (int i = 0; i < packetCount; i++) {
+            final int packetLength = ByteBuffer.wrap(readFully(inputStream, 4)).order(LITTLE_ENDIAN).getInt();
+            if (packetLength < 4) {
+                throw new IOException("Invalid crypt4gh header packet length %s".formatted(packetLength));
+            }
+            final byte[] packet = decryptPacket(readFully(inputStream, packetLength - 4), privateKey);
+            if (packet == null) {
+                continue;
+            }
+            final ByteBuffer packetBuffer = ByteBuffer.wrap(packet).order(LITTLE_ENDIAN);
+            final int packetType = packetBuffer.getInt();
+            if (packetType == DATA_ENCRYPTION_PARAMETERS) {
+                final int encryptionMethod = packetBuffer.getInt();
+                if (encryptionMethod != CHACHA20_IETF_POLY1305) {
+                    throw new IOException("Unsupported crypt4gh data encryption method %s".formatted(encryptionMethod));
+                }
+                final byte[] dataKey = new byte[KEY_LENGTH];
+                packetBuffer.get(dataKey);
+                dataKeys.add(dataKey);
+            } else if (packetType == DATA_EDIT_LIST) {
+                if (editList != null) {
+                    throw new IOException("Crypt4gh header contains more than one edit list");
+                }
+                editList = new long[packetBuffer.getInt()];
+                for (int j = 0; j < editList.length; j++) {
+                    editList[j] = packetBuffer.getLong();
+                }
+            } else {
+                throw new IOException("Unsupported crypt4gh header packet type %s".formatted(packetType));
+            }
+        }
+        if (dataKeys.isEmpty()) {
+            throw new IOException("No crypt4gh data key could be decrypted with the supplied private key");
+        }
+        return new Crypt4ghHeader(dataKeys, editList == null || editList.length == 0 ? null : editList);
+    }
+
+    public List<byte[]> getDataKeys() {
+        return dataKeys;
+    }
+
+    /**
+     * @return alternating skip/keep lengths applied to the plaintext, null if the header has no edit list.
+     */
+    public long[] getEditList() {
+        return editList;
+    }
+
+    private static byte[] decryptPacket(final byte[] packet,
+                                        final Crypt4ghPrivateKey privateKey) throws IOException {
+        final ByteBuffer packetBuffer = ByteBuffer.wrap(packet).order(LITTLE_ENDIAN);
+        if (packetBuffer.getInt() != X25519_CHACHA20_IETF_POLY1305) {
+            return null;
+        }
+        final byte[] writerPublicKey = Arrays.copyOfRange(packet, 4, 4 + KEY_LENGTH);
+        final int nonceOffset = 4 + KEY_LENGTH;
+        final int payloadOffset = nonceOffset + NONCE_LENGTH;
+        try {
+            final Cipher cipher = Cipher.getInstance("ChaCha20-Poly1305");
+            cipher.init(Cipher.DECRYPT_MODE,
+                    new SecretKeySpec(privateKey.sharedKey(writerPublicKey), "ChaCha20"),
+                    new IvParameterSpec(packet, nonceOffset, NONCE_LENGTH));
+            return cipher.doFinal(packet, payloadOffset, packet.length - payloadOffset);
+        } catch (GeneralSecurityException e) {
+            // Packet encrypted for another recipient
+            return null;
+        }
+    }
+
+    private static byte[] readFully(final InputStream inputStream,
+                                    final int length) throws IOException {
+        final byte[] bytes = inputStream.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Crypt4gh header is truncated");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferStage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.min;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghSegmentDecryptor.CIPHER_SEGMENT_SIZE;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghSegmentDecryptor.SEGMENT_SIZE;
+
+/**
+ * Decrypting view of a crypt4gh encrypted stream. The header is read on construction,
+ * segments are then decrypted and authenticated as plaintext is consumed.
+ * <p>
+ * When an executor is supplied, up to {@code reorderWindow} segments read ahead are
+ * decrypted concurrently by the executor while plaintext is still handed out strictly in
+ * file order, so memory stays capped at {@code reorderWindow + 1} segment buffers.
+ */
+public class Crypt4ghInputStream extends InputStream {
+    private final InputStream encryptedInputStream;
+    private final Crypt4ghHeader header;
+    private final Crypt4ghEditList editList;
+    private final ExecutorService executorService;
+    private final int reorderWindow;
+    private final TransferMetrics transferMetrics;
+    private final Queue<Crypt4ghSegmentDecryptor> segmentDecryptors;
+    private final ArrayDeque<Future<Segment>> pendingSegments;
+    private final ArrayDeque<Segment> freeSegments;
+    private Segment currentSegment;
+    private boolean endOfStream;
+
+    public Crypt4ghInputStream(final InputStream encryptedInputStream,
+                               final Crypt4ghPrivateKey privateKey) throws IOException {
+        this(encryptedInputStream, privateKey, null, 0, TransferMetrics.noop());
+    }
+
+    /**
+     * @param encryptedInputStream crypt4gh encrypted stream.
+     * @param privateKey           reader private key.
+     * @param executorService      executor decrypting segments, null to decrypt on the reading thread.
+     * @param reorderWindow        maximum number of segments decrypted ahead of the reader.
+     * @param transferMetrics      meters recording the time spent decrypting.
+     * @throws IOException in case the header cannot be read.
+     */
+    public Crypt4ghInputStream(final InputStream encryptedInputStream,
+                               final Crypt4ghPrivateKey privateKey,
+                               final ExecutorService executorService,
+                               final int reorderWindow,
+                               final TransferMetrics transferMetrics) throws IOException {
+        if (executorService != null && reorderWindow < 1) {
+            throw new IllegalArgumentException("Reorder window should be at least 1 segment, found %s".formatted(reorderWindow));
+        }
+        this.encryptedInputStream = encryptedInputStream;
+        this.header = Crypt4ghHeader.read(encryptedInputStream, privateKey);
+        this.editList = header.getEditList() == null ? null : new Crypt4ghEditList(header.getEditList());
+        this.executorService = executorService;
+        this.reorderWindow = reorderWindow;
+        this.transferMetrics = transferMetrics;
+        this.segmentDecryptors = new ConcurrentLinkedQueue<>();
+        this.segmentDecryptors.add(new Crypt4ghSegmentDecryptor(header.getDataKeys()));
+        this.pendingSegments = new ArrayDeque<>();
+        this.freeSegments = new ArrayDeque<>();
+        this.currentSegment = new Segment();
+        this.endOfStream = false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] singleByte = new byte[1];
+        return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes,
+                    final int offset,
+                    final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (currentSegment.position == currentSegment.limit) {
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+        final int count = min(length, currentSegment.limit - currentSegment.position);
+        System.arraycopy(currentSegment.plain, currentSegment.position, bytes, offset, count);
+        currentSegment.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return currentSegment.limit - currentSegment.position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pendingSegments.forEach(future -> future.cancel(true));
+        pendingSegments.clear();
+        encryptedInputStream.close();
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (editList != null && editList.isExhausted()) {
+            return false;
+        }
+        final Segment segment;
+        if (executorService == null) {
+            segment = currentSegment;
+            if (!readSegment(segment)) {
+                return false;
+            }
+            segment.decrypt();
+        } else {
+            fillReorderWindow();
+            if (pendingSegments.isEmpty()) {
+                return false;
+            }
+            segment = await(pendingSegments.poll());
+            freeSegments.add(currentSegment);
+            currentSegment = segment;
+        }
+        segment.position = 0;
+        segment.limit = editList == null ? segment.plainLength : editList.compact(segment.plain, segment.plainLength);
+        return true;
+    }
+
+    private void fillReorderWindow() throws IOException {
+        while (!endOfStream && pendingSegments.size() < reorderWindow) {
+            final Segment segment = freeSegments.isEmpty() ? new Segment() : freeSegments.poll();
+            if (!readSegment(segment)) {
+                freeSegments.add(segment);
+                return;
+            }
+            pendingSegments.add(executorService.submit(() -> {
+                segment.decrypt();
+                return segment;
+            }));
+        }
+    }
+
+    private boolean readSegment(final Segment segment) throws IOException {
+        segment.cipherLength = encryptedInputStream.readNBytes(segment.cipher, 0, CIPHER_SEGMENT_SIZE);
+        if (segment.cipherLength < CIPHER_SEGMENT_SIZE) {
+            endOfStream = true;
+        }
+        return segment.cipherLength > 0;
+    }
+
+    private Segment await(final Future<Segment> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decrypting crypt4gh segment");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Unable to decrypt crypt4gh segment: %s".formatted(e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    /**
+     * Reusable cipher and plaintext buffers of one segment.
+     */
+    private class Segment {
+        private final byte[] cipher = new byte[CIPHER_SEGMENT_SIZE];
+        private final byte[] plain = new byte[SEGMENT_SIZE];
+        private int cipherLength;
+        private int plainLength;
+        private int position;
+        private int limit;
+
+        private void decrypt() throws IOException {
+            Crypt4ghSegmentDecryptor segmentDecryptor = segmentDecryptors.poll();
+            if (segmentDecryptor == null) {
+                segmentDecryptor = new Crypt4ghSegmentDecryptor(header.getDataKeys());
+            }
+            final long startNanos = System.nanoTime();
+            try {
+                plainLength = segmentDecryptor.decrypt(cipher, cipherLength, plain);
+            } finally {
+                segmentDecryptors.add(segmentDecryptor);
+                transferMetrics.recordStage(TransferStage.DECRYPT, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
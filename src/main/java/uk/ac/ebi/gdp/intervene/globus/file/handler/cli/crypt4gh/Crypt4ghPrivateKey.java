@@ -0,0 +1,211 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh;
+
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.bouncycastle.crypto.generators.SCrypt;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPrivateKeySpec;
+import java.security.spec.XECPublicKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllLines;
+
+/**
+ * Crypt4gh X25519 private key of the reader, loaded from a crypt4gh formatted secret key
+ * file (optionally protected by a passphrase using scrypt or pbkdf2_hmac_sha256).
+ */
+public class Crypt4ghPrivateKey {
+    public static final int KEY_LENGTH = 32;
+    private static final String BEGIN_PRIVATE_KEY = "-----BEGIN CRYPT4GH PRIVATE KEY-----";
+    private static final String END_PRIVATE_KEY = "-----END CRYPT4GH PRIVATE KEY-----";
+    private static final byte[] MAGIC = "c4gh-v1".getBytes(US_ASCII);
+    private static final String NONE = "none";
+    private static final String SCRYPT = "scrypt";
+    private static final String PBKDF2_HMAC_SHA256 = "pbkdf2_hmac_sha256";
+    private static final String CHACHA20_POLY1305 = "chacha20_poly1305";
+    private static final int NONCE_LENGTH = 12;
+    private static final String X25519 = "X25519";
+    private static final BigInteger X25519_BASE_POINT = BigInteger.valueOf(9);
+
+    private final byte[] secretKey;
+    private final byte[] publicKey;
+
+    private Crypt4ghPrivateKey(final byte[] secretKey) throws GeneralSecurityException {
+        this.secretKey = secretKey;
+        this.publicKey = x25519(secretKey, X25519_BASE_POINT);
+    }
+
+    /**
+     * @param privateKeyPath path to crypt4gh secret key file.
+     * @param passphrase     passphrase of the key, ignored for unprotected keys.
+     * @return private key.
+     * @throws IOException in case key cannot be read or decrypted.
+     */
+    public static Crypt4ghPrivateKey load(final Path privateKeyPath,
+                                          final char[] passphrase) throws IOException {
+        final ByteBuffer keyBuffer = ByteBuffer.wrap(decodePem(readAllLines(privateKeyPath, US_ASCII), privateKeyPath));
+        try {
+            final byte[] magic = new byte[MAGIC.length];
+            keyBuffer.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("%s is not a crypt4gh private key".formatted(privateKeyPath));
+            }
+            final String kdfName = new String(readString(keyBuffer), US_ASCII);
+            final byte[] kdfOptions = NONE.equals(kdfName) ? null : readString(keyBuffer);
+            final String cipherName = new String(readString(keyBuffer), US_ASCII);
+            final byte[] keyData = readString(keyBuffer);
+
+            if (NONE.equals(cipherName)) {
+                return new Crypt4ghPrivateKey(checkKeyLength(keyData, privateKeyPath));
+            }
+            if (!CHACHA20_POLY1305.equals(cipherName)) {
+                throw new IOException("Unsupported private key cipher %s".formatted(cipherName));
+            }
+            if (passphrase == null || passphrase.length == 0) {
+                throw new IOException("Private key %s is protected by a passphrase but none was supplied".formatted(privateKeyPath));
+            }
+            final byte[] derivedKey = deriveKey(kdfName, kdfOptions, passphrase);
+            final Cipher cipher = Cipher.getInstance("ChaCha20-Poly1305");
+            cipher.init(Cipher.DECRYPT_MODE,
+                    new SecretKeySpec(derivedKey, "ChaCha20"),
+                    new IvParameterSpec(keyData, 0, NONCE_LENGTH));
+            final byte[] secretKey = cipher.doFinal(keyData, NONCE_LENGTH, keyData.length - NONCE_LENGTH);
+            return new Crypt4ghPrivateKey(checkKeyLength(secretKey, privateKeyPath));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Private key %s is truncated".formatted(privateKeyPath), e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to decrypt private key %s: %s".formatted(privateKeyPath, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Derives the key shared with the writer of a header packet, i.e. the receiver session
+     * key of libsodium crypto_kx: BLAKE2b-512(X25519(sk, writerPk) || writerPk || readerPk)[32..64].
+     *
+     * @param writerPublicKey public key of the writer found in the header packet.
+     * @return 32 bytes shared key.
+     * @throws GeneralSecurityException in case key agreement fails.
+     */
+    public byte[] sharedKey(final byte[] writerPublicKey) throws GeneralSecurityException {
+        final byte[] dhSecret = x25519(secretKey, toBigInteger(writerPublicKey));
+        final Blake2bDigest blake2bDigest = new Blake2bDigest(512);
+        blake2bDigest.update(dhSecret, 0, dhSecret.length);
+        blake2bDigest.update(writerPublicKey, 0, writerPublicKey.length);
+        blake2bDigest.update(publicKey, 0, publicKey.length);
+        final byte[] sessionKeys = new byte[64];
+        blake2bDigest.doFinal(sessionKeys, 0);
+        return Arrays.copyOfRange(sessionKeys, KEY_LENGTH, 2 * KEY_LENGTH);
+    }
+
+    private static byte[] decodePem(final List<String> lines,
+                                    final Path privateKeyPath) throws IOException {
+        final StringBuilder base64 = new StringBuilder();
+        boolean inKey = false;
+        for (final String line : lines) {
+            final String trimmed = line.strip();
+            if (BEGIN_PRIVATE_KEY.equals(trimmed)) {
+                inKey = true;
+            } else if (END_PRIVATE_KEY.equals(trimmed)) {
+                return Base64.getDecoder().decode(base64.toString());
+            } else if (inKey) {
+                base64.append(trimmed);
+            }
+        }
+        throw new IOException("%s doesn't contain a crypt4gh private key".formatted(privateKeyPath));
+    }
+
+    private static byte[] readString(final ByteBuffer byteBuffer) {
+        final byte[] value = new byte[Short.toUnsignedInt(byteBuffer.getShort())];
+        byteBuffer.get(value);
+        return value;
+    }
+
+    private static byte[] deriveKey(final String kdfName,
+                                    final byte[] kdfOptions,
+                                    final char[] passphrase) throws IOException, GeneralSecurityException {
+        final ByteBuffer options = ByteBuffer.wrap(kdfOptions);
+        final int rounds = options.getInt();
+        final byte[] salt = new byte[options.remaining()];
+        options.get(salt);
+        return switch (kdfName) {
+            case SCRYPT -> SCrypt.generate(toUtf8(passphrase), salt, 1 << 14, 8, 1, KEY_LENGTH);
+            case PBKDF2_HMAC_SHA256 -> SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                    .generateSecret(new PBEKeySpec(passphrase, salt, rounds, KEY_LENGTH * 8))
+                    .getEncoded();
+            default -> throw new IOException("Unsupported private key derivation function %s".formatted(kdfName));
+        };
+    }
+
+    private static byte[] toUtf8(final char[] passphrase) {
+        final ByteBuffer encoded = UTF_8.encode(CharBuffer.wrap(passphrase));
+        return Arrays.copyOfRange(encoded.array(), encoded.position(), encoded.limit());
+    }
+
+    private static byte[] checkKeyLength(final byte[] secretKey,
+                                         final Path privateKeyPath) throws IOException {
+        if (secretKey.length != KEY_LENGTH) {
+            throw new IOException("Private key %s should be %s bytes long".formatted(privateKeyPath, KEY_LENGTH));
+        }
+        return secretKey;
+    }
+
+    private static byte[] x25519(final byte[] scalar,
+                                 final BigInteger u) throws GeneralSecurityException {
+        final KeyFactory keyFactory = KeyFactory.getInstance(X25519);
+        final PrivateKey privateKey = keyFactory.generatePrivate(new XECPrivateKeySpec(NamedParameterSpec.X25519, scalar));
+        final PublicKey peerPublicKey = keyFactory.generatePublic(new XECPublicKeySpec(NamedParameterSpec.X25519, u));
+        final KeyAgreement keyAgreement = KeyAgreement.getInstance(X25519);
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(peerPublicKey, true);
+        return keyAgreement.generateSecret();
+    }
+
+    /**
+     * Decodes a little-endian X25519 u-coordinate, masking the unused most significant bit (RFC 7748).
+     */
+    private static BigInteger toBigInteger(final byte[] littleEndianU) {
+        final byte[] bigEndianU = new byte[littleEndianU.length];
+        for (int i = 0; i < littleEndianU.length; i++) {
+            bigEndianU[i] = littleEndianU[littleEndianU.length - 1 - i];
+        }
+        bigEndianU[0] &= 0x7f;
+        return new BigInteger(1, bigEndianU);
+    }
+}
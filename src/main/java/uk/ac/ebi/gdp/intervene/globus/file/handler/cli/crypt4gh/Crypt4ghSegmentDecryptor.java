@@ -0,0 +1,77 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+/**
+ * Decrypts and authenticates crypt4gh data segments (nonce, ChaCha20-Poly1305 ciphertext
+ * and MAC). Instances are not thread safe, use one decryptor per thread.
+ */
+public class Crypt4ghSegmentDecryptor {
+    public static final int SEGMENT_SIZE = 65536;
+    public static final int NONCE_LENGTH = 12;
+    public static final int MAC_LENGTH = 16;
+    public static final int CIPHER_SEGMENT_SIZE = NONCE_LENGTH + SEGMENT_SIZE + MAC_LENGTH;
+
+    private final List<SecretKeySpec> dataKeys;
+    private final Cipher cipher;
+
+    public Crypt4ghSegmentDecryptor(final List<byte[]> dataKeys) throws IOException {
+        this.dataKeys = dataKeys.stream()
+                .map(dataKey -> new SecretKeySpec(dataKey, "ChaCha20"))
+                .toList();
+        try {
+            this.cipher = Cipher.getInstance("ChaCha20-Poly1305");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("ChaCha20-Poly1305 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * @param cipherSegment encrypted segment.
+     * @param length        number of bytes of the encrypted segment.
+     * @param plainSegment  buffer of at least {@link #SEGMENT_SIZE} bytes receiving the plaintext.
+     * @return number of plaintext bytes.
+     * @throws IOException in case no data key authenticates the segment.
+     */
+    public int decrypt(final byte[] cipherSegment,
+                       final int length,
+                       final byte[] plainSegment) throws IOException {
+        if (length <= NONCE_LENGTH + MAC_LENGTH) {
+            throw new IOException("Crypt4gh segment of %s bytes is truncated".formatted(length));
+        }
+        for (final SecretKeySpec dataKey : dataKeys) {
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, dataKey, new IvParameterSpec(cipherSegment, 0, NONCE_LENGTH));
+                return cipher.doFinal(cipherSegment, NONCE_LENGTH, length - NONCE_LENGTH, plainSegment, 0);
+            } catch (AEADBadTagException e) {
+                // Segment encrypted with another data key
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to decrypt crypt4gh segment: %s".formatted(e.getMessage()), e);
+            }
+        }
+        throw new IOException("Crypt4gh segment could not be authenticated with any data key");
+    }
+}
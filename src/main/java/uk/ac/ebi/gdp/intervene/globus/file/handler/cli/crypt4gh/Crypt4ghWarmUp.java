@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.XECPublicKey;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghPrivateKey.KEY_LENGTH;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghSegmentDecryptor.MAC_LENGTH;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghSegmentDecryptor.NONCE_LENGTH;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghSegmentDecryptor.SEGMENT_SIZE;
+
+/**
+ * Round trip of a small file through the native decryption, used by training runs so that the class data
+ * sharing archive holds the decryption classes. The file, two segments and an edit list, is encrypted in
+ * memory for the reader key: the key shared with an ephemeral writer public key is the one the reader derives.
+ */
+public final class Crypt4ghWarmUp {
+    private static final byte[] MAGIC = "crypt4gh".getBytes(US_ASCII);
+    private static final int VERSION = 1;
+    private static final int X25519_CHACHA20_IETF_POLY1305 = 0;
+    private static final int CHACHA20_IETF_POLY1305 = 0;
+    private static final int DATA_ENCRYPTION_PARAMETERS = 0;
+    private static final int DATA_EDIT_LIST = 1;
+    private static final int PLAINTEXT_LENGTH = SEGMENT_SIZE + 1024;
+    private static final long[] EDIT_LIST = {16, PLAINTEXT_LENGTH - 32};
+
+    private Crypt4ghWarmUp() {
+    }
+
+    /**
+     * @param privateKey      reader private key.
+     * @param executorService executor decrypting segments, null to decrypt on the reading thread.
+     * @param reorderWindow   maximum number of segments decrypted ahead of the reader.
+     * @param transferMetrics meters recording the time spent decrypting.
+     * @throws IOException in case the file isn't decrypted to its plaintext.
+     */
+    public static void run(final Crypt4ghPrivateKey privateKey,
+                           final ExecutorService executorService,
+                           final int reorderWindow,
+                           final TransferMetrics transferMetrics) throws IOException {
+        final SecureRandom random = new SecureRandom();
+        final byte[] plaintext = new byte[PLAINTEXT_LENGTH];
+        random.nextBytes(plaintext);
+        final byte[] encrypted;
+        try {
+            encrypted = encrypt(privateKey, plaintext, random);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt crypt4gh warm up file: %s".formatted(e.getMessage()), e);
+        }
+        final byte[] decrypted;
+        try (final InputStream inputStream = new Crypt4ghInputStream(
+                new ByteArrayInputStream(encrypted), privateKey, executorService, reorderWindow, transferMetrics)) {
+            decrypted = inputStream.readAllBytes();
+        }
+        if (!Arrays.equals(plaintext, (int) EDIT_LIST[0], (int) (EDIT_LIST[0] + EDIT_LIST[1]), decrypted, 0, decrypted.length)) {
+            throw new IOException("Crypt4gh warm up file wasn't decrypted to its plaintext");
+        }
+    }
+
+    private static byte[] encrypt(final Crypt4ghPrivateKey privateKey,
+                                  final byte[] plaintext,
+                                  final SecureRandom random) throws GeneralSecurityException {
+        final byte[] writerPublicKey = toLittleEndian(
+                ((XECPublicKey) KeyPairGenerator.getInstance("X25519").generateKeyPair().getPublic()).getU());
+        final byte[] sharedKey = privateKey.sharedKey(writerPublicKey);
+        final byte[] dataKey = new byte[KEY_LENGTH];
+        random.nextBytes(dataKey);
+
+        final ByteBuffer dataKeyPacket = ByteBuffer.allocate(8 + KEY_LENGTH).order(LITTLE_ENDIAN)
+                .putInt(DATA_ENCRYPTION_PARAMETERS)
+                .putInt(CHACHA20_IETF_POLY1305)
+                .put(dataKey);
+        final ByteBuffer editListPacket = ByteBuffer.allocate(8 + 8 * EDIT_LIST.length).order(LITTLE_ENDIAN)
+                .putInt(DATA_EDIT_LIST)
+                .putInt(EDIT_LIST.length);
+        for (final long length : EDIT_LIST) {
+            editListPacket.putLong(length);
+        }
+
+        final ByteBuffer file = ByteBuffer.allocate(1024 + plaintext.length + 2 * (NONCE_LENGTH + MAC_LENGTH)).order(LITTLE_ENDIAN)
+                .put(MAGIC)
+                .putInt(VERSION)
+                .putInt(2);
+        for (final byte[] packet : new byte[][]{dataKeyPacket.array(), editListPacket.array()}) {
+            final byte[] encryptedPacket = seal(sharedKey, packet, 0, packet.length, random);
+            file.putInt(4 + 4 + KEY_LENGTH + encryptedPacket.length)
+                    .putInt(X25519_CHACHA20_IETF_POLY1305)
+                    .put(writerPublicKey)
+                    .put(encryptedPacket);
+        }
+        for (int offset = 0; offset < plaintext.length; offset += SEGMENT_SIZE) {
+            file.put(seal(dataKey, plaintext, offset, Math.min(SEGMENT_SIZE, plaintext.length - offset), random));
+        }
+        return Arrays.copyOf(file.array(), file.position());
+    }
+
+    /**
+     * @return nonce followed by the ChaCha20-Poly1305 ciphertext and MAC.
+     */
+    private static byte[] seal(final byte[] key,
+                               final byte[] plaintext,
+                               final int offset,
+                               final int length,
+                               final SecureRandom random) throws GeneralSecurityException {
+        final byte[] sealed = new byte[NONCE_LENGTH + length + MAC_LENGTH];
+        random.nextBytes(sealed);
+        final Cipher cipher = Cipher.getInstance("ChaCha20-Poly1305");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "ChaCha20"), new IvParameterSpec(sealed, 0, NONCE_LENGTH));
+        cipher.doFinal(plaintext, offset, length, sealed, NONCE_LENGTH);
+        return sealed;
+    }
+
+    private static byte[] toLittleEndian(final BigInteger u) {
+        final byte[] bigEndian = u.toByteArray();
+        final byte[] littleEndian = new byte[KEY_LENGTH];
+        for (int i = 0; i < Math.min(bigEndian.length, KEY_LENGTH); i++) {
+            littleEndian[i] = bigEndian[bigEndian.length - 1 - i];
+        }
+        return littleEndian;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.daemon;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.DownloadJobDTO;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.DownloadJobEventDTO;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.FileTransferDTO;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.CircuitBreaker;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransferFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.APPLICATION_FAILED;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.ManifestParser.validate;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer.UNKNOWN_FILE_SIZE;
+
+/**
+ * One client of the {@link DaemonServer}. The client writes one job per line, a JSON object with the fields
+ * of a JSON manifest entry plus an optional {@code id}, and reads one JSON event per line:
+ * {@code accepted} or {@code rejected}, then {@code started}, {@code progress} and {@code finished} with the
+ * status and exit code of the download. The connection is closed once the client has stopped sending jobs
+ * and all of its jobs are finished.
+ */
+class DaemonConnection implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonConnection.class);
+    private static final String ACCEPTED = "accepted";
+    private static final String REJECTED = "rejected";
+    private static final String STARTED = "started";
+    private static final String PROGRESS = "progress";
+    private static final String FINISHED = "finished";
+
+    private final SocketChannel socketChannel;
+    private final ObjectMapper objectMapper;
+    private final IGlobusFileTransferFactory globusFileTransferFactory;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService jobExecutor;
+    private final Semaphore jobSlots;
+    private final ScheduledExecutorService progressExecutor;
+    private final long progressIntervalMillis;
+    private final Writer writer;
+    private final AtomicInteger pendingJobs;
+    private volatile boolean inputClosed;
+
+    DaemonConnection(final SocketChannel socketChannel,
+                     final ObjectMapper objectMapper,
+                     final IGlobusFileTransferFactory globusFileTransferFactory,
+                     final CircuitBreaker circuitBreaker,
+                     final ExecutorService jobExecutor,
+                     final Semaphore jobSlots,
+                     final ScheduledExecutorService progressExecutor,
+                     final long progressIntervalMillis) {
+        this.socketChannel = socketChannel;
+        this.objectMapper = objectMapper;
+        this.globusFileTransferFactory = globusFileTransferFactory;
+        this.circuitBreaker = circuitBreaker;
+        this.jobExecutor = jobExecutor;
+        this.jobSlots = jobSlots;
+        this.progressExecutor = progressExecutor;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(socketChannel), UTF_8));
+        this.pendingJobs = new AtomicInteger();
+    }
+
+    @Override
+    public void run() {
+        // Closing the reader would close the channel, which stays open for the events of running jobs
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(socketChannel), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    submit(line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Daemon connection closed while reading jobs. {}", e.getMessage());
+        }
+        inputClosed = true;
+        closeIfIdle();
+    }
+
+    private void submit(final String line) {
+        final DownloadJobDTO job;
+        try {
+            job = objectMapper.readValue(line, DownloadJobDTO.class);
+        } catch (JsonProcessingException e) {
+            send(new DownloadJobEventDTO(null, REJECTED, null, null, null, "Invalid job: " + e.getOriginalMessage()));
+            return;
+        }
+        final String id = job.id() != null ? job.id() : UUID.randomUUID().toString();
+        final FileTransferDTO fileTransfer = job.toFileTransfer();
+        try {
+            validate(fileTransfer);
+        } catch (IOException | IllegalArgumentException e) {
+            send(new DownloadJobEventDTO(id, REJECTED, null, null, null, e.getMessage()));
+            return;
+        }
+        if (jobExecutor.isShutdown()) {
+            send(new DownloadJobEventDTO(id, REJECTED, null, null, null, "Daemon is stopping"));
+            return;
+        }
+        if (!jobSlots.tryAcquire()) {
+            send(new DownloadJobEventDTO(id, REJECTED, null, null, null, "Job queue is full"));
+            return;
+        }
+        // Accepted is on the wire before the job can send any event of its own
+        pendingJobs.incrementAndGet();
+        send(new DownloadJobEventDTO(id, ACCEPTED, null, null, null, null));
+        try {
+            jobExecutor.execute(() -> {
+                try {
+                    download(id, fileTransfer);
+                } finally {
+                    jobSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobSlots.release();
+            finish(id, APPLICATION_FAILED, 0, "Daemon is stopping");
+        }
+    }
+
+    private void download(final String id,
+                          final FileTransferDTO fileTransfer) {
+        final JobProgressListener progressListener = new JobProgressListener();
+        final ScheduledFuture<?> progressTask = progressIntervalMillis > 0 ?
+                progressExecutor.scheduleAtFixedRate(
+                        () -> send(new DownloadJobEventDTO(id, PROGRESS, null, null, progressListener.getBytes(), null)),
+                        progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS) :
+                null;
+        ApplicationStatus status;
+        String message = null;
+        boolean permitted = false;
+        try {
+            circuitBreaker.awaitPermission(fileTransfer.source().getPath());
+            permitted = true;
+            LOGGER.info("Daemon job {} started: {} -> {}", id, fileTransfer.source().getPath(), fileTransfer.destination().getPath());
+            send(new DownloadJobEventDTO(id, STARTED, null, null, null, null));
+            status = globusFileTransferFactory
+                    .create(fileTransfer.privateKey())
+                    .downloadFile(
+                            fileTransfer.source(),
+                            fileTransfer.destination(),
+                            fileTransfer.fileSize() != null ? fileTransfer.fileSize() : UNKNOWN_FILE_SIZE,
+                            fileTransfer.checksum(),
+                            progressListener);
+            circuitBreaker.recordOutcome(status);
+        } catch (Exception e) {
+            LOGGER.error("Unable to start daemon job %s. %s".formatted(id, e.getMessage()), e);
+            status = APPLICATION_FAILED;
+            message = e.getMessage();
+            if (permitted) {
+                circuitBreaker.recordOutcome(status);
+            }
+        } finally {
+            if (progressTask != null) {
+                progressTask.cancel(false);
+            }
+        }
+        finish(id, status, progressListener.getBytes(), message);
+    }
+
+    private void finish(final String id,
+                        final ApplicationStatus status,
+                        final long bytes,
+                        final String message) {
+        LOGGER.info("Daemon job {} finished: {}", id, status);
+        send(new DownloadJobEventDTO(id, FINISHED, status.name(), status.getValue(), bytes, message));
+        pendingJobs.decrementAndGet();
+        closeIfIdle();
+    }
+
+    private synchronized void send(final DownloadJobEventDTO event) {
+        if (!socketChannel.isOpen()) {
+            return;
+        }
+        try {
+            writer.write(objectMapper.writeValueAsString(event));
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to send {} event of daemon job {}, client disconnected. {}", event.event(), event.id(), e.getMessage());
+        }
+    }
+
+    private synchronized void closeIfIdle() {
+        if (inputClosed && pendingJobs.get() == 0) {
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close daemon connection. {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class JobProgressListener implements ProgressListener {
+        private final AtomicLong bytes = new AtomicLong();
+
+        @Override
+        public void progress(final long bytesTransferred) {
+            bytes.accumulateAndGet(bytesTransferred, Math::max);
+        }
+
+        private long getBytes() {
+            return bytes.get();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.daemon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.net.UnixDomainPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.CircuitBreaker;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransferFactory;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.getOwner;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.setPosixFilePermissions;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static jdk.net.ExtendedSocketOptions.SO_PEERCRED;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Accepts download jobs over a Unix domain socket for the lifetime of the application context, so the
+ * web client connections and the OAuth token are reused by every job. Each connection sends one JSON job
+ * per line and receives the JSON events of its jobs, see {@link DaemonConnection}. A job takes one of
+ * {@code concurrency + queueCapacity} slots before it is accepted, a job submitted while none is free is
+ * rejected. Only connections of the user running the daemon are served.
+ */
+public class DaemonServer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonServer.class);
+    private final Path socketPath;
+    private final IGlobusFileTransferFactory globusFileTransferFactory;
+    private final CircuitBreaker circuitBreaker;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor jobExecutor;
+    private final Semaphore jobSlots;
+    private final int queueCapacity;
+    private final ExecutorService connectionExecutor;
+    private final ScheduledExecutorService progressExecutor;
+    private final long progressIntervalMillis;
+    private final long shutdownTimeoutMillis;
+    private final CountDownLatch terminated;
+    private ServerSocketChannel serverSocketChannel;
+    private UserPrincipal owner;
+
+    /**
+     * @param socketPath                Unix domain socket to listen on, replaced if it already exists.
+     * @param globusFileTransferFactory creates the transfer of each job.
+     * @param circuitBreaker            holds jobs back while the collection is failing.
+     * @param concurrency               number of jobs running at the same time.
+     * @param queueCapacity             number of accepted jobs waiting for a free slot.
+     * @param progressIntervalMillis    interval between two progress events of a job, 0 to disable them.
+     * @param shutdownTimeoutMillis     time given to running jobs to complete when the server is closed.
+     */
+    public DaemonServer(final Path socketPath,
+                        final IGlobusFileTransferFactory globusFileTransferFactory,
+                        final CircuitBreaker circuitBreaker,
+                        final int concurrency,
+                        final int queueCapacity,
+                        final long progressIntervalMillis,
+                        final long shutdownTimeoutMillis) {
+        if (concurrency < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Daemon concurrency and queue capacity should be at least 1");
+        }
+        this.socketPath = socketPath;
+        this.globusFileTransferFactory = globusFileTransferFactory;
+        this.circuitBreaker = circuitBreaker;
+        this.objectMapper = new ObjectMapper();
+        // Admission is bounded by the job slots, the queue itself never rejects an accepted job
+        this.jobExecutor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory("daemon-job"));
+        this.jobSlots = new Semaphore(concurrency + queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.connectionExecutor = newCachedThreadPool(threadFactory("daemon-connection"));
+        this.progressExecutor = new ScheduledThreadPoolExecutor(1, threadFactory("daemon-progress"));
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.terminated = new CountDownLatch(1);
+    }
+
+    /**
+     * Binds the socket, readable and writable by the current user only, and starts accepting connections.
+     * The socket is bound inside a directory only the current user can enter and moved to its path once
+     * restricted, so it is never reachable with the permissions of the umask.
+     *
+     * @throws IOException in case the socket cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        deleteIfExists(socketPath);
+        final Path bindDirectory = createTempDirectory(socketPath.toAbsolutePath().getParent(), ".gfh",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        final Path boundSocketPath = bindDirectory.resolve(socketPath.getFileName());
+        serverSocketChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            serverSocketChannel.bind(UnixDomainSocketAddress.of(boundSocketPath));
+            setPosixFilePermissions(boundSocketPath, PosixFilePermissions.fromString("rw-------"));
+            move(boundSocketPath, socketPath, ATOMIC_MOVE);
+            owner = getOwner(socketPath);
+        } catch (IOException e) {
+            serverSocketChannel.close();
+            throw e;
+        } finally {
+            deleteIfExists(boundSocketPath);
+            deleteIfExists(bindDirectory);
+        }
+        final Thread acceptThread = new Thread(this::accept, "daemon-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        LOGGER.info("Daemon listening on {}, concurrency: {}, queue capacity: {}",
+                socketPath, jobExecutor.getMaximumPoolSize(), queueCapacity);
+    }
+
+    /**
+     * Blocks until the server is closed.
+     *
+     * @throws InterruptedException in case the calling thread is interrupted.
+     */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    private void accept() {
+        while (serverSocketChannel.isOpen()) {
+            try {
+                final SocketChannel socketChannel = serverSocketChannel.accept();
+                final UserPrincipal peer = socketChannel.getOption(SO_PEERCRED).user();
+                if (!owner.equals(peer)) {
+                    LOGGER.warn("Daemon connection of user {} refused, jobs are only accepted from {}", peer.getName(), owner.getName());
+                    socketChannel.close();
+                    continue;
+                }
+                connectionExecutor.execute(new DaemonConnection(socketChannel, objectMapper, globusFileTransferFactory,
+                        circuitBreaker, jobExecutor, jobSlots, progressExecutor, progressIntervalMillis));
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.error("Unable to accept daemon connection. {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and jobs, then waits for the running and queued jobs to complete.
+     */
+    @Override
+    public synchronized void close() throws IOException, InterruptedException {
+        if (serverSocketChannel == null || !serverSocketChannel.isOpen()) {
+            terminated.countDown();
+            return;
+        }
+        LOGGER.info("Daemon stopping, {} job(s) running, {} queued", jobExecutor.getActiveCount(), jobExecutor.getQueue().size());
+        serverSocketChannel.close();
+        deleteIfExists(socketPath);
+        jobExecutor.shutdown();
+        if (!jobExecutor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Daemon jobs still running after {} ms, interrupting them", shutdownTimeoutMillis);
+            jobExecutor.shutdownNow();
+        }
+        progressExecutor.shutdownNow();
+        connectionExecutor.shutdownNow();
+        terminated.countDown();
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,6 @@
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto;
+
+import java.util.Set;
+
+public record CachedTokenDTO(String tokenValue, Long issuedAt, Long expiresAt, Set<String> scopes) {
+}
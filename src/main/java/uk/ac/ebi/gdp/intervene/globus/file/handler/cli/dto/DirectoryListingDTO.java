@@ -0,0 +1,10 @@
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DirectoryListingDTO(@JsonProperty("DATA") List<DirectoryListingEntryDTO> data) {
+}
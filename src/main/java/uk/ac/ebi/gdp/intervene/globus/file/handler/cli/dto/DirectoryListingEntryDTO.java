@@ -0,0 +1,7 @@
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DirectoryListingEntryDTO(String name, String type, Long size) {
+}
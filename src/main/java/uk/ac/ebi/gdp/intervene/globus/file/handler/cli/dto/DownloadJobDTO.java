@@ -0,0 +1,9 @@
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto;
+
+import java.net.URI;
+
+public record DownloadJobDTO(String id, URI source, URI destination, Long fileSize, String privateKey, String checksum) {
+    public FileTransferDTO toFileTransfer() {
+        return new FileTransferDTO(source, destination, fileSize, privateKey, checksum);
+    }
+}
@@ -0,0 +1,7 @@
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DownloadJobEventDTO(String id, String event, String status, Integer exitCode, Long bytes, String message) {
+}
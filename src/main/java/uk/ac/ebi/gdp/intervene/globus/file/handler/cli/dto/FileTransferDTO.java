@@ -0,0 +1,6 @@
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto;
+
+import java.net.URI;
+
+public record FileTransferDTO(URI source, URI destination, Long fileSize, String privateKey, String checksum) {
+}
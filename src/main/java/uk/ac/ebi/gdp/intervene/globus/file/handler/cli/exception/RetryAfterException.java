@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.exception;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+
+/**
+ * Globus answered {@code 429 Too Many Requests}, or {@code 503 Service Unavailable} with a
+ * {@code Retry-After} header, the request is retried once the requested delay has passed.
+ */
+public class RetryAfterException extends RuntimeException {
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public RetryAfterException(final int statusCode,
+                               final Duration retryAfter,
+                               final String message) {
+        super("Globus responded %s, retry after %s. %s".formatted(statusCode, retryAfter, message));
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return delay requested by the server, null if it didn't send a valid {@code Retry-After} header.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @param retryAfter value of the {@code Retry-After} header, either delay seconds or an HTTP date.
+     * @return delay to wait, null if the header is missing or invalid.
+     */
+    public static Duration parseRetryAfter(final String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                final Duration delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter.trim(), RFC_1123_DATE_TIME));
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException dateTimeParseException) {
+                return null;
+            }
+        }
+    }
+}
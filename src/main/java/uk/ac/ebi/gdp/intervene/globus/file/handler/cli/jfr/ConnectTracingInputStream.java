@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Commits a {@link TransferPhase#CONNECT} event once the first byte of the stream is read,
+ * the event starts before the stream is opened.
+ */
+public class ConnectTracingInputStream extends FilterInputStream {
+    private TransferPhaseEvent connectEvent;
+
+    private ConnectTracingInputStream(final InputStream in,
+                                      final TransferPhaseEvent connectEvent) {
+        super(in);
+        this.connectEvent = connectEvent;
+    }
+
+    /**
+     * @param target file path being connected to.
+     * @param opener opens the traced stream.
+     * @return stream committing the connect event at its first byte.
+     * @throws IOException in case the stream cannot be opened.
+     */
+    public static InputStream open(final String target,
+                                   final Opener opener) throws IOException {
+        final TransferPhaseEvent connectEvent = TransferPhaseEvent.begin(TransferPhase.CONNECT, target);
+        return new ConnectTracingInputStream(opener.open(), connectEvent);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        commit(read != -1);
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] b,
+                    final int off,
+                    final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        commit(read > 0);
+        return read;
+    }
+
+    private void commit(final boolean dataRead) {
+        if (dataRead && connectEvent != null) {
+            connectEvent.commit();
+            connectEvent = null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Starts the Flight Recorder recording requested with {@code --record}.
+ */
+public final class FlightRecording {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecording.class);
+    private static final String SETTINGS = "profile";
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Starts a recording with the JDK {@code profile} settings, written to the destination when the JVM exits.
+     *
+     * @param destination {@code .jfr} file to write.
+     * @return started recording.
+     * @throws IOException in case the recording cannot be started.
+     */
+    public static Recording start(final Path destination) throws IOException {
+        final Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration(SETTINGS));
+        } catch (ParseException e) {
+            throw new IOException("Unable to load Flight Recorder %s settings".formatted(SETTINGS), e);
+        }
+        recording.setName("globus-file-handler");
+        recording.setDestination(destination);
+        recording.setDumpOnExit(true);
+        recording.start();
+        LOGGER.info("Flight recording started, written to {} at exit", destination);
+        return recording;
+    }
+}
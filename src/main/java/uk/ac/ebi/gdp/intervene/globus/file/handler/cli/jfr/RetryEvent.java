@@ -0,0 +1,56 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event recorded for every failed attempt of a Globus request, each one being
+ * followed by a reconnect until the retry template gives up.
+ */
+@Name("uk.ac.ebi.gdp.globus.Retry")
+@Label("Globus Retry")
+@Category("Globus File Handler")
+@Description("Failed Globus request attempt")
+@StackTrace(false)
+public class RetryEvent extends Event {
+    @Label("Attempt")
+    private int attempt;
+
+    @Label("Error")
+    private String error;
+
+    /**
+     * @param attempt   number of failed attempts so far.
+     * @param throwable cause of the failure.
+     */
+    public static void record(final int attempt,
+                              final Throwable throwable) {
+        final RetryEvent event = new RetryEvent();
+        if (event.shouldCommit()) {
+            event.attempt = attempt;
+            event.error = "%s: %s".formatted(throwable.getClass().getName(), throwable.getMessage());
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr;
+
+/**
+ * Phases of a run traced with {@link TransferPhaseEvent}.
+ */
+public enum TransferPhase {
+    TOKEN_FETCH("token-fetch"),
+    KEY_FETCH("key-fetch"),
+    KEY_UNWRAP("key-unwrap"),
+    CONNECT("connect"),
+    DOWNLOAD("download"),
+    DECRYPT_PROCESS_WAIT("decrypt-process-wait");
+
+    private final String label;
+
+    TransferPhase(final String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
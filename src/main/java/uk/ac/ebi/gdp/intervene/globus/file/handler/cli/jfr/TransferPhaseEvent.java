@@ -0,0 +1,57 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning one phase of a run, e.g. the token fetch or the download of a file.
+ * The event may be committed by another thread than the one which began it.
+ */
+@Name("uk.ac.ebi.gdp.globus.TransferPhase")
+@Label("Transfer Phase")
+@Category("Globus File Handler")
+@Description("Phase of a Globus file handler run")
+@StackTrace(false)
+public class TransferPhaseEvent extends Event {
+    @Label("Phase")
+    private String phase;
+
+    @Label("Target")
+    @Description("File path or key the phase applies to")
+    private String target;
+
+    /**
+     * @param phase  traced phase.
+     * @param target file path or key the phase applies to, may be null.
+     * @return started event, to be committed once the phase is over.
+     */
+    public static TransferPhaseEvent begin(final TransferPhase phase,
+                                           final String target) {
+        final TransferPhaseEvent event = new TransferPhaseEvent();
+        event.phase = phase.getLabel();
+        event.target = target;
+        event.begin();
+        return event;
+    }
+}
@@ -23,34 +23,45 @@ import org.springframework.util.StopWatch;
 import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
 
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class BytesTransferredListener implements ProgressListener {
+public class BytesTransferredListener implements ProgressListener, AutoCloseable {
     private final Logger LOGGER = LoggerFactory.getLogger(BytesTransferredListener.class);
     private static final float BYTES_TO_MIB = (1024 * 1024);
     private static final long PERIOD = 10;
     private final String filename;
+    private final ScheduledFuture<?> reportTask;
+    private final AtomicLong totalBytes;
     private long lastTotalBytes;
-    private long totalBytes;
 
     public BytesTransferredListener(final String filename,
                                     final ScheduledExecutorService scheduledExecutorService) {
         lastTotalBytes = 0;
-        totalBytes = 0;
+        totalBytes = new AtomicLong();
         this.filename = filename;
         new StopWatch(filename).start();
-        scheduledExecutorService.scheduleAtFixedRate(this::report, 1, PERIOD, TimeUnit.SECONDS);
+        reportTask = scheduledExecutorService.scheduleAtFixedRate(this::report, 1, PERIOD, TimeUnit.SECONDS);
     }
 
     @Override
     public void progress(final long bytesTransferred) {
-        totalBytes = bytesTransferred;
+        totalBytes.accumulateAndGet(bytesTransferred, Math::max);
     }
 
     public void report() {
-        long currentBytes = totalBytes;
+        long currentBytes = totalBytes.get();
         float speed = ((float) (currentBytes - lastTotalBytes) / BYTES_TO_MIB) / PERIOD;
         LOGGER.info("File download progress: {}, Transfer rate: {} MiBs", filename, speed);
         lastTotalBytes = currentBytes;
     }
+
+    /**
+     * Stops periodic progress reporting, required when the reporting executor is shared by several downloads.
+     */
+    @Override
+    public void close() {
+        reportTask.cancel(false);
+    }
 }
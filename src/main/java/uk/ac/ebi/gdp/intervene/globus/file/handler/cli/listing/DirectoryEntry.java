@@ -0,0 +1,31 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer;
+
+/**
+ * Entry of a directory listing.
+ *
+ * @param name      file or directory name, without any path.
+ * @param directory true for a directory.
+ * @param size      file size in bytes, {@link IGlobusFileTransfer#UNKNOWN_FILE_SIZE} when the listing doesn't
+ *                  return it, ignored for a directory.
+ */
+public record DirectoryEntry(String name, boolean directory, long size) {
+}
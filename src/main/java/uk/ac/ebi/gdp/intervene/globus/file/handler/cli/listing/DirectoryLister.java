@@ -0,0 +1,32 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface DirectoryLister {
+    /**
+     * Lists a single level of a directory, called concurrently for different directories.
+     *
+     * @param directoryPath absolute path of the directory in the guest collection.
+     * @return files and directories directly under the directory.
+     * @throws IOException in case directory cannot be listed.
+     */
+    List<DirectoryEntry> list(String directoryPath) throws IOException;
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.FileTransferDTO;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.nio.file.Files.createDirectories;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer.UNKNOWN_FILE_SIZE;
+
+/**
+ * Walks a directory of the guest collection, listing up to {@code concurrency} directories at
+ * the same time. Each file is handed over as soon as the listing of its directory returns, so
+ * downloads start while the rest of the tree is still being listed. The directory structure is
+ * recreated under the destination directory.
+ */
+public class DirectoryWalker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryWalker.class);
+    private final DirectoryLister directoryLister;
+    private final int concurrency;
+
+    public DirectoryWalker(final DirectoryLister directoryLister,
+                           final int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Listing concurrency should be at least 1, found %s".formatted(concurrency));
+        }
+        this.directoryLister = directoryLister;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @param sourceDirectory      Globus directory to download.
+     * @param destinationDirectory local directory the tree is downloaded to.
+     * @param fileConsumer         called for every file found, concurrently from the listing threads.
+     * @return number of files found.
+     * @throws IOException          in case some directories cannot be listed, files found in the others
+     *                              have been handed over.
+     * @throws InterruptedException in case the walk is interrupted.
+     */
+    public int walk(final URI sourceDirectory,
+                    final URI destinationDirectory,
+                    final Consumer<FileTransferDTO> fileConsumer) throws IOException, InterruptedException {
+        final ExecutorService executorService = newFixedThreadPool(concurrency);
+        final Walk walk = new Walk(executorService, fileConsumer);
+        try {
+            walk.submit(sourceDirectory, destinationDirectory);
+            walk.completed.await();
+        } finally {
+            executorService.shutdownNow();
+        }
+        LOGGER.info("Listing of {} completed: {} files in {} directories",
+                sourceDirectory.getPath(), walk.files.get(), walk.directories.get());
+        if (!walk.failedDirectories.isEmpty()) {
+            throw new IOException("Unable to list %s directories under %s: %s".formatted(
+                    walk.failedDirectories.size(), sourceDirectory.getPath(), String.join(", ", walk.failedDirectories)));
+        }
+        return walk.files.get();
+    }
+
+    private class Walk {
+        private final ExecutorService executorService;
+        private final Consumer<FileTransferDTO> fileConsumer;
+        private final AtomicInteger pendingDirectories = new AtomicInteger();
+        private final AtomicInteger directories = new AtomicInteger();
+        private final AtomicInteger files = new AtomicInteger();
+        private final Queue<String> failedDirectories = new ConcurrentLinkedQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private Walk(final ExecutorService executorService,
+                     final Consumer<FileTransferDTO> fileConsumer) {
+            this.executorService = executorService;
+            this.fileConsumer = fileConsumer;
+        }
+
+        /**
+         * Sub-directories are submitted before their parent is accounted as listed, so the
+         * pending count only drops to zero once the whole tree has been listed.
+         */
+        private void submit(final URI sourceDirectory,
+                            final URI destinationDirectory) {
+            pendingDirectories.incrementAndGet();
+            executorService.execute(() -> {
+                try {
+                    list(sourceDirectory, destinationDirectory);
+                } catch (Exception e) {
+                    LOGGER.error("Unable to list directory %s. %s".formatted(sourceDirectory.getPath(), e.getMessage()), e);
+                    failedDirectories.add(sourceDirectory.getPath());
+                } finally {
+                    if (pendingDirectories.decrementAndGet() == 0) {
+                        completed.countDown();
+                    }
+                }
+            });
+        }
+
+        private void list(final URI sourceDirectory,
+                          final URI destinationDirectory) throws IOException, URISyntaxException {
+            final List<DirectoryEntry> entries = directoryLister.list(sourceDirectory.getPath());
+            directories.incrementAndGet();
+            createDirectories(Path.of(destinationDirectory.getPath()));
+            for (final DirectoryEntry entry : entries) {
+                if (entry.name().isEmpty() || entry.name().equals(".") || entry.name().equals("..") || entry.name().contains("/")) {
+                    LOGGER.warn("Skipping entry '{}' of {}, it isn't a plain file name", entry.name(), sourceDirectory.getPath());
+                    continue;
+                }
+                final URI source = child(sourceDirectory, entry.name());
+                final URI destination = child(destinationDirectory, entry.name());
+                if (entry.directory()) {
+                    submit(source, destination);
+                } else {
+                    files.incrementAndGet();
+                    // An unknown size is looked up by the transfer
+                    fileConsumer.accept(new FileTransferDTO(source, destination,
+                            entry.size() != UNKNOWN_FILE_SIZE ? entry.size() : null, null, null));
+                }
+            }
+        }
+    }
+
+    private static URI child(final URI directory,
+                             final String name) throws URISyntaxException {
+        final String path = directory.getPath();
+        return new URI(directory.getScheme(), directory.getAuthority(),
+                (path.endsWith("/") ? path : path + "/") + name, null, null);
+    }
+}
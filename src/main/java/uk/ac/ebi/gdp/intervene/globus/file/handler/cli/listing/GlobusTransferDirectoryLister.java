@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing;
+
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.DirectoryListingDTO;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.DirectoryListingEntryDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer.UNKNOWN_FILE_SIZE;
+
+/**
+ * Lists the guest collection with the Globus Transfer API {@code ls} operation, one page of
+ * {@code pageSize} entries per request. Entries other than files and directories (e.g. symbolic
+ * links) are left out.
+ */
+public class GlobusTransferDirectoryLister implements DirectoryLister {
+    private static final String LS_PATH = "/operation/endpoint/{collectionId}/ls";
+    private static final String FILE_TYPE = "file";
+    private static final String DIRECTORY_TYPE = "dir";
+    private final WebClient webClient;
+    private final RetryTemplate retryTemplate;
+    private final String collectionId;
+    private final int pageSize;
+
+    /**
+     * @param webClient     client authorized for the Transfer API, with its base URL.
+     * @param retryTemplate retry template applied to each page request.
+     * @param collectionId  UUID of the guest collection.
+     * @param pageSize      number of entries requested per page.
+     */
+    public GlobusTransferDirectoryLister(final WebClient webClient,
+                                         final RetryTemplate retryTemplate,
+                                         final String collectionId,
+                                         final int pageSize) {
+        if (collectionId == null || collectionId.isBlank()) {
+            throw new IllegalArgumentException("Guest collection id is required to list directories with the Transfer API");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size should be at least 1, found %s".formatted(pageSize));
+        }
+        this.webClient = webClient;
+        this.retryTemplate = retryTemplate;
+        this.collectionId = collectionId;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public List<DirectoryEntry> list(final String directoryPath) {
+        final List<DirectoryEntry> entries = new ArrayList<>();
+        int offset = 0;
+        List<DirectoryListingEntryDTO> page;
+        do {
+            page = fetchPage(directoryPath, offset);
+            for (final DirectoryListingEntryDTO entry : page) {
+                if (FILE_TYPE.equals(entry.type())) {
+                    entries.add(new DirectoryEntry(entry.name(), false, entry.size() != null ? entry.size() : UNKNOWN_FILE_SIZE));
+                } else if (DIRECTORY_TYPE.equals(entry.type())) {
+                    entries.add(new DirectoryEntry(entry.name(), true, 0));
+                }
+            }
+            offset += page.size();
+        } while (page.size() >= pageSize);
+        return entries;
+    }
+
+    private List<DirectoryListingEntryDTO> fetchPage(final String directoryPath,
+                                                     final int offset) {
+        final DirectoryListingDTO listing = retryTemplate.execute(context -> webClient
+                .get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(LS_PATH)
+                        .queryParam("path", directoryPath.endsWith("/") ? directoryPath : directoryPath + "/")
+                        .queryParam("limit", pageSize)
+                        .queryParam("offset", offset)
+                        .build(collectionId))
+                .retrieve()
+                .bodyToMono(DirectoryListingDTO.class)
+                .block());
+        return listing == null || listing.data() == null ? List.of() : listing.data();
+    }
+}
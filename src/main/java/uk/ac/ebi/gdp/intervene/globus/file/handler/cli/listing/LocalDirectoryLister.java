@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isRegularFile;
+import static java.nio.file.Files.size;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+/**
+ * Lists a local mount or mirror of the guest collection, a stand-in for the Transfer API when
+ * the collection storage is reachable from the node. Directories reached through symbolic links
+ * are not followed.
+ */
+public class LocalDirectoryLister implements DirectoryLister {
+    private final Path root;
+
+    /**
+     * @param root local directory the root of the guest collection is mounted at.
+     */
+    public LocalDirectoryLister(final Path root) {
+        if (!isDirectory(root)) {
+            throw new IllegalArgumentException("Listing root %s isn't a directory".formatted(root));
+        }
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public List<DirectoryEntry> list(final String directoryPath) throws IOException {
+        final Path directory = root.resolve(directoryPath.replaceFirst("^/+", "")).normalize();
+        if (!directory.startsWith(root)) {
+            throw new IOException("Directory %s is outside the listing root".formatted(directoryPath));
+        }
+        final List<DirectoryEntry> entries = new ArrayList<>();
+        try (final Stream<Path> paths = Files.list(directory)) {
+            for (final Path path : (Iterable<Path>) paths::iterator) {
+                if (isDirectory(path, NOFOLLOW_LINKS)) {
+                    entries.add(new DirectoryEntry(path.getFileName().toString(), true, 0));
+                } else if (isRegularFile(path)) {
+                    entries.add(new DirectoryEntry(path.getFileName().toString(), false, size(path)));
+                }
+            }
+        }
+        return entries;
+    }
+}
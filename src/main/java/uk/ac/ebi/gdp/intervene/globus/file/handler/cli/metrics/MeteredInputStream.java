@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Records bytes, time to first byte and stalls of a stream reading from Globus.
+ */
+class MeteredInputStream extends FilterInputStream {
+    private final TransferMetrics transferMetrics;
+    private final long openStartNanos;
+    private boolean firstByteRead;
+
+    MeteredInputStream(final InputStream in,
+                       final TransferMetrics transferMetrics,
+                       final long openStartNanos) {
+        super(in);
+        this.transferMetrics = transferMetrics;
+        this.openStartNanos = openStartNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final long start = System.nanoTime();
+        final int read = super.read();
+        record(start, read == -1 ? -1 : 1);
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] b,
+                    final int off,
+                    final int len) throws IOException {
+        final long start = System.nanoTime();
+        final int read = super.read(b, off, len);
+        record(start, read);
+        return read;
+    }
+
+    private void record(final long start,
+                        final int read) {
+        final long end = System.nanoTime();
+        if (read <= 0) {
+            return;
+        }
+        if (!firstByteRead) {
+            firstByteRead = true;
+            transferMetrics.recordTimeToFirstByte(end - openStartNanos);
+        } else {
+            transferMetrics.recordRead(end - start);
+        }
+        transferMetrics.recordBytes(read);
+    }
+}
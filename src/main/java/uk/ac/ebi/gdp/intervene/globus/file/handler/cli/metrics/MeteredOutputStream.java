@@ -0,0 +1,61 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records the time spent writing to and flushing the wrapped stream as a transfer stage.
+ */
+class MeteredOutputStream extends FilterOutputStream {
+    private final TransferMetrics transferMetrics;
+    private final TransferStage stage;
+
+    MeteredOutputStream(final OutputStream out,
+                        final TransferMetrics transferMetrics,
+                        final TransferStage stage) {
+        super(out);
+        this.transferMetrics = transferMetrics;
+        this.stage = stage;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        final long start = System.nanoTime();
+        out.write(b);
+        transferMetrics.recordStage(stage, System.nanoTime() - start);
+    }
+
+    @Override
+    public void write(final byte[] b,
+                      final int off,
+                      final int len) throws IOException {
+        final long start = System.nanoTime();
+        out.write(b, off, len);
+        transferMetrics.recordStage(stage, System.nanoTime() - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        final long start = System.nanoTime();
+        out.flush();
+        transferMetrics.recordStage(stage, System.nanoTime() - start);
+    }
+}
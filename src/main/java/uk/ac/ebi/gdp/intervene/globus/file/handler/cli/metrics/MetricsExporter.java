@@ -0,0 +1,133 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.writeString;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Writes all meters of the registry to a file when the application context closes, either in the
+ * Prometheus text format, e.g. for the node exporter textfile collector, or as a JSON summary.
+ * The file is written next to its final location and moved in place, so collectors never read a
+ * partial file.
+ */
+public class MetricsExporter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsExporter.class);
+    private final MeterRegistry registry;
+    private final MetricsExportFormat format;
+    private final Path exportPath;
+
+    /**
+     * @param registry   registry to export.
+     * @param format     export format, {@link MetricsExportFormat#PROMETHEUS} requires a {@link PrometheusMeterRegistry}.
+     * @param exportPath file written at exit, null to disable the export.
+     */
+    public MetricsExporter(final MeterRegistry registry,
+                           final MetricsExportFormat format,
+                           final Path exportPath) {
+        this.registry = registry;
+        this.format = format;
+        this.exportPath = exportPath;
+    }
+
+    @Override
+    public void close() {
+        if (exportPath == null) {
+            return;
+        }
+        try {
+            final Path tempPath = exportPath.resolveSibling(exportPath.getFileName() + ".tmp");
+            writeString(tempPath, format == MetricsExportFormat.PROMETHEUS ? prometheus() : json());
+            move(tempPath, exportPath, ATOMIC_MOVE, REPLACE_EXISTING);
+            LOGGER.info("Transfer metrics written to {}", exportPath);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to write transfer metrics to {}", exportPath, e);
+        }
+    }
+
+    private String prometheus() {
+        if (!(registry instanceof PrometheusMeterRegistry prometheusMeterRegistry)) {
+            throw new IllegalStateException("Prometheus export requires a Prometheus meter registry");
+        }
+        return prometheusMeterRegistry.scrape();
+    }
+
+    private String json() throws IOException {
+        final List<Map<String, Object>> meters = registry.getMeters()
+                .stream()
+                .map(this::toJson)
+                .toList();
+        return new ObjectMapper()
+                .writerWithDefaultPrettyPrinter()
+                .writeValueAsString(Map.of("meters", meters));
+    }
+
+    private Map<String, Object> toJson(final Meter meter) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("name", meter.getId().getName());
+        json.put("type", meter.getId().getType().name().toLowerCase());
+        if (meter.getId().getBaseUnit() != null) {
+            json.put("unit", meter.getId().getBaseUnit());
+        }
+        final Map<String, String> tags = new LinkedHashMap<>();
+        for (final Tag tag : meter.getId().getTagsAsIterable()) {
+            tags.put(tag.getKey(), tag.getValue());
+        }
+        json.put("tags", tags);
+        final Map<String, Double> measurements = new LinkedHashMap<>();
+        for (final Measurement measurement : meter.measure()) {
+            measurements.put(measurement.getStatistic().name().toLowerCase(), measurement.getValue());
+        }
+        json.put("measurements", measurements);
+        final Map<String, Double> percentiles = new LinkedHashMap<>();
+        if (meter instanceof Timer timer) {
+            for (final ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                percentiles.put(String.valueOf(percentile.percentile()), percentile.value(SECONDS));
+            }
+        } else if (meter instanceof DistributionSummary summary) {
+            for (final ValueAtPercentile percentile : summary.takeSnapshot().percentileValues()) {
+                percentiles.put(String.valueOf(percentile.percentile()), percentile.value());
+            }
+        }
+        if (!percentiles.isEmpty()) {
+            json.put("percentiles", percentiles);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Transfer meters shared by all downloads of the process. Per file meters publish percentiles and
+ * a percentile histogram over the whole run, stage timers only record their count and total time.
+ */
+public class TransferMetrics {
+    private static final Duration RUN_EXPIRY = Duration.ofDays(7);
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    private final MeterRegistry registry;
+    private final long stallThresholdNanos;
+    private final Counter bytes;
+    private final Counter retries;
+    private final Timer timeToFirstByte;
+    private final Timer stalls;
+    private final DistributionSummary throughput;
+    private final Map<TransferStage, Timer> stages;
+
+    /**
+     * @param registry       registry the meters are registered with.
+     * @param stallThreshold duration after which a read blocked on the network counts as a stall.
+     */
+    public TransferMetrics(final MeterRegistry registry,
+                           final Duration stallThreshold) {
+        this.registry = registry;
+        this.stallThresholdNanos = stallThreshold.toNanos();
+        this.bytes = Counter.builder("globus.transfer.bytes")
+                .description("Bytes read from Globus")
+                .baseUnit("bytes")
+                .register(registry);
+        this.retries = Counter.builder("globus.transfer.retries")
+                .description("Failed Globus request attempts")
+                .register(registry);
+        this.timeToFirstByte = Timer.builder("globus.transfer.time.to.first.byte")
+                .description("Time from opening a Globus stream to its first byte")
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .distributionStatisticExpiry(RUN_EXPIRY)
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+        this.stalls = Timer.builder("globus.transfer.stalls")
+                .description("Reads blocked on Globus for longer than the stall threshold")
+                .register(registry);
+        this.throughput = DistributionSummary.builder("globus.transfer.throughput")
+                .description("Throughput of each successful download")
+                .baseUnit("bytes.per.second")
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .distributionStatisticExpiry(RUN_EXPIRY)
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+        this.stages = new EnumMap<>(TransferStage.class);
+        for (final TransferStage stage : TransferStage.values()) {
+            stages.put(stage, Timer.builder("globus.transfer.stage")
+                    .description("Time spent in each stage of the downloads")
+                    .tag("stage", stage.getTag())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * @return metrics recorded nowhere.
+     */
+    public static TransferMetrics noop() {
+        return new TransferMetrics(new CompositeMeterRegistry(), Duration.ofSeconds(1));
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @param inputStream     stream reading from Globus.
+     * @param openStartNanos  {@link System#nanoTime()} before the stream was opened.
+     * @return stream recording bytes, time to first byte and stalls.
+     */
+    public InputStream meterNetwork(final InputStream inputStream,
+                                    final long openStartNanos) {
+        return new MeteredInputStream(inputStream, this, openStartNanos);
+    }
+
+    /**
+     * @param outputStream stream writing to disk.
+     * @return stream recording the time spent writing as {@link TransferStage#DISK}.
+     */
+    public OutputStream meterDisk(final OutputStream outputStream) {
+        return new MeteredOutputStream(outputStream, this, TransferStage.DISK);
+    }
+
+    /**
+     * @param status        outcome of the download.
+     * @param fileSize      size of the file in bytes.
+     * @param durationNanos duration of the download.
+     */
+    public void recordTransfer(final ApplicationStatus status,
+                               final long fileSize,
+                               final long durationNanos) {
+        Timer.builder("globus.transfer.files")
+                .description("Duration of each download by outcome")
+                .tag("status", status.name().toLowerCase())
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .distributionStatisticExpiry(RUN_EXPIRY)
+                .distributionStatisticBufferLength(1)
+                .register(registry)
+                .record(durationNanos, NANOSECONDS);
+        if (status == ApplicationStatus.SUCCESS && durationNanos > 0) {
+            throughput.record(fileSize * 1e9 / durationNanos);
+        }
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    public void recordSkip() {
+        Counter.builder("globus.transfer.skipped")
+                .description("Downloads skipped as the destination was already in sync")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @param reason {@code stall} for a stream reopened after a stall, {@code hedge} for a duplicate request
+     *               sent as the first bytes were late.
+     */
+    public void recordReconnect(final String reason) {
+        Counter.builder("globus.transfer.reconnects")
+                .description("Globus streams reopened or duplicated by the stall detector")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordStage(final TransferStage stage,
+                            final long nanos) {
+        stages.get(stage).record(nanos, NANOSECONDS);
+    }
+
+    void recordBytes(final int count) {
+        bytes.increment(count);
+    }
+
+    void recordTimeToFirstByte(final long nanos) {
+        timeToFirstByte.record(nanos, NANOSECONDS);
+    }
+
+    void recordRead(final long nanos) {
+        if (nanos >= stallThresholdNanos) {
+            stalls.record(nanos, NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.oauth2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.CachedTokenDTO;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.nio.file.attribute.PosixFilePermissions.asFileAttribute;
+import static java.nio.file.attribute.PosixFilePermissions.fromString;
+
+/**
+ * Access tokens kept on disk between runs, one file per token URI, client id and scopes. Files are
+ * encrypted with AES-GCM using a key derived from the client secret, so reading a cached token needs
+ * the same credentials as requesting a new one, and are only accessible by their owner. Files are
+ * replaced atomically and a lock file serialises processes of the same node refreshing the same token.
+ */
+public class TokenCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenCache.class);
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String KEY_DERIVATION_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_DERIVATION_LABEL = "globus-file-handler-cli token cache".getBytes(UTF_8);
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    private static final String TOKEN_FILE_SUFFIX = ".token";
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+
+    private final Path cacheDirectory;
+    private final Clock clock;
+    private final ObjectMapper objectMapper;
+    private final SecureRandom secureRandom;
+
+    public TokenCache(final Path cacheDirectory,
+                      final Clock clock) {
+        this.cacheDirectory = cacheDirectory;
+        this.clock = clock;
+        this.objectMapper = new ObjectMapper();
+        this.secureRandom = new SecureRandom();
+    }
+
+    /**
+     * @param accessToken     access token.
+     * @param minimumValidity time the token should still be valid for.
+     * @return true if the token does not expire within the minimum validity.
+     */
+    public boolean isValid(final OAuth2AccessToken accessToken,
+                           final Duration minimumValidity) {
+        return accessToken.getExpiresAt() == null
+                || accessToken.getExpiresAt().isAfter(clock.instant().plus(minimumValidity));
+    }
+
+    /**
+     * @param clientRegistration client the token was issued to.
+     * @param minimumValidity    time the cached token should still be valid for.
+     * @return cached token of the client if it is still valid, empty if missing, expired or unreadable.
+     */
+    public Optional<OAuth2AccessToken> load(final ClientRegistration clientRegistration,
+                                            final Duration minimumValidity) {
+        final String cacheKey = cacheKey(clientRegistration);
+        final Path tokenPath = cacheDirectory.resolve(cacheKey + TOKEN_FILE_SUFFIX);
+        if (!exists(tokenPath)) {
+            return Optional.empty();
+        }
+        try {
+            final CachedTokenDTO cachedToken = objectMapper.readValue(
+                    decrypt(clientRegistration, cacheKey, readAllBytes(tokenPath)), CachedTokenDTO.class);
+            final OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                    OAuth2AccessToken.TokenType.BEARER,
+                    cachedToken.tokenValue(),
+                    cachedToken.issuedAt() != null ? Instant.ofEpochSecond(cachedToken.issuedAt()) : null,
+                    cachedToken.expiresAt() != null ? Instant.ofEpochSecond(cachedToken.expiresAt()) : null,
+                    cachedToken.scopes());
+            return isValid(accessToken, minimumValidity) ? Optional.of(accessToken) : Optional.empty();
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            LOGGER.warn("Ignoring unreadable token cache {}. {}", tokenPath, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param clientRegistration client the token was issued to.
+     * @param accessToken        token to cache.
+     * @throws IOException in case the token cannot be written.
+     */
+    public void save(final ClientRegistration clientRegistration,
+                     final OAuth2AccessToken accessToken) throws IOException {
+        final String cacheKey = cacheKey(clientRegistration);
+        final CachedTokenDTO cachedToken = new CachedTokenDTO(
+                accessToken.getTokenValue(),
+                accessToken.getIssuedAt() != null ? accessToken.getIssuedAt().getEpochSecond() : null,
+                accessToken.getExpiresAt() != null ? accessToken.getExpiresAt().getEpochSecond() : null,
+                accessToken.getScopes());
+        final byte[] encrypted;
+        try {
+            encrypted = encrypt(clientRegistration, cacheKey, objectMapper.writeValueAsBytes(cachedToken));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt the access token", e);
+        }
+
+        createCacheDirectory();
+        final Path tempTokenPath = createTempFile(cacheDirectory, cacheKey, ".tmp", asFileAttribute(fromString("rw-------")));
+        try {
+            write(tempTokenPath, encrypted);
+            move(tempTokenPath, cacheDirectory.resolve(cacheKey + TOKEN_FILE_SUFFIX), ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            deleteIfExists(tempTokenPath);
+        }
+    }
+
+    /**
+     * Runs the given action holding the lock of the client, exclusive between the threads of this
+     * process and the processes of the node sharing the cache directory.
+     *
+     * @param clientRegistration client whose token is loaded or refreshed.
+     * @param action             action to run.
+     * @return result of the action.
+     * @throws Exception thrown by the action or in case the lock cannot be acquired.
+     */
+    public synchronized <T> T withLock(final ClientRegistration clientRegistration,
+                                       final Callable<T> action) throws Exception {
+        createCacheDirectory();
+        final Path lockPath = cacheDirectory.resolve(cacheKey(clientRegistration) + LOCK_FILE_SUFFIX);
+        try (final FileChannel lockChannel = FileChannel.open(lockPath, CREATE, WRITE);
+             final FileLock ignored = lockChannel.lock()) {
+            return action.call();
+        }
+    }
+
+    private void createCacheDirectory() throws IOException {
+        if (!exists(cacheDirectory)) {
+            createDirectories(cacheDirectory, asFileAttribute(fromString("rwx------")));
+        }
+    }
+
+    private String cacheKey(final ClientRegistration clientRegistration) {
+        final String key = String.join("\n",
+                clientRegistration.getProviderDetails().getTokenUri(),
+                clientRegistration.getClientId(),
+                String.join(" ", new TreeSet<>(clientRegistration.getScopes())));
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] encrypt(final ClientRegistration clientRegistration,
+                           final String cacheKey,
+                           final byte[] plainText) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        final Cipher cipher = cipher(Cipher.ENCRYPT_MODE, clientRegistration, cacheKey, iv);
+        final byte[] cipherText = cipher.doFinal(plainText);
+        return ByteBuffer.allocate(IV_LENGTH + cipherText.length).put(iv).put(cipherText).array();
+    }
+
+    private byte[] decrypt(final ClientRegistration clientRegistration,
+                           final String cacheKey,
+                           final byte[] encrypted) throws GeneralSecurityException {
+        if (encrypted.length <= IV_LENGTH) {
+            throw new IllegalArgumentException("Token cache is truncated");
+        }
+        final Cipher cipher = cipher(Cipher.DECRYPT_MODE, clientRegistration, cacheKey,
+                Arrays.copyOf(encrypted, IV_LENGTH));
+        return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+    }
+
+    /**
+     * The cache key is the associated data of the cipher, so a token file cannot be swapped for the
+     * one of another client.
+     */
+    private Cipher cipher(final int mode,
+                          final ClientRegistration clientRegistration,
+                          final String cacheKey,
+                          final byte[] iv) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(KEY_DERIVATION_ALGORITHM);
+        mac.init(new SecretKeySpec(clientRegistration.getClientSecret().getBytes(UTF_8), KEY_DERIVATION_ALGORITHM));
+        final Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(mode, new SecretKeySpec(mac.doFinal(KEY_DERIVATION_LABEL), KEY_ALGORITHM),
+                new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+        cipher.updateAAD(cacheKey.getBytes(UTF_8));
+        return cipher;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.oauth2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+import static reactor.core.publisher.Mono.fromCallable;
+import static reactor.core.scheduler.Schedulers.boundedElastic;
+
+/**
+ * Looks up the {@link TokenCache} before the delegate provider requests a new access token, and caches
+ * the tokens it obtains. The lookup and the request run under the cache lock, so concurrent runs whose
+ * token has expired wait for the first one to refresh it instead of all requesting a new token.
+ */
+public class TokenCacheAuthorizedClientProvider implements ReactiveOAuth2AuthorizedClientProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenCacheAuthorizedClientProvider.class);
+    private final ReactiveOAuth2AuthorizedClientProvider delegate;
+    private final TokenCache tokenCache;
+    private final Duration minimumValidity;
+
+    /**
+     * @param delegate        provider requesting new access tokens.
+     * @param tokenCache      token cache.
+     * @param minimumValidity time a cached token should still be valid for to be used.
+     */
+    public TokenCacheAuthorizedClientProvider(final ReactiveOAuth2AuthorizedClientProvider delegate,
+                                              final TokenCache tokenCache,
+                                              final Duration minimumValidity) {
+        this.delegate = delegate;
+        this.tokenCache = tokenCache;
+        this.minimumValidity = minimumValidity;
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(final OAuth2AuthorizationContext context) {
+        final OAuth2AuthorizedClient authorizedClient = context.getAuthorizedClient();
+        if (authorizedClient != null && tokenCache.isValid(authorizedClient.getAccessToken(), minimumValidity)) {
+            return delegate.authorize(context);
+        }
+        return fromCallable(() -> tokenCache.withLock(context.getClientRegistration(), () -> cachedOrRequested(context)))
+                .subscribeOn(boundedElastic());
+    }
+
+    private OAuth2AuthorizedClient cachedOrRequested(final OAuth2AuthorizationContext context) throws Exception {
+        final ClientRegistration clientRegistration = context.getClientRegistration();
+        final Optional<OAuth2AccessToken> cachedToken = tokenCache.load(clientRegistration, minimumValidity);
+        if (cachedToken.isPresent()) {
+            LOGGER.info("Using cached access token expiring at {}", cachedToken.get().getExpiresAt());
+            return new OAuth2AuthorizedClient(clientRegistration, context.getPrincipal().getName(), cachedToken.get());
+        }
+        final OAuth2AuthorizedClient authorizedClient = delegate.authorize(context).block();
+        if (authorizedClient != null) {
+            try {
+                tokenCache.save(clientRegistration, authorizedClient.getAccessToken());
+            } catch (IOException e) {
+                LOGGER.warn("Unable to cache the access token. {}", e.getMessage());
+            }
+        }
+        return authorizedClient;
+    }
+}
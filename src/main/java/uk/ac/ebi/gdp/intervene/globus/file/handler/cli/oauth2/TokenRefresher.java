@@ -0,0 +1,138 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.oauth2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.security.core.authority.AuthorityUtils.createAuthorityList;
+
+/**
+ * Replaces the access token of the authorized client service in the background before it expires, so
+ * requests keep finding a valid token and never wait for a new one to be fetched. A token is refreshed
+ * once it is within the refresh window of its expiry, or past half of its lifetime for tokens shorter
+ * than twice the window. Nothing is fetched until the first request has obtained a token.
+ */
+public class TokenRefresher implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenRefresher.class);
+
+    /**
+     * Principal of the requests made outside of a security context, see
+     * {@code ServerOAuth2AuthorizedClientExchangeFilterFunction}.
+     */
+    private static final Authentication ANONYMOUS_PRINCIPAL =
+            new AnonymousAuthenticationToken("anonymous", "anonymousUser", createAuthorityList("ROLE_USER"));
+
+    private final ReactiveOAuth2AuthorizedClientService authorizedClientService;
+    private final ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider;
+    private final String clientRegistrationId;
+    private final Duration refreshWindow;
+    private final Duration checkInterval;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param authorizedClientService service the requests load their token from.
+     * @param authorizedClientProvider provider fetching a new token when the context has no authorized client.
+     * @param clientRegistrationId    registration whose token is refreshed.
+     * @param refreshWindow           time before the expiry from which the token is refreshed.
+     * @param checkInterval           time between expiry checks.
+     * @param clock                   clock the expiry is checked against.
+     */
+    public TokenRefresher(final ReactiveOAuth2AuthorizedClientService authorizedClientService,
+                          final ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider,
+                          final String clientRegistrationId,
+                          final Duration refreshWindow,
+                          final Duration checkInterval,
+                          final Clock clock) {
+        this.authorizedClientService = authorizedClientService;
+        this.authorizedClientProvider = authorizedClientProvider;
+        this.clientRegistrationId = clientRegistrationId;
+        this.refreshWindow = refreshWindow;
+        this.checkInterval = checkInterval;
+        this.clock = clock;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::refreshIfDue,
+                checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshIfDue() {
+        try {
+            final OAuth2AuthorizedClient authorizedClient = authorizedClientService
+                    .<OAuth2AuthorizedClient>loadAuthorizedClient(clientRegistrationId, ANONYMOUS_PRINCIPAL.getName())
+                    .block();
+            if (authorizedClient == null || !isDue(authorizedClient.getAccessToken())) {
+                return;
+            }
+            final OAuth2AuthorizedClient refreshedClient = authorizedClientProvider.authorize(OAuth2AuthorizationContext
+                            .withClientRegistration(authorizedClient.getClientRegistration())
+                            .principal(ANONYMOUS_PRINCIPAL)
+                            .build())
+                    .block();
+            if (refreshedClient != null) {
+                authorizedClientService.saveAuthorizedClient(refreshedClient, ANONYMOUS_PRINCIPAL).block();
+                LOGGER.info("Refreshed access token expiring at {}, new token expires at {}",
+                        authorizedClient.getAccessToken().getExpiresAt(), refreshedClient.getAccessToken().getExpiresAt());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to refresh the access token in the background, it will be fetched when it expires. {}",
+                    e.getMessage());
+        }
+    }
+
+    private boolean isDue(final OAuth2AccessToken accessToken) {
+        final Instant expiresAt = accessToken.getExpiresAt();
+        if (expiresAt == null) {
+            return false;
+        }
+        Duration window = refreshWindow;
+        if (accessToken.getIssuedAt() != null) {
+            final Duration halfLifetime = Duration.between(accessToken.getIssuedAt(), expiresAt).dividedBy(2);
+            if (halfLifetime.compareTo(window) < 0) {
+                window = halfLifetime;
+            }
+        }
+        return !clock.instant().isBefore(expiresAt.minus(window));
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -18,19 +18,33 @@
 package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser;
 
 import joptsimple.OptionSet;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ExpectedChecksum;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.FileTransferDTO;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 import static java.net.URI.create;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CHECKSUM_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CRYPT4GH_OPTION;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CRYPT4GH_PRIVATE_KEY_PATH_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.DAEMON_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.DECOMPRESS_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_DESTINATION_PATH_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_SOURCE_PATH_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_SOURCE_PATH_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.MANIFEST_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.PARALLEL_STREAMS_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RECORD_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RECURSIVE_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RESUME_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.SYNC_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.OutputDestination.isStdout;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.OutputDestination.isStreaming;
 
 public class CLIParameters {
     private final String fileDownloadSourceLocation;
@@ -38,13 +52,43 @@ public class CLIParameters {
     private final Long fileSize;
     private final Boolean isCrypt4ghEnabled;
     private final String crypt4ghPrivateKeyPath;
+    private final Integer parallelStreams;
+    private final Boolean isResumeEnabled;
+    private final Boolean isSyncEnabled;
+    private final Boolean isDecompressEnabled;
+    private final Boolean isRecursive;
+    private final String manifestPath;
+    private final String expectedChecksum;
+    private final Path recordingPath;
+    private final String daemonSocketPath;
 
     public CLIParameters(final OptionSet optionSet) throws IOException {
-        this.fileDownloadSourceLocation = extractFileDownloadPathSource(optionSet);
-        this.fileDownloadDestinationLocation = extractFileDownloadPathDestination(optionSet);
-        this.fileSize = Long.valueOf(optionSet.valueOf(GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG).toString());
+        this.manifestPath = extractManifestPath(optionSet);
+        this.daemonSocketPath = optionSet.hasArgument(DAEMON_LONG) ? optionSet.valueOf(DAEMON_LONG).toString() : null;
+        final boolean singleFile = manifestPath == null && daemonSocketPath == null;
+        this.fileDownloadSourceLocation = singleFile ? extractFileDownloadPathSource(optionSet) : null;
+        this.fileDownloadDestinationLocation = singleFile ? extractFileDownloadPathDestination(optionSet) : null;
+        this.fileSize = singleFile && optionSet.hasArgument(GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG) ?
+                Long.valueOf(optionSet.valueOf(GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG).toString()) : null;
         this.isCrypt4ghEnabled = optionSet.has(CRYPT4GH_OPTION);
         this.crypt4ghPrivateKeyPath = extractCrypt4ghPrivateKeyPath(optionSet);
+        if (manifestPath != null) {
+            // Parsed up front so an invalid manifest is reported as an input error before the application starts
+            final List<FileTransferDTO> fileTransfers = ManifestParser.parse(Path.of(manifestPath));
+            if (isCrypt4ghEnabled) {
+                ManifestParser.validateUniquePrivateKeys(fileTransfers, crypt4ghPrivateKeyPath);
+            }
+        }
+        this.parallelStreams = extractParallelStreams(optionSet);
+        this.isResumeEnabled = optionSet.has(RESUME_LONG) ? Boolean.TRUE : null;
+        this.isSyncEnabled = optionSet.has(SYNC_LONG) ? Boolean.TRUE : null;
+        this.isDecompressEnabled = optionSet.has(DECOMPRESS_LONG) ? Boolean.TRUE : null;
+        this.isRecursive = optionSet.has(RECURSIVE_LONG) ? Boolean.TRUE : null;
+        this.expectedChecksum = extractExpectedChecksum(optionSet);
+        this.recordingPath = extractRecordingPath(optionSet);
+        if (isRecursive != null && isStreaming(create(fileDownloadDestinationLocation))) {
+            throw new IllegalArgumentException("A directory cannot be downloaded to the standard output or a named pipe");
+        }
     }
 
     private String extractFileDownloadPathSource(final OptionSet optionSet) {
@@ -58,10 +102,50 @@ public class CLIParameters {
                         optionSet.valueOf(GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT) : optionSet.valueOf(GLOBUS_FILE_TRANSFER_DESTINATION_PATH_LONG)).toString());
     }
 
+    private String extractManifestPath(final OptionSet optionSet) throws IOException {
+        if (!optionSet.hasArgument(MANIFEST_LONG)) {
+            return null;
+        }
+        final String manifest = optionSet.valueOf(MANIFEST_LONG).toString();
+        if (!Path.of(manifest).toFile().isFile()) {
+            throw new IOException("Manifest file %s doesn't exist.".formatted(manifest));
+        }
+        return manifest;
+    }
+
     private String extractCrypt4ghPrivateKeyPath(final OptionSet optionSet) {
         return optionSet.hasArgument(CRYPT4GH_PRIVATE_KEY_PATH_LONG) ? optionSet.valueOf(CRYPT4GH_PRIVATE_KEY_PATH_LONG).toString() : null;
     }
 
+    private Integer extractParallelStreams(final OptionSet optionSet) {
+        if (!optionSet.hasArgument(PARALLEL_STREAMS_LONG)) {
+            return null;
+        }
+        final Integer streams = Integer.valueOf(optionSet.valueOf(PARALLEL_STREAMS_LONG).toString());
+        if (streams < 1) {
+            throw new IllegalArgumentException("Number of parallel streams should be at least 1");
+        }
+        return streams;
+    }
+
+    private String extractExpectedChecksum(final OptionSet optionSet) {
+        if (!optionSet.hasArgument(CHECKSUM_LONG)) {
+            return null;
+        }
+        return ExpectedChecksum.parse(optionSet.valueOf(CHECKSUM_LONG).toString()).toString();
+    }
+
+    private Path extractRecordingPath(final OptionSet optionSet) throws IOException {
+        if (!optionSet.hasArgument(RECORD_LONG)) {
+            return null;
+        }
+        final Path recording = Path.of(optionSet.valueOf(RECORD_LONG).toString()).toAbsolutePath();
+        if (!recording.getParent().toFile().isDirectory()) {
+            throw new IOException("Recording directory %s doesn't exist.".formatted(recording.getParent()));
+        }
+        return recording;
+    }
+
     public String getFileDownloadSourceLocation() {
         return fileDownloadSourceLocation;
     }
@@ -82,7 +166,46 @@ public class CLIParameters {
         return crypt4ghPrivateKeyPath;
     }
 
-    private String validateFileDownloadDestinationPath(final String fileDownloadDestination) throws IOException {
+    public Integer getParallelStreams() {
+        return parallelStreams;
+    }
+
+    public Boolean isResumeEnabled() {
+        return isResumeEnabled;
+    }
+
+    public Boolean isSyncEnabled() {
+        return isSyncEnabled;
+    }
+
+    public Boolean isDecompressEnabled() {
+        return isDecompressEnabled;
+    }
+
+    public Boolean isRecursive() {
+        return isRecursive;
+    }
+
+    public String getManifestPath() {
+        return manifestPath;
+    }
+
+    public String getExpectedChecksum() {
+        return expectedChecksum;
+    }
+
+    public Path getRecordingPath() {
+        return recordingPath;
+    }
+
+    public String getDaemonSocketPath() {
+        return daemonSocketPath;
+    }
+
+    static String validateFileDownloadDestinationPath(final String fileDownloadDestination) throws IOException {
+        if (isStdout(create(fileDownloadDestination))) {
+            return fileDownloadDestination;
+        }
         final File fileDownloadDestinationFile = Path.of(create(fileDownloadDestination).getPath())
                 .normalize()
                 .getParent()
@@ -43,30 +43,73 @@ public class CLIParser {
     public static final String CRYPT4GH_OPTION = "crypt4gh";
     public static final String CRYPT4GH_PRIVATE_KEY_PATH_SHORT = "sk";
     public static final String CRYPT4GH_PRIVATE_KEY_PATH_LONG = "private_key";
+    public static final String PARALLEL_STREAMS_SHORT = "n";
+    public static final String PARALLEL_STREAMS_LONG = "streams";
+    public static final String MANIFEST_SHORT = "m";
+    public static final String MANIFEST_LONG = "manifest";
+    public static final String RESUME_SHORT = "r";
+    public static final String RESUME_LONG = "resume";
+    public static final String SYNC_LONG = "sync";
+    public static final String DECOMPRESS_LONG = "decompress";
+    public static final String CHECKSUM_SHORT = "c";
+    public static final String CHECKSUM_LONG = "checksum";
+    public static final String RECORD_LONG = "record";
+    public static final String DAEMON_LONG = "daemon";
+    public static final String RECURSIVE_LONG = "recursive";
     public static final String OPTIONS_HELP = "h";
     private static final OptionParser optionParser = buildParser();
 
     private static OptionParser buildParser() {
         final OptionParser parser = new OptionParser();
         parser.accepts(OPTIONS_HELP, "Use this option to display help");
+        parser.accepts(DAEMON_LONG, "Run as a daemon accepting JSON download jobs, one per line, on the given Unix domain socket")
+                .availableUnless(OPTIONS_HELP)
+                .withRequiredArg()
+                .ofType(String.class);
+        parser.acceptsAll(List.of(MANIFEST_SHORT, MANIFEST_LONG), "Manifest (TSV or JSON) of files to download: source, destination, optional file size, optional crypt4gh private key and optional expected checksum")
+                .availableUnless(OPTIONS_HELP, DAEMON_LONG)
+                .withRequiredArg()
+                .ofType(String.class);
+        parser.accepts(RECURSIVE_LONG, "Download the source directory and all its sub-directories into the destination directory")
+                .availableUnless(OPTIONS_HELP, MANIFEST_SHORT, DAEMON_LONG);
         parser.acceptsAll(List.of(GLOBUS_FILE_TRANSFER_SOURCE_PATH_SHORT, GLOBUS_FILE_TRANSFER_SOURCE_PATH_LONG), "Globus file download path/uri (source)")
-                .requiredUnless(OPTIONS_HELP)
+                .requiredUnless(OPTIONS_HELP, MANIFEST_SHORT, DAEMON_LONG)
+                .availableUnless(MANIFEST_SHORT, DAEMON_LONG)
                 .withRequiredArg()
                 .ofType(String.class);
-        parser.acceptsAll(List.of(GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT, GLOBUS_FILE_TRANSFER_DESTINATION_PATH_LONG), "Globus file download path (destination)")
-                .requiredUnless(OPTIONS_HELP)
+        parser.acceptsAll(List.of(GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT, GLOBUS_FILE_TRANSFER_DESTINATION_PATH_LONG), "Globus file download path (destination), - for the standard output or fifo:///path for a named pipe")
+                .requiredUnless(OPTIONS_HELP, MANIFEST_SHORT, DAEMON_LONG)
+                .availableUnless(MANIFEST_SHORT, DAEMON_LONG)
                 .withRequiredArg()
                 .ofType(String.class);
-        parser.acceptsAll(List.of(GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT, GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG), "File size")
-                .requiredUnless(OPTIONS_HELP)
+        parser.acceptsAll(List.of(GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT, GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG), "File size (default: looked up from the collection)")
+                .availableUnless(MANIFEST_SHORT, DAEMON_LONG, RECURSIVE_LONG)
                 .withRequiredArg()
                 .ofType(Long.class);
         parser.accepts(CRYPT4GH_OPTION, "Crypt4gh decryption! Use this option to decrypt file encrypted by Crypt4gh")
-                .availableUnless(OPTIONS_HELP);
+                .availableUnless(OPTIONS_HELP, RECURSIVE_LONG);
         parser.acceptsAll(List.of(CRYPT4GH_PRIVATE_KEY_PATH_SHORT, CRYPT4GH_PRIVATE_KEY_PATH_LONG), "Crypt4gh private key path")
                 .requiredIf(CRYPT4GH_OPTION)
                 .withRequiredArg()
                 .ofType(String.class);
+        parser.acceptsAll(List.of(PARALLEL_STREAMS_SHORT, PARALLEL_STREAMS_LONG), "Number of parallel range streams used to download the file (default: data.copy.parallelism)")
+                .availableUnless(OPTIONS_HELP)
+                .withRequiredArg()
+                .ofType(Integer.class);
+        parser.acceptsAll(List.of(RESUME_SHORT, RESUME_LONG), "Keep a partially downloaded file on failure and resume it on the next run (default: data.copy.resume.enabled)")
+                .availableUnless(OPTIONS_HELP);
+        parser.accepts(SYNC_LONG, "Skip files already present at the destination, compared by data.copy.sync.compare (default: data.copy.sync.enabled)")
+                .availableUnless(OPTIONS_HELP);
+        parser.accepts(DECOMPRESS_LONG, "Decompress gzip, BGZF and zstd files while downloading, other files are written as is (default: data.copy.decompress.enabled)")
+                .availableUnless(OPTIONS_HELP);
+        parser.acceptsAll(List.of(CHECKSUM_SHORT, CHECKSUM_LONG), "Expected checksum of the downloaded (decrypted) file as [algorithm:]hex, e.g. md5:9e107d9d372bb6826bd81d3542a419d6")
+                .availableUnless(OPTIONS_HELP, MANIFEST_SHORT, DAEMON_LONG, RECURSIVE_LONG)
+                .withRequiredArg()
+                .ofType(String.class);
+        parser.accepts(RECORD_LONG, "Record a Java Flight Recorder profile of the run, written to the given .jfr file at exit")
+                .availableUnless(OPTIONS_HELP)
+                .withRequiredArg()
+                .ofType(String.class);
         parser.allowsUnrecognizedOptions();
         return parser;
     }
@@ -19,14 +19,26 @@ package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser;
 
 import org.springframework.core.env.PropertySource;
 
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CHECKSUM_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CHECKSUM_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CRYPT4GH_PRIVATE_KEY_PATH_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.CRYPT4GH_PRIVATE_KEY_PATH_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.DAEMON_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.DECOMPRESS_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_DESTINATION_PATH_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_DESTINATION_PATH_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_SOURCE_PATH_LONG;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.GLOBUS_FILE_TRANSFER_SOURCE_PATH_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.MANIFEST_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.MANIFEST_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.PARALLEL_STREAMS_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.PARALLEL_STREAMS_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RECURSIVE_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RESUME_LONG;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.RESUME_SHORT;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParser.SYNC_LONG;
 
 public class CLIPropertySource extends PropertySource<CLIParameters> {
     public CLIPropertySource(final String name, final CLIParameters source) {
@@ -43,6 +55,14 @@ public class CLIPropertySource extends PropertySource<CLIParameters> {
             case GLOBUS_FILE_TRANSFER_FILE_SIZE_SHORT, GLOBUS_FILE_TRANSFER_FILE_SIZE_LONG -> getSource().getFileSize();
             case CRYPT4GH_PRIVATE_KEY_PATH_SHORT, CRYPT4GH_PRIVATE_KEY_PATH_LONG ->
                     getSource().getCrypt4ghPrivateKeyPath();
+            case PARALLEL_STREAMS_SHORT, PARALLEL_STREAMS_LONG -> getSource().getParallelStreams();
+            case RESUME_SHORT, RESUME_LONG -> getSource().isResumeEnabled();
+            case SYNC_LONG -> getSource().isSyncEnabled();
+            case DECOMPRESS_LONG -> getSource().isDecompressEnabled();
+            case RECURSIVE_LONG -> getSource().isRecursive();
+            case MANIFEST_SHORT, MANIFEST_LONG -> getSource().getManifestPath();
+            case CHECKSUM_SHORT, CHECKSUM_LONG -> getSource().getExpectedChecksum();
+            case DAEMON_LONG -> getSource().getDaemonSocketPath();
             default -> null;
         };
     }
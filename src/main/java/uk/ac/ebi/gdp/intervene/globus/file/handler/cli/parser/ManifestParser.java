@@ -0,0 +1,185 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ExpectedChecksum;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.FileTransferDTO;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.net.URI.create;
+import static java.nio.file.Files.readAllLines;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.CLIParameters.validateFileDownloadDestinationPath;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.OutputDestination.isStdout;
+
+/**
+ * Reads the list of files to download in batch mode. A manifest is either a JSON array of
+ * {@code {"source", "destination", "fileSize", "privateKey", "checksum"}} objects or a TSV
+ * file with source, destination, an optional file size, an optional crypt4gh private key and
+ * an optional expected checksum per line. Missing file sizes are looked up from the collection.
+ */
+public class ManifestParser {
+    private static final String JSON_EXTENSION = ".json";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String TSV_HEADER_FIRST_COLUMN = "source";
+    private static final String TSV_SEPARATOR = "\t";
+    private static final String FILE_URI_PREFIX = "file:";
+
+    private ManifestParser() {
+    }
+
+    public static List<FileTransferDTO> parse(final Path manifestPath) throws IOException {
+        final List<FileTransferDTO> fileTransfers = manifestPath.getFileName().toString().endsWith(JSON_EXTENSION) ?
+                parseJson(manifestPath) : parseTsv(manifestPath);
+        if (fileTransfers.isEmpty()) {
+            throw new IllegalArgumentException("Manifest %s doesn't contain any file to download".formatted(manifestPath));
+        }
+        for (final FileTransferDTO fileTransfer : fileTransfers) {
+            validate(fileTransfer);
+        }
+        validateUniqueDestinations(fileTransfers);
+        return fileTransfers;
+    }
+
+    /**
+     * Files of a manifest are downloaded concurrently, two of them writing to the same
+     * destination would truncate each other and share a resume journal.
+     *
+     * @param fileTransfers files to download.
+     * @throws IllegalArgumentException in case a destination appears more than once.
+     */
+    public static void validateUniqueDestinations(final List<FileTransferDTO> fileTransfers) {
+        final Set<Path> destinations = new HashSet<>(fileTransfers.size());
+        final Set<Path> duplicates = new TreeSet<>();
+        for (final FileTransferDTO fileTransfer : fileTransfers) {
+            final Path destination = destinationKey(fileTransfer.destination());
+            if (!destinations.add(destination)) {
+                duplicates.add(destination);
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            throw new IllegalArgumentException("Manifest lists more than one file for destination(s) %s".formatted(duplicates));
+        }
+    }
+
+    /**
+     * Crypt4gh private keys are removed once a file is decrypted, a key shared by two files would fail
+     * the second one after the first is downloaded.
+     *
+     * @param fileTransfers     files to download.
+     * @param defaultPrivateKey private key of the files without their own, null if none is supplied.
+     * @throws IllegalArgumentException in case a private key would decrypt more than one file.
+     */
+    public static void validateUniquePrivateKeys(final List<FileTransferDTO> fileTransfers,
+                                                 final String defaultPrivateKey) {
+        final Set<Path> privateKeys = new HashSet<>(fileTransfers.size());
+        final Set<Path> duplicates = new TreeSet<>();
+        for (final FileTransferDTO fileTransfer : fileTransfers) {
+            final String privateKey = fileTransfer.privateKey() != null ? fileTransfer.privateKey() : defaultPrivateKey;
+            if (privateKey == null) {
+                throw new IllegalArgumentException("No crypt4gh private key for %s, add one to the manifest or use --sk"
+                        .formatted(fileTransfer.source().getPath()));
+            }
+            final Path privateKeyPath = privateKeyPath(privateKey).toAbsolutePath().normalize();
+            if (!privateKeys.add(privateKeyPath)) {
+                duplicates.add(privateKeyPath);
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            throw new IllegalArgumentException(("Crypt4gh private key(s) %s would decrypt more than one file, each file of "
+                    + "the manifest needs its own key (--sk only covers one file without a key)").formatted(duplicates));
+        }
+    }
+
+    /**
+     * @param privateKey crypt4gh private key (or secret config) as a path or a {@code file:} URI.
+     * @return path of the private key.
+     */
+    public static Path privateKeyPath(final String privateKey) {
+        return privateKey.startsWith(FILE_URI_PREFIX) ? Path.of(create(privateKey)) : Path.of(privateKey);
+    }
+
+    /**
+     * @param destination destination URI of a file.
+     * @return absolute normalized path of the destination, equal for URIs writing the same file.
+     */
+    public static Path destinationKey(final URI destination) {
+        return Path.of(destination.getPath()).toAbsolutePath().normalize();
+    }
+
+    private static List<FileTransferDTO> parseJson(final Path manifestPath) throws IOException {
+        return Arrays.asList(new ObjectMapper().readValue(manifestPath.toFile(), FileTransferDTO[].class));
+    }
+
+    private static List<FileTransferDTO> parseTsv(final Path manifestPath) throws IOException {
+        final List<String> lines = readAllLines(manifestPath);
+        final List<FileTransferDTO> fileTransfers = new ArrayList<>(lines.size());
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            final String line = lines.get(lineNumber - 1).strip();
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+            final String[] columns = line.split(TSV_SEPARATOR);
+            if (lineNumber == 1 && TSV_HEADER_FIRST_COLUMN.equalsIgnoreCase(columns[0].strip())) {
+                continue;
+            }
+            if (columns.length < 2 || columns.length > 5) {
+                throw new IllegalArgumentException("Manifest %s line %s: expected 2 to 5 tab separated columns, found %s"
+                        .formatted(manifestPath, lineNumber, columns.length));
+            }
+            fileTransfers.add(new FileTransferDTO(
+                    create(columns[0].strip()),
+                    create(columns[1].strip()),
+                    optionalColumn(columns, 2) != null ? Long.valueOf(columns[2].strip()) : null,
+                    optionalColumn(columns, 3),
+                    optionalColumn(columns, 4)));
+        }
+        return fileTransfers;
+    }
+
+    private static String optionalColumn(final String[] columns,
+                                         final int index) {
+        return columns.length > index && !columns[index].isBlank() ? columns[index].strip() : null;
+    }
+
+    public static void validate(final FileTransferDTO fileTransfer) throws IOException {
+        if (fileTransfer.source() == null || fileTransfer.destination() == null) {
+            throw new IllegalArgumentException("Manifest entry %s should define source and destination".formatted(fileTransfer));
+        }
+        if (fileTransfer.fileSize() != null && fileTransfer.fileSize() < 0) {
+            throw new IllegalArgumentException("Manifest entry %s has a negative file size".formatted(fileTransfer));
+        }
+        if (fileTransfer.checksum() != null) {
+            ExpectedChecksum.parse(fileTransfer.checksum());
+        }
+        if (isStdout(fileTransfer.destination())) {
+            throw new IllegalArgumentException("Manifest entry %s cannot write to the standard output, use a fifo:// destination instead"
+                    .formatted(fileTransfer));
+        }
+        validateFileDownloadDestinationPath(fileTransfer.destination().toString());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.properties;
+
+import reactor.netty.http.HttpProtocol;
+
+import java.util.List;
+
+/**
+ * Connection pool, protocol and socket settings of the Globus web client, bound next to the core
+ * {@code WebClientProperties} under {@code webclient.connection}. Durations are in milliseconds, a
+ * buffer size of 0 keeps the operating system default.
+ */
+public class WebClientTuningProperties {
+    private List<HttpProtocol> protocols = List.of(HttpProtocol.HTTP11);
+    private int receiveBufferSize = 0;
+    private int sendBufferSize = 0;
+    private boolean tcpNoDelay = true;
+    private final Pool pool = new Pool();
+
+    public List<HttpProtocol> getProtocols() {
+        return protocols;
+    }
+
+    public void setProtocols(final List<HttpProtocol> protocols) {
+        this.protocols = protocols;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(final int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(final int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(final boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public static class Pool {
+        private String name = "globus";
+        private int maxConnections = 64;
+        private long pendingAcquireTimeout = 45000;
+        private long maxIdleTime = 60000;
+        private long maxLifeTime = 0;
+        private long evictInBackground = 30000;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(final int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public long getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(final long pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public long getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(final long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public long getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(final long maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        public long getEvictInBackground() {
+            return evictInBackground;
+        }
+
+        public void setEvictInBackground(final long evictInBackground) {
+            this.evictInBackground = evictInBackground;
+        }
+    }
+}
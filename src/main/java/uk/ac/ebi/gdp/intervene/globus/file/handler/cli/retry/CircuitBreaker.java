@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.APPLICATION_FAILED;
+
+/**
+ * Circuit breaker of the Globus collection, fed with the outcome of each file transfer of batch and
+ * daemon runs, whatever the number of requests it took. After a number of consecutive failed
+ * transfers the circuit opens and new transfers wait instead of burning their attempts. Once the open
+ * duration has passed a single transfer is let through, it closes the circuit if it succeeds or opens
+ * it again.
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private State state;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private long probeAtNanos;
+
+    /**
+     * @param failureThreshold   consecutive failed transfers opening the circuit, 0 to never open it.
+     * @param openDurationMillis time new transfers wait once the circuit is open.
+     */
+    public CircuitBreaker(final int failureThreshold,
+                          final long openDurationMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = MILLISECONDS.toNanos(openDurationMillis);
+        this.state = State.CLOSED;
+    }
+
+    public static CircuitBreaker disabled() {
+        return new CircuitBreaker(0, 0);
+    }
+
+    /**
+     * Waits until a new transfer may start.
+     *
+     * @param target file about to be transferred, used in logs.
+     * @throws InterruptedException in case the thread is interrupted while waiting.
+     */
+    public synchronized void awaitPermission(final String target) throws InterruptedException {
+        boolean waiting = false;
+        while (true) {
+            final long now = System.nanoTime();
+            if (state == State.CLOSED) {
+                return;
+            }
+            final long waitNanos = (state == State.OPEN ? openedAtNanos : probeAtNanos) + openDurationNanos - now;
+            if (waitNanos <= 0) {
+                // The open duration is over, or the last probe didn't report back in time
+                state = State.HALF_OPEN;
+                probeAtNanos = now;
+                LOGGER.info("Globus circuit half-open, probing the collection with {}", target);
+                return;
+            }
+            if (!waiting) {
+                LOGGER.info("Globus circuit open, {} waits up to {} ms", target, NANOSECONDS.toMillis(waitNanos));
+                waiting = true;
+            }
+            NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    /**
+     * Records the outcome of a transfer let through by {@link #awaitPermission(String)}. A checksum
+     * mismatch means the collection served the file, so only {@link ApplicationStatus#APPLICATION_FAILED}
+     * counts as a failure.
+     *
+     * @param status outcome of the transfer.
+     */
+    public void recordOutcome(final ApplicationStatus status) {
+        if (status == APPLICATION_FAILED) {
+            recordFailure();
+        } else {
+            recordSuccess();
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            LOGGER.info("Globus circuit closed, resuming transfers");
+            state = State.CLOSED;
+            notifyAll();
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (failureThreshold < 1) {
+            return;
+        }
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            LOGGER.warn("Globus circuit open after {} consecutive failed transfers, pausing new transfers for {} ms",
+                    consecutiveFailures, NANOSECONDS.toMillis(openDurationNanos));
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
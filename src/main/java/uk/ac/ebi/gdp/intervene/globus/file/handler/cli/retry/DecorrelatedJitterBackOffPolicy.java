@@ -0,0 +1,80 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry;
+
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+import org.springframework.retry.backoff.Sleeper;
+import org.springframework.retry.backoff.ThreadWaitSleeper;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.Math.min;
+
+/**
+ * Decorrelated jitter backoff: each delay is drawn between the initial delay and three times the
+ * previous one, capped at the maximum delay. Clients failing at the same time spread their retries
+ * instead of hitting the collection again in lockstep.
+ */
+public class DecorrelatedJitterBackOffPolicy implements BackOffPolicy {
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final Sleeper sleeper;
+
+    public DecorrelatedJitterBackOffPolicy(final long initialDelayMillis,
+                                           final long maxDelayMillis) {
+        if (initialDelayMillis < 1 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Delays should be positive and the maximum at least the initial one, found %s and %s"
+                    .formatted(initialDelayMillis, maxDelayMillis));
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.sleeper = new ThreadWaitSleeper();
+    }
+
+    @Override
+    public BackOffContext start(final RetryContext context) {
+        return new JitterBackOffContext(initialDelayMillis);
+    }
+
+    @Override
+    public void backOff(final BackOffContext backOffContext) throws BackOffInterruptedException {
+        final JitterBackOffContext context = (JitterBackOffContext) backOffContext;
+        final long upperBound = min(maxDelayMillis, context.previousDelayMillis * 3);
+        final long delay = upperBound > initialDelayMillis ?
+                ThreadLocalRandom.current().nextLong(initialDelayMillis, upperBound + 1) :
+                initialDelayMillis;
+        context.previousDelayMillis = delay;
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackOffInterruptedException("Thread interrupted while sleeping", e);
+        }
+    }
+
+    private static class JitterBackOffContext implements BackOffContext {
+        private long previousDelayMillis;
+
+        private JitterBackOffContext(final long previousDelayMillis) {
+            this.previousDelayMillis = previousDelayMillis;
+        }
+    }
+}
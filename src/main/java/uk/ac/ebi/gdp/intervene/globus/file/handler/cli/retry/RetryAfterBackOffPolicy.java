@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+import org.springframework.retry.backoff.Sleeper;
+import org.springframework.retry.backoff.ThreadWaitSleeper;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.exception.RetryAfterException;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.Math.min;
+
+/**
+ * Waits for the delay of the {@code Retry-After} header when the last attempt failed with a
+ * {@link RetryAfterException}, plus up to 10% of jitter so the clients told to come back at the same
+ * time don't, otherwise backs off with the delegate policy.
+ */
+public class RetryAfterBackOffPolicy implements BackOffPolicy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryAfterBackOffPolicy.class);
+    private final BackOffPolicy delegate;
+    private final long maxRetryAfterMillis;
+    private final Sleeper sleeper;
+
+    /**
+     * @param delegate            policy used when the server didn't ask for a delay.
+     * @param maxRetryAfterMillis longest {@code Retry-After} delay honoured, longer ones are shortened.
+     */
+    public RetryAfterBackOffPolicy(final BackOffPolicy delegate,
+                                   final long maxRetryAfterMillis) {
+        this.delegate = delegate;
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        this.sleeper = new ThreadWaitSleeper();
+    }
+
+    @Override
+    public BackOffContext start(final RetryContext context) {
+        return new RetryAfterBackOffContext(context, delegate.start(context));
+    }
+
+    @Override
+    public void backOff(final BackOffContext backOffContext) throws BackOffInterruptedException {
+        final RetryAfterBackOffContext context = (RetryAfterBackOffContext) backOffContext;
+        final Duration retryAfter = retryAfter(context.retryContext.getLastThrowable());
+        if (retryAfter == null) {
+            delegate.backOff(context.delegateContext);
+            return;
+        }
+        final long delay = min(maxRetryAfterMillis, retryAfter.toMillis());
+        final long jitteredDelay = delay + ThreadLocalRandom.current().nextLong(delay / 10 + 1);
+        LOGGER.info("Globus asked to retry after {} ms, waiting {} ms", retryAfter.toMillis(), jitteredDelay);
+        try {
+            sleeper.sleep(jitteredDelay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackOffInterruptedException("Thread interrupted while sleeping", e);
+        }
+    }
+
+    private static Duration retryAfter(final Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetryAfterException retryAfterException) {
+                return retryAfterException.getRetryAfter();
+            }
+        }
+        return null;
+    }
+
+    private record RetryAfterBackOffContext(RetryContext retryContext,
+                                            BackOffContext delegateContext) implements BackOffContext {
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Retry budget shared by all Globus requests of the process. Every request deposits a fraction of
+ * a retry and the budget earns a minimum number of retries per second, every retry withdraws one.
+ * While the collection fails most requests, retries are limited to that fraction of the traffic
+ * instead of multiplying it by the number of attempts.
+ */
+public class RetryBudget {
+    private final double depositPerRequest;
+    private final double retriesPerSecond;
+    private final double maxBalance;
+    private double balance;
+    private long lastRefillNanos;
+
+    /**
+     * @param depositPerRequest fraction of a retry earned by each request, e.g. 0.2 for at most 20% extra requests.
+     * @param retriesPerSecond  retries earned per second whatever the traffic, so low traffic can still retry.
+     * @param maxBalance        maximum number of retries saved up while the collection is healthy.
+     */
+    public RetryBudget(final double depositPerRequest,
+                       final double retriesPerSecond,
+                       final double maxBalance) {
+        if (depositPerRequest < 0 || retriesPerSecond < 0 || maxBalance < 1) {
+            throw new IllegalArgumentException("Retry budget should not be negative and hold at least one retry, found %s, %s and %s"
+                    .formatted(depositPerRequest, retriesPerSecond, maxBalance));
+        }
+        this.depositPerRequest = depositPerRequest;
+        this.retriesPerSecond = retriesPerSecond;
+        this.maxBalance = maxBalance;
+        this.balance = maxBalance;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public synchronized void deposit() {
+        refill();
+        balance = min(maxBalance, balance + depositPerRequest);
+    }
+
+    /**
+     * @return true if a retry may be attempted, the retry is withdrawn from the budget.
+     */
+    public synchronized boolean tryWithdraw() {
+        refill();
+        if (balance < 1) {
+            return false;
+        }
+        balance--;
+        return true;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        balance = min(maxBalance, balance + (now - lastRefillNanos) * retriesPerSecond / SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
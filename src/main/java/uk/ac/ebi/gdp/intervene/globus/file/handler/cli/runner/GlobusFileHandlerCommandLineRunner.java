@@ -17,51 +17,253 @@
  */
 package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.runner;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.ExitCodeGenerator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.FileTransferDTO;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listener.BytesTransferredListener;
-import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.listing.DirectoryWalker;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.retry.CircuitBreaker;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransferFactory;
 
-import java.net.URI;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static java.lang.Math.min;
 import static java.lang.System.exit;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.APPLICATION_FAILED;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.INPUT_PROCESSING_ERROR;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.SUCCESS;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.combine;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.parser.ManifestParser.destinationKey;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.IGlobusFileTransfer.UNKNOWN_FILE_SIZE;
 
 public class GlobusFileHandlerCommandLineRunner implements ApplicationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GlobusFileHandlerCommandLineRunner.class);
     private final ApplicationContext applicationContext;
-    private final IGlobusFileTransfer globusFileDownloader;
-    private final URI fileDownloadSource;
-    private final URI fileDownloadDestination;
-    private final long fileSize;
+    private final IGlobusFileTransferFactory globusFileTransferFactory;
+    private final CircuitBreaker circuitBreaker;
+    private final DirectoryWalker directoryWalker;
+    private final List<FileTransferDTO> fileTransfers;
+    private final int concurrency;
+    private final Path resultFile;
+    private final boolean trainingRun;
 
+    /**
+     * @param circuitBreaker  holds the files of a batch back while the collection is failing.
+     * @param directoryWalker lists the single source of {@code fileTransfers} as a directory, null to download files.
+     * @param trainingRun     true to exit once the transfers are warmed up, used to record the class data sharing archive.
+     */
     public GlobusFileHandlerCommandLineRunner(final ApplicationContext applicationContext,
-                                              final IGlobusFileTransfer globusFileDownloader,
-                                              final URI fileDownloadSource,
-                                              final URI fileDownloadDestination,
-                                              final long fileSize) {
+                                              final IGlobusFileTransferFactory globusFileTransferFactory,
+                                              final CircuitBreaker circuitBreaker,
+                                              final DirectoryWalker directoryWalker,
+                                              final List<FileTransferDTO> fileTransfers,
+                                              final int concurrency,
+                                              final Path resultFile,
+                                              final boolean trainingRun) {
         this.applicationContext = applicationContext;
-        this.globusFileDownloader = globusFileDownloader;
-        this.fileDownloadSource = fileDownloadSource;
-        this.fileDownloadDestination = fileDownloadDestination;
-        this.fileSize = fileSize;
+        this.globusFileTransferFactory = globusFileTransferFactory;
+        this.circuitBreaker = circuitBreaker;
+        this.directoryWalker = directoryWalker;
+        this.fileTransfers = fileTransfers;
+        this.concurrency = concurrency;
+        this.resultFile = resultFile;
+        this.trainingRun = trainingRun;
     }
 
     @Override
     public void run(ApplicationArguments args) {
-        terminateApplication(() -> globusFileDownloader
-                .downloadFile(
-                        fileDownloadSource,
-                        fileDownloadDestination,
-                        fileSize,
-                        new BytesTransferredListener(
-                                fileDownloadSource.getPath(),
-                                new ScheduledThreadPoolExecutor(1)))
+        if (trainingRun) {
+            LOGGER.info("Training run, warming up the transfers of {} file(s) without downloading them", fileTransfers.size());
+            terminateApplication(() -> warmUp().getValue());
+            return;
+        }
+        final ScheduledExecutorService progressReportExecutor = new ScheduledThreadPoolExecutor(1);
+        terminateApplication(() -> (directoryWalker != null ?
+                downloadDirectory(fileTransfers.get(0), progressReportExecutor) :
+                fileTransfers.size() == 1 ?
+                        downloadFile(fileTransfers.get(0), progressReportExecutor) :
+                        downloadFiles(progressReportExecutor))
                 .getValue());
     }
 
+    private ApplicationStatus downloadFiles(final ScheduledExecutorService progressReportExecutor) {
+        LOGGER.info("Batch download of {} files started with concurrency {}", fileTransfers.size(), concurrency);
+        final ExecutorService executorService = newFixedThreadPool(min(concurrency, fileTransfers.size()));
+        try {
+            final List<Future<ApplicationStatus>> futures = fileTransfers
+                    .stream()
+                    .map(fileTransfer -> submit(executorService, fileTransfer, progressReportExecutor))
+                    .toList();
+            final List<ApplicationStatus> statuses = awaitStatuses(futures);
+            reportResults(fileTransfers, statuses);
+            return combine(statuses);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Files are submitted for download as the directories are listed, the listing threads
+     * only wait for a download slot through the executor queue. A file whose destination was
+     * already claimed by another one is not downloaded, the run then ends with an input error.
+     */
+    private ApplicationStatus downloadDirectory(final FileTransferDTO directory,
+                                                final ScheduledExecutorService progressReportExecutor) {
+        LOGGER.info("Recursive download of {} started with concurrency {}", directory.source().getPath(), concurrency);
+        final ExecutorService executorService = newFixedThreadPool(concurrency);
+        final List<FileTransferDTO> foundFiles = new ArrayList<>();
+        final List<Future<ApplicationStatus>> futures = new ArrayList<>();
+        final Set<Path> destinations = new HashSet<>();
+        final AtomicBoolean duplicates = new AtomicBoolean();
+        try {
+            boolean listed = true;
+            try {
+                directoryWalker.walk(directory.source(), directory.destination(), fileTransfer -> {
+                    synchronized (foundFiles) {
+                        if (!destinations.add(destinationKey(fileTransfer.destination()))) {
+                            LOGGER.error("{} isn't downloaded, another file is already downloaded to {}",
+                                    fileTransfer.source().getPath(), fileTransfer.destination().getPath());
+                            duplicates.set(true);
+                            return;
+                        }
+                        foundFiles.add(fileTransfer);
+                        futures.add(submit(executorService, fileTransfer, progressReportExecutor));
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listed = false;
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+                listed = false;
+            }
+            final List<FileTransferDTO> submittedFiles;
+            final List<Future<ApplicationStatus>> submittedFutures;
+            synchronized (foundFiles) {
+                submittedFiles = List.copyOf(foundFiles);
+                submittedFutures = List.copyOf(futures);
+            }
+            final List<ApplicationStatus> statuses = awaitStatuses(submittedFutures);
+            reportResults(submittedFiles, statuses);
+            if (statuses.isEmpty()) {
+                LOGGER.error("No file found under {}", directory.source().getPath());
+                return APPLICATION_FAILED;
+            }
+            if (duplicates.get()) {
+                return INPUT_PROCESSING_ERROR;
+            }
+            if (!listed) {
+                statuses.add(APPLICATION_FAILED);
+            }
+            return combine(statuses);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private ApplicationStatus warmUp() {
+        try {
+            for (final FileTransferDTO fileTransfer : fileTransfers) {
+                globusFileTransferFactory.create(fileTransfer.privateKey()).warmUp();
+            }
+            return SUCCESS;
+        } catch (Exception e) {
+            LOGGER.error("Unable to warm up transfers. %s".formatted(e.getMessage()), e);
+            return APPLICATION_FAILED;
+        }
+    }
+
+    private Future<ApplicationStatus> submit(final ExecutorService executorService,
+                                             final FileTransferDTO fileTransfer,
+                                             final ScheduledExecutorService progressReportExecutor) {
+        return executorService.submit(() -> {
+            circuitBreaker.awaitPermission(fileTransfer.source().getPath());
+            final ApplicationStatus status = downloadFile(fileTransfer, progressReportExecutor);
+            circuitBreaker.recordOutcome(status);
+            return status;
+        });
+    }
+
+    private ApplicationStatus downloadFile(final FileTransferDTO fileTransfer,
+                                           final ScheduledExecutorService progressReportExecutor) {
+        try (final BytesTransferredListener bytesTransferredListener = new BytesTransferredListener(
+                fileTransfer.source().getPath(),
+                progressReportExecutor)) {
+            return globusFileTransferFactory
+                    .create(fileTransfer.privateKey())
+                    .downloadFile(
+                            fileTransfer.source(),
+                            fileTransfer.destination(),
+                            fileTransfer.fileSize() != null ? fileTransfer.fileSize() : UNKNOWN_FILE_SIZE,
+                            fileTransfer.checksum(),
+                            bytesTransferredListener);
+        } catch (Exception e) {
+            LOGGER.error("Unable to start download of %s. %s".formatted(fileTransfer.source().getPath(), e.getMessage()), e);
+            return APPLICATION_FAILED;
+        }
+    }
+
+    private List<ApplicationStatus> awaitStatuses(final List<Future<ApplicationStatus>> futures) {
+        final List<ApplicationStatus> statuses = new ArrayList<>(futures.size());
+        for (final Future<ApplicationStatus> future : futures) {
+            statuses.add(awaitStatus(future));
+        }
+        return statuses;
+    }
+
+    private ApplicationStatus awaitStatus(final Future<ApplicationStatus> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return APPLICATION_FAILED;
+        } catch (ExecutionException e) {
+            return APPLICATION_FAILED;
+        }
+    }
+
+    private void reportResults(final List<FileTransferDTO> fileTransfers,
+                               final List<ApplicationStatus> statuses) {
+        for (int i = 0; i < fileTransfers.size(); i++) {
+            LOGGER.info("Batch result: {} -> {}: {}",
+                    fileTransfers.get(i).source().getPath(), fileTransfers.get(i).destination().getPath(), statuses.get(i));
+        }
+        if (resultFile == null) {
+            return;
+        }
+        try (final PrintWriter writer = new PrintWriter(newBufferedWriter(resultFile))) {
+            writer.println("source\tdestination\tstatus");
+            for (int i = 0; i < fileTransfers.size(); i++) {
+                writer.println(String.join("\t",
+                        fileTransfers.get(i).source().toString(),
+                        fileTransfers.get(i).destination().toString(),
+                        statuses.get(i).name()));
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to write batch results to {}", resultFile, e);
+        }
+    }
+
     private void terminateApplication(final ExitCodeGenerator exitCodeGenerator) {
         exit(SpringApplication.exit(applicationContext, exitCodeGenerator));
     }
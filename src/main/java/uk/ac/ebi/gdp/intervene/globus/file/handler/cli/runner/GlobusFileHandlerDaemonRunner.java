@@ -0,0 +1,40 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.runner;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.daemon.DaemonServer;
+
+/**
+ * Runs the application as a daemon accepting download jobs until the application context is closed,
+ * which closes the {@link DaemonServer} bean.
+ */
+public class GlobusFileHandlerDaemonRunner implements ApplicationRunner {
+    private final DaemonServer daemonServer;
+
+    public GlobusFileHandlerDaemonRunner(final DaemonServer daemonServer) {
+        this.daemonServer = daemonServer;
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) throws Exception {
+        daemonServer.start();
+        daemonServer.awaitTermination();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Token bucket shared by all downloads of the process, limiting the rate at which bytes are
+ * read from Globus. Tokens accumulate at the current rate up to the burst size, a read taking
+ * more tokens than available waits until the debt is repaid, so concurrent streams share the
+ * rate. The rate follows an optional daily schedule, e.g. unlimited at night, and is
+ * re-evaluated every second.
+ */
+public class BandwidthLimiter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BandwidthLimiter.class);
+    private static final long UNLIMITED = 0;
+    private static final long RATE_CHECK_INTERVAL_NANOS = SECONDS.toNanos(1);
+    private final long defaultBytesPerSecond;
+    private final long burstBytes;
+    private final List<Window> schedule;
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastRateCheckNanos;
+
+    /**
+     * @param bytesPerSecond rate outside of the scheduled windows, 0 for unlimited.
+     * @param burstBytes     number of bytes that may be read at once after an idle period, 0 for one second worth of the current rate.
+     * @param schedule       daily windows overriding the rate, the first matching window applies.
+     */
+    public BandwidthLimiter(final long bytesPerSecond,
+                            final long burstBytes,
+                            final List<Window> schedule) {
+        if (bytesPerSecond < 0 || burstBytes < 0) {
+            throw new IllegalArgumentException("Rate and burst should not be negative, found %s and %s"
+                    .formatted(bytesPerSecond, burstBytes));
+        }
+        this.defaultBytesPerSecond = bytesPerSecond;
+        this.burstBytes = burstBytes;
+        this.schedule = List.copyOf(schedule);
+        this.bytesPerSecond = -1;
+        this.lastRateCheckNanos = System.nanoTime() - RATE_CHECK_INTERVAL_NANOS;
+    }
+
+    public static BandwidthLimiter unlimited() {
+        return new BandwidthLimiter(UNLIMITED, 0, List.of());
+    }
+
+    /**
+     * @param schedule comma separated {@code HH:mm-HH:mm=rate} windows, the rate in bytes per second
+     *                 with an optional {@code KB}, {@code MB} or {@code GB} suffix, 0 for unlimited.
+     *                 A window ending before it starts spans midnight.
+     * @return scheduled windows.
+     */
+    public static List<Window> parseSchedule(final String schedule) {
+        if (schedule == null || schedule.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(schedule.split(","))
+                .map(String::trim)
+                .map(BandwidthLimiter::parseWindow)
+                .toList();
+    }
+
+    /**
+     * @param rate bytes per second with an optional {@code KB}, {@code MB} or {@code GB} suffix.
+     * @return bytes per second.
+     */
+    public static long parseRate(final String rate) {
+        try {
+            return DataSize.parse(rate.trim()).toBytes();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid rate %s, expected bytes per second such as 52428800 or 50MB"
+                    .formatted(rate), e);
+        }
+    }
+
+    private static Window parseWindow(final String window) {
+        final String[] periodAndRate = window.split("=");
+        final String[] startAndEnd = periodAndRate[0].split("-");
+        if (periodAndRate.length != 2 || startAndEnd.length != 2) {
+            throw new IllegalArgumentException("Invalid bandwidth window %s, expected HH:mm-HH:mm=rate".formatted(window));
+        }
+        try {
+            return new Window(
+                    LocalTime.parse(startAndEnd[0].trim()),
+                    LocalTime.parse(startAndEnd[1].trim()),
+                    parseRate(periodAndRate[1]));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid bandwidth window %s, expected HH:mm-HH:mm=rate".formatted(window), e);
+        }
+    }
+
+    /**
+     * Takes tokens for bytes just read, waiting when the bucket runs out.
+     *
+     * @param bytes number of bytes read.
+     * @throws InterruptedIOException in case the thread is interrupted while waiting.
+     */
+    public void acquire(final int bytes) throws InterruptedIOException {
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            updateRate(now);
+            if (bytesPerSecond == UNLIMITED) {
+                return;
+            }
+            tokens = min(burst(), tokens + (now - lastRefillNanos) * bytesPerSecond / 1e9);
+            lastRefillNanos = now;
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+        }
+        if (waitNanos > 0) {
+            try {
+                NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    private void updateRate(final long now) {
+        if (now - lastRateCheckNanos < RATE_CHECK_INTERVAL_NANOS) {
+            return;
+        }
+        lastRateCheckNanos = now;
+        final LocalTime time = LocalTime.now();
+        final long rate = schedule.stream()
+                .filter(window -> window.contains(time))
+                .findFirst()
+                .map(Window::bytesPerSecond)
+                .orElse(defaultBytesPerSecond);
+        if (rate != bytesPerSecond) {
+            LOGGER.info("Download bandwidth {}", rate == UNLIMITED ? "unlimited" : "limited to %s bytes/s".formatted(rate));
+            bytesPerSecond = rate;
+            tokens = burst();
+            lastRefillNanos = now;
+        }
+    }
+
+    private double burst() {
+        return burstBytes > 0 ? burstBytes : bytesPerSecond;
+    }
+
+    /**
+     * Daily period with its own rate, 0 for unlimited.
+     */
+    public record Window(LocalTime start, LocalTime end, long bytesPerSecond) {
+        boolean contains(final LocalTime time) {
+            return start.isBefore(end) ?
+                    !time.isBefore(start) && time.isBefore(end) :
+                    !time.isBefore(start) || time.isBefore(end);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import uk.ac.ebi.gdp.intervene.cryptography.aes.AESCryptography;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.PrivateKeyDTO;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.dto.SecretDetailsDTO;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhase;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhaseEvent;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.service.KeyHandlerService;
 
 import java.io.IOException;
@@ -53,7 +55,7 @@ public class Crypt4gh {
     /**
      * Builder function to initialize Builder class with mandatory parameters.
      *
-     * @param crypt4ghBinAbsolutePath absolute bin path to crypt4gh executable binary.
+     * @param crypt4ghBinAbsolutePath absolute bin path to crypt4gh executable binary, null when decrypting in the JVM.
      * @param privateKeyAbsolutePath absolute path to private key.
      *
      * @return Builder instance.
@@ -67,7 +69,7 @@ public class Crypt4gh {
     /**
      * Builder function to initialize Builder class with mandatory parameters.
      *
-     * @param crypt4ghBinAbsolutePath absolute bin path to crypt4gh executable binary.
+     * @param crypt4ghBinAbsolutePath absolute bin path to crypt4gh executable binary, null when decrypting in the JVM.
      * @param privateKeyAbsolutePath absolute path to private key.
      * @param keyHandlerService key handler service.
      * @param password to decrypt encrypted private key.
@@ -87,25 +89,35 @@ public class Crypt4gh {
     /**
      * Builds crypt4gh decryption command.
      *
-     * @param destinationFileURI location of decrypted file to download at.
+     * @param destinationFileURI location of decrypted file to download at, for the standard output
+     *                           the decrypted bytes go to the inherited standard output of the process.
      *
      * @return complete executable command.
      */
     public String crypt4ghDecryptBashCmd(final URI destinationFileURI) {
+        requireNonNull(crypt4ghBinAbsolutePath, "Crypt4gh bin absolute path cannot be null");
         requireNonNull(destinationFileURI, "Decrypted download file URI cannot be null");
-        return new StringJoiner(" ")
+        final StringJoiner cmd = new StringJoiner(" ")
                 .add(crypt4ghBinAbsolutePath.toString())
                 .add("decrypt")
                 .add("--sk")
-                .add(privateKeyAbsolutePath.toString())
-                .add(">")
-                .add(destinationFileURI.getPath())
-                .add("&&")
+                .add(privateKeyAbsolutePath.toString());
+        if (!OutputDestination.isStdout(destinationFileURI)) {
+            cmd.add(">").add(destinationFileURI.getPath());
+        }
+        return cmd.add("&&")
                 .add("rm")
                 .add(privateKeyAbsolutePath.toString())
                 .toString();
     }
 
+    /**
+     * @return absolute path to private key.
+     */
+    public Path getPrivateKeyAbsolutePath() {
+        return privateKeyAbsolutePath;
+    }
+
     /**
      * @return true if file is present & deleted.
      * @throws IOException in case error occurs.
@@ -125,7 +137,7 @@ public class Crypt4gh {
 
         private Builder(final Path crypt4ghBinAbsolutePath,
                         final Path privateKeyAbsolutePath) {
-            validateFiles(crypt4ghBinAbsolutePath, privateKeyAbsolutePath);
+            validatePrivateKeyFile(privateKeyAbsolutePath);
             this.crypt4ghBinAbsolutePath = crypt4ghBinAbsolutePath;
             this.privateKeyAbsolutePath = privateKeyAbsolutePath;
         }
@@ -134,16 +146,14 @@ public class Crypt4gh {
                         final Path privateKeyAbsolutePath,
                         final KeyHandlerService keyHandlerService,
                         final char[] password) throws IOException {
-            validateFiles(crypt4ghBinAbsolutePath, privateKeyAbsolutePath);
+            validatePrivateKeyFile(privateKeyAbsolutePath);
             this.crypt4ghBinAbsolutePath = crypt4ghBinAbsolutePath;
             this.keyHandlerService = keyHandlerService;
             this.password = password;
             this.privateKeyAbsolutePath = retrievePrivateKeyFromKeyHandlerService(privateKeyAbsolutePath);
         }
 
-        private void validateFiles(final Path crypt4ghBinAbsolutePath,
-                                   final Path privateKeyAbsolutePath) {
-            requireNonNull(crypt4ghBinAbsolutePath, "Crypt4gh bin absolute path cannot be null");
+        private void validatePrivateKeyFile(final Path privateKeyAbsolutePath) {
             validatePrivateKey(privateKeyAbsolutePath);
 
             if (notExists(privateKeyAbsolutePath)) {
@@ -163,9 +173,13 @@ public class Crypt4gh {
             final ObjectMapper objectMapper = new ObjectMapper();
             final SecretDetailsDTO secretDetailsDTO = objectMapper
                     .readValue(privateKeySecretConfig.toFile(), SecretDetailsDTO.class);
+            final TransferPhaseEvent keyFetchEvent = TransferPhaseEvent.begin(TransferPhase.KEY_FETCH, secretDetailsDTO.secretId());
             final PrivateKeyDTO privateKeyDTO = getSecretDetails(secretDetailsDTO);
+            keyFetchEvent.commit();
+            final TransferPhaseEvent keyUnwrapEvent = TransferPhaseEvent.begin(TransferPhase.KEY_UNWRAP, secretDetailsDTO.secretId());
             final AESCryptography aesCryptography = new AESCryptography.Builder().build();
             final byte[] privateKey = aesCryptography.decrypt(privateKeyDTO.privateKey(), password);
+            keyUnwrapEvent.commit();
             return saveDecryptedPrivateKey(privateKey,
                     secretDetailsDTO.secretId(),
                     privateKeySecretConfig.getParent());
@@ -24,7 +24,19 @@ import org.springframework.web.reactive.function.client.WebClient;
 import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
 import uk.ac.ebi.gdp.file.handler.core.stream.ProgressListenerOutputStream;
 import uk.ac.ebi.gdp.file.handler.core.stream.RetryInputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculator;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculatorFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumOutputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumVerifier;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ExpectedChecksum;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.Decompressor;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.ConnectTracingInputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhase;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhaseEvent;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferStage;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -32,47 +44,226 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Map;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.nio.file.Files.deleteIfExists;
 import static java.nio.file.Paths.get;
-import static org.apache.commons.io.IOUtils.copy;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.joining;
 import static uk.ac.ebi.gdp.file.handler.core.utils.Checksum.getMD5MessageDigest;
 import static uk.ac.ebi.gdp.file.handler.core.utils.Checksum.normalize;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.APPLICATION_FAILED;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.CHECKSUM_MISMATCH;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus.SUCCESS;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.OutputDestination.isStreaming;
 
 public class DefaultGlobusFileTransfer implements IGlobusFileTransfer {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultGlobusFileTransfer.class);
     private final WebClient webClient;
     private final RetryTemplate retryTemplate;
-    private final int pipeSize;
     protected final int bufferSize;
+    private final int parallelism;
+    private final long chunkSize;
+    private final boolean resume;
+    private final long checkpointInterval;
+    private final ParallelRangeDownloader parallelRangeDownloader;
+    private final FileChannelSink fileChannelSink;
+    private final ChecksumCalculatorFactory checksumCalculatorFactory;
+    private final ChecksumVerifier checksumVerifier;
+    protected final TransferTuner transferTuner;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final StallDetector stallDetector;
+    private final SyncPolicy syncPolicy;
+    protected final Decompressor decompressor;
+    protected final TransferMetrics transferMetrics;
 
     public DefaultGlobusFileTransfer(final WebClient webClient,
                                      final RetryTemplate retryTemplate,
                                      final int pipeSize,
                                      final int bufferSize) {
+        this(webClient, retryTemplate, pipeSize, bufferSize, TransferOptions.defaults());
+    }
+
+    /**
+     * @param transferOptions parallelism, resume, checksum, sync, decompression, rate limit and metrics of the
+     *                        downloads, a transfer tuner left unset keeps {@code bufferSize} and {@code pipeSize}.
+     */
+    public DefaultGlobusFileTransfer(final WebClient webClient,
+                                     final RetryTemplate retryTemplate,
+                                     final int pipeSize,
+                                     final int bufferSize,
+                                     final TransferOptions transferOptions) {
         this.webClient = webClient;
         this.retryTemplate = retryTemplate;
-        this.pipeSize = pipeSize;
         this.bufferSize = bufferSize;
+        this.parallelism = transferOptions.getParallelism();
+        this.chunkSize = transferOptions.getChunkSize();
+        this.resume = transferOptions.isResume();
+        this.checkpointInterval = transferOptions.getCheckpointInterval();
+        this.checksumCalculatorFactory = transferOptions.getChecksumCalculatorFactory();
+        this.checksumVerifier = transferOptions.getChecksumVerifier();
+        this.transferTuner = transferOptions.getTransferTuner() != null ?
+                transferOptions.getTransferTuner() : TransferTuner.fixed(bufferSize, pipeSize);
+        this.bandwidthLimiter = transferOptions.getBandwidthLimiter();
+        this.stallDetector = transferOptions.getStallDetector();
+        this.syncPolicy = transferOptions.getSyncPolicy();
+        this.decompressor = transferOptions.getDecompressor();
+        this.transferMetrics = transferOptions.getTransferMetrics();
+        this.parallelRangeDownloader = new ParallelRangeDownloader(
+                webClient,
+                retryTemplate,
+                bufferSize,
+                parallelism,
+                chunkSize,
+                this.bandwidthLimiter,
+                this.stallDetector,
+                this.transferMetrics);
+        this.fileChannelSink = transferOptions.getDirectBufferPool() == null ? null :
+                new FileChannelSink(transferOptions.getDirectBufferPool(), this.transferTuner.getMaxBufferSize(), this.transferMetrics);
     }
 
     @Override
     public ApplicationStatus downloadFile(final URI downloadFileSource,
                                           final URI downloadFileDestination,
                                           final long fileSize,
+                                          final String expectedChecksum,
                                           final ProgressListener progressListener) {
+        final long startNanos = System.nanoTime();
+        final TransferPhaseEvent downloadEvent = TransferPhaseEvent.begin(TransferPhase.DOWNLOAD, downloadFileSource.getPath());
+        final boolean sync = syncPolicy.isEnabled() && !isStreaming(downloadFileDestination);
+        final RemoteFile remoteFile;
+        try {
+            remoteFile = fileSize == UNKNOWN_FILE_SIZE || sync ? fetchRemoteFile(downloadFileSource) : null;
+        } catch (Exception e) {
+            LOGGER.error("Unable to look up file %s. %s".formatted(downloadFileSource.getPath(), e.getMessage()), e);
+            return recordTransfer(downloadEvent, APPLICATION_FAILED, max(fileSize, 0), startNanos);
+        }
+        if (fileSize == UNKNOWN_FILE_SIZE && remoteFile.size() < 0) {
+            LOGGER.error("Size of {} isn't returned by the collection, supply it with -l/--file_size", downloadFileSource.getPath());
+            return recordTransfer(downloadEvent, APPLICATION_FAILED, 0, startNanos);
+        }
+        final long resolvedFileSize = fileSize == UNKNOWN_FILE_SIZE ? remoteFile.size() : max(fileSize, 0);
+        if (fileSize == UNKNOWN_FILE_SIZE) {
+            LOGGER.info("Size of {} looked up: {} bytes", downloadFileSource.getPath(), resolvedFileSize);
+        }
+        ExpectedChecksum checksum = null;
+        if (sync) {
+            try {
+                checksum = syncPolicy.requiresChecksum() ? checksumVerifier.resolve(downloadFileSource, expectedChecksum) : null;
+                if (syncPolicy.isInSync(Path.of(downloadFileDestination.getPath()), remoteFile,
+                        destinationSize(remoteFile.size()), checksum, checksumVerifier)) {
+                    LOGGER.info("File {} is already in sync at {}, download skipped",
+                            downloadFileSource.getPath(), downloadFileDestination.getPath());
+                    downloadEvent.commit();
+                    transferMetrics.recordSkip();
+                    return SUCCESS;
+                }
+            } catch (Exception e) {
+                LOGGER.error("Unable to check whether %s is in sync at %s. %s".formatted(downloadFileSource.getPath(),
+                        downloadFileDestination.getPath(), e.getMessage()), e);
+                return recordTransfer(downloadEvent, APPLICATION_FAILED, resolvedFileSize, startNanos);
+            }
+        }
+        final ApplicationStatus status = downloadAndVerify(downloadFileSource, downloadFileDestination, resolvedFileSize,
+                checksum != null ? checksum.toString() : expectedChecksum, progressListener);
+        return recordTransfer(downloadEvent, status, resolvedFileSize, startNanos);
+    }
+
+    private ApplicationStatus recordTransfer(final TransferPhaseEvent downloadEvent,
+                                             final ApplicationStatus status,
+                                             final long fileSize,
+                                             final long startNanos) {
+        downloadEvent.commit();
+        transferMetrics.recordTransfer(status, fileSize, System.nanoTime() - startNanos);
+        return status;
+    }
+
+    /**
+     * @return false when downloaded bytes never pass through the JVM and no checksum can be computed.
+     */
+    protected boolean computesChecksums() {
+        return true;
+    }
+
+    /**
+     * @param remoteFileSize size of the Globus file in bytes.
+     * @return size of the destination file once downloaded, -1 if it cannot be derived from the Globus file.
+     */
+    protected long destinationSize(final long remoteFileSize) {
+        return decompressor.isEnabled() ? UNKNOWN_FILE_SIZE : remoteFileSize;
+    }
+
+    private ApplicationStatus downloadAndVerify(final URI downloadFileSource,
+                                                final URI downloadFileDestination,
+                                                final long fileSize,
+                                                final String expectedChecksum,
+                                                final ProgressListener progressListener) {
+        final boolean streaming = isStreaming(downloadFileDestination);
         try {
             LOGGER.info("File download process started for {}", downloadFileSource.getPath());
-            doDownloadFile(downloadFileSource, downloadFileDestination, fileSize, progressListener);
+            final Path destinationFile = Path.of(downloadFileDestination.getPath());
+            if (!streaming) {
+                checksumVerifier.deleteSidecars(destinationFile);
+            }
+            final ExpectedChecksum checksum;
+            try {
+                checksum = checksumVerifier.resolve(downloadFileSource, expectedChecksum);
+            } catch (Exception e) {
+                // Nothing is written yet, an existing destination file is left untouched
+                LOGGER.error("Unable to resolve the expected checksum of %s. %s".formatted(downloadFileSource.getPath(), e.getMessage()), e);
+                return APPLICATION_FAILED;
+            }
+            if (checksum != null && !computesChecksums()) {
+                // Checked before downloading, a one-shot private key must not be spent on an unverifiable download
+                LOGGER.error("Checksums aren't computed by this transfer, unable to verify {} against {}",
+                        downloadFileSource.getPath(), checksum);
+                return APPLICATION_FAILED;
+            }
+            final Map<ChecksumAlgorithm, String> checksums = doDownloadFile(downloadFileSource, downloadFileDestination,
+                    fileSize, checksum == null ? null : checksum.algorithm(), progressListener);
+            if (checksum != null) {
+                final String actualChecksum = checksums.get(checksum.algorithm());
+                if (actualChecksum == null) {
+                    // The download itself succeeded, the file is kept for the caller to verify
+                    LOGGER.error("{} checksum isn't computed by this transfer, unable to verify {}, file kept at {}",
+                            checksum.algorithm().getName(), downloadFileSource.getPath(), downloadFileDestination.getPath());
+                    return APPLICATION_FAILED;
+                }
+                if (!checksum.value().equals(actualChecksum)) {
+                    LOGGER.error("Checksum mismatch for {}: expected {}, found {}:{}",
+                            downloadFileSource.getPath(), checksum, checksum.algorithm().getName(), actualChecksum);
+                    // Streamed bytes are already with the consumer, only the exit status reports the mismatch
+                    if (!streaming) {
+                        deleteOutputFile(downloadFileDestination);
+                    }
+                    return CHECKSUM_MISMATCH;
+                }
+                LOGGER.info("Checksum of {} verified: {}", downloadFileSource.getPath(), checksum);
+            }
+            if (!streaming) {
+                checksumVerifier.writeSidecars(destinationFile, checksums);
+            }
             LOGGER.info("File download process completed for {}", downloadFileSource.getPath());
         } catch (Exception e) {
             LOGGER.error("Error while downloading file %s. %s".formatted(downloadFileSource.getPath(), e.getMessage()), e);
-            deleteOutputFile(downloadFileDestination);
+            if (streaming) {
+                LOGGER.info("Download to {} was interrupted, the consumer received a truncated stream", downloadFileDestination);
+            } else if (resume && !decompressor.isEnabled()) {
+                LOGGER.info("Partially downloaded file {} is kept, re-run the same command to resume", downloadFileDestination.getPath());
+            } else {
+                deleteOutputFile(downloadFileDestination);
+            }
             return APPLICATION_FAILED;
         }
         return SUCCESS;
@@ -86,33 +277,299 @@ public class DefaultGlobusFileTransfer implements IGlobusFileTransfer {
         }
     }
 
-    protected void doDownloadFile(final URI downloadFileSourceURI,
-                                  final URI destinationFileURI,
-                                  final long fileSize,
-                                  final ProgressListener progressListener) throws Exception {
-        final MessageDigest messageDigest = getMD5MessageDigest();
+    /**
+     * @param requiredAlgorithm checksum algorithm to compute in addition to the configured ones, may be null.
+     * @return checksums of the downloaded file.
+     */
+    protected Map<ChecksumAlgorithm, String> doDownloadFile(final URI downloadFileSourceURI,
+                                                            final URI destinationFileURI,
+                                                            final long fileSize,
+                                                            final ChecksumAlgorithm requiredAlgorithm,
+                                                            final ProgressListener progressListener) throws Exception {
+        if (isStreaming(destinationFileURI) || decompressor.isEnabled()) {
+            final Map<ChecksumAlgorithm, String> checksums;
+            try (final TransferTuner.Session tuningSession = transferTuner.start(downloadFileSourceURI.getPath())) {
+                checksums = stream(downloadFileSourceURI, destinationFileURI, fileSize, requiredAlgorithm, progressListener, tuningSession);
+            }
+            LOGGER.info("File {} has been successfully written to {}, {}",
+                    downloadFileSourceURI.getPath(), destinationFileURI.getPath(), formatChecksums(checksums));
+            return checksums;
+        }
         final File destinationFile = get(destinationFileURI.getPath()).toFile();
-        try (final OutputStream digestOutputStream = new DigestOutputStream(
-                new ProgressListenerOutputStream(
-                        new FileOutputStream(destinationFile), progressListener),
-                messageDigest);
-             final InputStream globusDownloadInputStream = getGlobusDownloadInputStream(downloadFileSourceURI, fileSize)) {
-            copy(globusDownloadInputStream, digestOutputStream, bufferSize);
+        final Map<ChecksumAlgorithm, String> checksums;
+        try (final TransferTuner.Session tuningSession = transferTuner.start(downloadFileSourceURI.getPath())) {
+            checksums = download(downloadFileSourceURI, destinationFile, fileSize, requiredAlgorithm, progressListener, tuningSession);
+        }
+        LOGGER.info("File {} has been successfully downloaded at {}, {}",
+                downloadFileSourceURI.getPath(), destinationFile.getAbsolutePath(), formatChecksums(checksums));
+        return checksums;
+    }
+
+    /**
+     * Writes the file as a single stream in file order, used for streaming destinations and when
+     * decompressing: ranges, the resume journal and the direct buffer sink all need the written
+     * bytes to line up with the Globus file and are not used. Progress is reported in bytes read
+     * from Globus, matching the file size.
+     */
+    private Map<ChecksumAlgorithm, String> stream(final URI downloadFileSourceURI,
+                                                  final URI destinationFileURI,
+                                                  final long fileSize,
+                                                  final ChecksumAlgorithm requiredAlgorithm,
+                                                  final ProgressListener progressListener,
+                                                  final TransferTuner.Session tuningSession) throws Exception {
+        if (parallelism > 1 || resume) {
+            LOGGER.info("{} is written as a single stream, parallel ranges and resume are not applied", destinationFileURI.getPath());
+        }
+        try (final ChecksumCalculator checksumCalculator = createChecksumCalculator(requiredAlgorithm)) {
+            try (final OutputStream checksumOutputStream = new ChecksumOutputStream(
+                    transferMetrics.meterDisk(OutputDestination.open(destinationFileURI)),
+                    checksumCalculator);
+                 final InputStream globusDownloadInputStream = decompressor.decompress(
+                         new SourceProgressInputStream(getGlobusDownloadInputStream(downloadFileSourceURI, fileSize), progressListener),
+                         downloadFileSourceURI.getPath())) {
+                copy(globusDownloadInputStream, checksumOutputStream, tuningSession);
+            }
+            return checksumCalculator.finish();
+        }
+    }
+
+    private Map<ChecksumAlgorithm, String> download(final URI downloadFileSourceURI,
+                                                    final File destinationFile,
+                                                    final long fileSize,
+                                                    final ChecksumAlgorithm requiredAlgorithm,
+                                                    final ProgressListener progressListener,
+                                                    final TransferTuner.Session tuningSession) throws Exception {
+        final Map<ChecksumAlgorithm, String> checksums;
+        if (parallelism == 1 && resume) {
+            final DownloadJournal journal = openJournal(downloadFileSourceURI, destinationFile.toPath(), fileSize, 0);
+            checksums = doResumableDownload(downloadFileSourceURI, destinationFile, fileSize, requiredAlgorithm, progressListener, journal, tuningSession);
+            journal.delete();
+        } else {
+            try (final ChecksumCalculator checksumCalculator = createChecksumCalculator(requiredAlgorithm)) {
+                if (parallelism > 1) {
+                    final DownloadJournal journal = openJournal(downloadFileSourceURI, destinationFile.toPath(), fileSize, chunkSize);
+                    parallelRangeDownloader.download(downloadFileSourceURI, destinationFile.toPath(), fileSize, checksumCalculator, progressListener, journal, tuningSession);
+                    journal.delete();
+                } else if (fileChannelSink != null) {
+                    try (final FileChannel fileChannel = FileChannel.open(destinationFile.toPath(), CREATE, WRITE, TRUNCATE_EXISTING);
+                         final InputStream globusDownloadInputStream = getGlobusDownloadInputStream(downloadFileSourceURI, fileSize)) {
+                        fileChannelSink.transfer(globusDownloadInputStream, fileChannel, checksumCalculator, progressListener, tuningSession);
+                    }
+                } else {
+                    try (final OutputStream checksumOutputStream = new ChecksumOutputStream(
+                            new ProgressListenerOutputStream(
+                                    transferMetrics.meterDisk(new FileOutputStream(destinationFile)), progressListener),
+                            checksumCalculator);
+                         final InputStream globusDownloadInputStream = getGlobusDownloadInputStream(downloadFileSourceURI, fileSize)) {
+                        copy(globusDownloadInputStream, checksumOutputStream, tuningSession);
+                    }
+                }
+                checksums = checksumCalculator.finish();
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Copies with the buffer size of the tuning session, recording every read for the tuner and its metrics.
+     */
+    protected void copy(final InputStream inputStream,
+                        final OutputStream outputStream,
+                        final TransferTuner.Session tuningSession) throws IOException {
+        final byte[] buffer = new byte[tuningSession.getMaxBufferSize()];
+        int read;
+        while ((read = inputStream.read(buffer, 0, tuningSession.getBufferSize())) != -1) {
+            tuningSession.record(read);
+            outputStream.write(buffer, 0, read);
+        }
+    }
+
+    protected ChecksumCalculator createChecksumCalculator(final ChecksumAlgorithm requiredAlgorithm) {
+        return checksumCalculatorFactory.create(requiredAlgorithm);
+    }
+
+    protected static String formatChecksums(final Map<ChecksumAlgorithm, String> checksums) {
+        return checksums.entrySet()
+                .stream()
+                .map(checksum -> "%s: %s".formatted(checksum.getKey().name(), checksum.getValue()))
+                .collect(joining(", "));
+    }
+
+    private DownloadJournal openJournal(final URI downloadFileSourceURI,
+                                        final Path destinationFile,
+                                        final long fileSize,
+                                        final long journalChunkSize) throws IOException {
+        if (!resume) {
+            return DownloadJournal.disabled();
+        }
+        final DownloadJournal journal = DownloadJournal.open(destinationFile, downloadFileSourceURI, fileSize, journalChunkSize);
+        if (journal.isResumed()) {
+            final long remoteFileSize = fetchRemoteFileSize(downloadFileSourceURI);
+            if (remoteFileSize < 0) {
+                // A valid partial download isn't discarded because the collection left out Content-Length
+                LOGGER.warn("Size of {} isn't returned by the collection, resuming without checking it changed",
+                        downloadFileSourceURI.getPath());
+            } else if (remoteFileSize != fileSize) {
+                journal.delete();
+                deleteIfExists(destinationFile);
+                throw new IOException("Remote file size %s doesn't match expected file size %s, partial download discarded"
+                        .formatted(remoteFileSize, fileSize));
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * The journal records the MD5 of the committed prefix, so MD5 is always computed inline
+     * alongside the configured checksums in resume mode.
+     */
+    private Map<ChecksumAlgorithm, String> doResumableDownload(final URI downloadFileSourceURI,
+                                                               final File destinationFile,
+                                                               final long fileSize,
+                                                               final ChecksumAlgorithm requiredAlgorithm,
+                                                               final ProgressListener progressListener,
+                                                               final DownloadJournal journal,
+                                                               final TransferTuner.Session tuningSession) throws Exception {
+        final MessageDigest messageDigest = getMD5MessageDigest();
+        ChecksumCalculator checksumCalculator = createChecksumCalculator(requiredAlgorithm);
+        try {
+            final long startOffset = restoreCommittedPrefix(destinationFile.toPath(), messageDigest, checksumCalculator, journal);
+            if (startOffset > 0) {
+                LOGGER.info("Resuming download of {} from offset {}", downloadFileSourceURI.getPath(), startOffset);
+            } else if (journal.isResumed()) {
+                checksumCalculator.close();
+                checksumCalculator = createChecksumCalculator(requiredAlgorithm);
+            }
+            if (startOffset < fileSize) {
+                copyFromOffset(downloadFileSourceURI, destinationFile, startOffset, fileSize, messageDigest,
+                        checksumCalculator, progressListener, journal, tuningSession);
+            }
+            return checksumCalculator.finish();
+        } finally {
+            checksumCalculator.close();
+        }
+    }
+
+    private void copyFromOffset(final URI downloadFileSourceURI,
+                                final File destinationFile,
+                                final long startOffset,
+                                final long fileSize,
+                                final MessageDigest messageDigest,
+                                final ChecksumCalculator checksumCalculator,
+                                final ProgressListener progressListener,
+                                final DownloadJournal journal,
+                                final TransferTuner.Session tuningSession) throws Exception {
+        try (final FileOutputStream fileOutputStream = new FileOutputStream(destinationFile, startOffset > 0);
+             final OutputStream digestOutputStream = new DigestOutputStream(
+                     new ChecksumOutputStream(
+                             new ProgressListenerOutputStream(transferMetrics.meterDisk(fileOutputStream), progressListener),
+                             checksumCalculator),
+                     messageDigest);
+             final InputStream globusDownloadInputStream = getGlobusDownloadInputStream(downloadFileSourceURI, startOffset, fileSize)) {
+            final byte[] buffer = new byte[tuningSession.getMaxBufferSize()];
+            long offset = startOffset;
+            long uncommittedBytes = 0;
+            int read;
+            while ((read = globusDownloadInputStream.read(buffer, 0, tuningSession.getBufferSize())) != -1) {
+                tuningSession.record(read);
+                digestOutputStream.write(buffer, 0, read);
+                offset += read;
+                uncommittedBytes += read;
+                if (uncommittedBytes >= checkpointInterval) {
+                    digestOutputStream.flush();
+                    final long forceStartNanos = System.nanoTime();
+                    fileOutputStream.getChannel().force(false);
+                    transferMetrics.recordStage(TransferStage.DISK, System.nanoTime() - forceStartNanos);
+                    journal.commitOffset(offset, normalize((MessageDigest) messageDigest.clone()));
+                    uncommittedBytes = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Truncates the destination file to the committed offset and rebuilds the digest and the
+     * checksums from the local prefix. Falls back to a full download when the prefix no longer
+     * matches the checksum recorded in the journal, the checksums are then discarded.
+     *
+     * @return offset to continue the download from.
+     */
+    private long restoreCommittedPrefix(final Path destinationFile,
+                                        final MessageDigest messageDigest,
+                                        final ChecksumCalculator checksumCalculator,
+                                        final DownloadJournal journal) throws Exception {
+        final long committedOffset = journal.getCommittedOffset();
+        if (!journal.isResumed() || committedOffset == 0) {
+            return 0;
         }
-        final String downloadedFileMD5 = normalize(messageDigest);
-        LOGGER.info("File {} has been successfully downloaded at {}, MD5: {}",
-                downloadFileSourceURI.getPath(), destinationFile.getAbsolutePath(), downloadedFileMD5);
+
+        try (final FileChannel fileChannel = FileChannel.open(destinationFile, READ, WRITE)) {
+            if (fileChannel.size() >= committedOffset) {
+                fileChannel.truncate(committedOffset);
+                final ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
+                long position = 0;
+                while (position < committedOffset) {
+                    byteBuffer.clear().limit((int) min(byteBuffer.capacity(), committedOffset - position));
+                    final int read = fileChannel.read(byteBuffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    byteBuffer.flip();
+                    messageDigest.update(byteBuffer.duplicate());
+                    checksumCalculator.update(byteBuffer);
+                    position += read;
+                }
+                if (position == committedOffset
+                        && normalize((MessageDigest) messageDigest.clone()).equals(journal.getCommittedMD5())) {
+                    return committedOffset;
+                }
+            }
+        }
+        LOGGER.warn("Partially downloaded file {} doesn't match its journal, restarting download", destinationFile);
+        messageDigest.reset();
+        journal.reset();
+        return 0;
+    }
+
+    protected long fetchRemoteFileSize(final URI downloadFileSourceURI) {
+        return fetchRemoteFile(downloadFileSourceURI).size();
+    }
+
+    protected RemoteFile fetchRemoteFile(final URI downloadFileSourceURI) {
+        return retryTemplate.execute(context -> webClient
+                .head()
+                .uri(downloadFileSourceURI.getPath())
+                .retrieve()
+                .toBodilessEntity()
+                .map(responseEntity -> new RemoteFile(
+                        responseEntity.getHeaders().getContentLength(),
+                        responseEntity.getHeaders().getLastModified() < 0 ?
+                                null : Instant.ofEpochMilli(responseEntity.getHeaders().getLastModified())))
+                .block());
     }
 
     protected InputStream getGlobusDownloadInputStream(final URI downloadFileSourceURI,
                                                        final long fileSize) throws IOException {
-        return new RetryInputStream(
-                webClient,
-                retryTemplate,
-                Path.of(downloadFileSourceURI.getPath()),
-                0,
-                fileSize - 1,
-                pipeSize
-        );
+        return getGlobusDownloadInputStream(downloadFileSourceURI, 0, fileSize);
+    }
+
+    protected InputStream getGlobusDownloadInputStream(final URI downloadFileSourceURI,
+                                                       final long startOffset,
+                                                       final long fileSize) throws IOException {
+        final long openStartNanos = System.nanoTime();
+        return new RateLimitedInputStream(
+                transferMetrics.meterNetwork(
+                        stallDetector.open(downloadFileSourceURI.getPath(), offset ->
+                                ConnectTracingInputStream.open(downloadFileSourceURI.getPath(), () -> new RetryInputStream(
+                                        webClient,
+                                        retryTemplate,
+                                        Path.of(downloadFileSourceURI.getPath()),
+                                        offset,
+                                        fileSize - 1,
+                                        transferTuner.getPipeSize())),
+                                startOffset,
+                                fileSize - 1),
+                        openStartNanos),
+                bandwidthLimiter);
     }
 }
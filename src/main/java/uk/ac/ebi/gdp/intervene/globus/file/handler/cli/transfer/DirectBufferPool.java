@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of direct {@link ByteBuffer}s reused across downloads. Direct buffers are costly to
+ * allocate and only released by the garbage collector, so up to {@code capacity} released
+ * buffers are kept for the next download. Acquiring never blocks, a new buffer is allocated
+ * when the pool is empty.
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    public DirectBufferPool(final int bufferSize,
+                            final int capacity) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size should be at least 1 byte, found %s".formatted(bufferSize));
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Pool capacity should be at least 1, found %s".formatted(capacity));
+        }
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @return cleared direct buffer of {@link #getBufferSize()} bytes.
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns the buffer to the pool, it is dropped if the pool is already full.
+     *
+     * @param buffer buffer obtained from {@link #acquire()}.
+     */
+    public void release(final ByteBuffer buffer) {
+        buffers.offer(buffer.clear());
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
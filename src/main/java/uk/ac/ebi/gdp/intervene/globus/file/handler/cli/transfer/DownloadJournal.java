@@ -0,0 +1,215 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Properties;
+
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newBufferedReader;
+import static java.nio.file.Files.newBufferedWriter;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Sidecar checkpoint journal kept next to a partially downloaded file. A single stream
+ * download commits the offset up to which the file is durable on disk together with the
+ * MD5 of that prefix, a parallel download commits the indices of the ranges that are
+ * durable on disk. The journal is only reused when it describes the same source, file
+ * size and range size.
+ */
+public class DownloadJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadJournal.class);
+    public static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final String SOURCE = "source";
+    private static final String FILE_SIZE = "file-size";
+    private static final String CHUNK_SIZE = "chunk-size";
+    private static final String COMMITTED_OFFSET = "committed-offset";
+    private static final String COMMITTED_MD5 = "committed-md5";
+    private static final String COMMITTED_CHUNKS = "committed-chunks";
+
+    private final Path journalPath;
+    private final String source;
+    private final long fileSize;
+    private final long chunkSize;
+    private final boolean resumed;
+    private final BitSet committedChunks;
+    private long committedOffset;
+    private String committedMD5;
+
+    private DownloadJournal(final Path journalPath,
+                            final String source,
+                            final long fileSize,
+                            final long chunkSize,
+                            final boolean resumed) {
+        this.journalPath = journalPath;
+        this.source = source;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.resumed = resumed;
+        this.committedChunks = new BitSet();
+        this.committedOffset = 0;
+        this.committedMD5 = null;
+    }
+
+    /**
+     * @return journal which keeps no state on disk, used when resume mode is off.
+     */
+    public static DownloadJournal disabled() {
+        return new DownloadJournal(null, null, 0, 0, false);
+    }
+
+    /**
+     * Loads the journal of a previous run for the destination file if it matches the
+     * current transfer, otherwise starts a new one.
+     *
+     * @param destinationFile local file being downloaded.
+     * @param source          Globus file path.
+     * @param fileSize        expected file size in bytes.
+     * @param chunkSize       range size for parallel downloads, 0 for a single stream.
+     * @return journal instance.
+     * @throws IOException in case existing journal cannot be read.
+     */
+    public static DownloadJournal open(final Path destinationFile,
+                                       final URI source,
+                                       final long fileSize,
+                                       final long chunkSize) throws IOException {
+        final Path journalPath = destinationFile.resolveSibling(destinationFile.getFileName() + JOURNAL_FILE_SUFFIX);
+        if (!exists(journalPath) || !exists(destinationFile)) {
+            return new DownloadJournal(journalPath, source.getPath(), fileSize, chunkSize, false);
+        }
+
+        final Properties properties = new Properties();
+        try (final Reader reader = newBufferedReader(journalPath)) {
+            properties.load(reader);
+        }
+        if (!source.getPath().equals(properties.getProperty(SOURCE))
+                || fileSize != Long.parseLong(properties.getProperty(FILE_SIZE, "-1"))
+                || chunkSize != Long.parseLong(properties.getProperty(CHUNK_SIZE, "-1"))) {
+            LOGGER.warn("Ignoring journal {} as it was written for a different transfer", journalPath);
+            return new DownloadJournal(journalPath, source.getPath(), fileSize, chunkSize, false);
+        }
+
+        final DownloadJournal journal = new DownloadJournal(journalPath, source.getPath(), fileSize, chunkSize, true);
+        journal.committedOffset = Long.parseLong(properties.getProperty(COMMITTED_OFFSET, "0"));
+        journal.committedMD5 = properties.getProperty(COMMITTED_MD5);
+        final String committedChunks = properties.getProperty(COMMITTED_CHUNKS, "");
+        if (!committedChunks.isBlank()) {
+            Arrays.stream(committedChunks.split(","))
+                    .mapToInt(Integer::parseInt)
+                    .forEach(journal.committedChunks::set);
+        }
+        LOGGER.info("Resuming from journal {}, committed offset: {}, committed ranges: {}",
+                journalPath, journal.committedOffset, journal.committedChunks.cardinality());
+        return journal;
+    }
+
+    public boolean isEnabled() {
+        return journalPath != null;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public synchronized String getCommittedMD5() {
+        return committedMD5;
+    }
+
+    public synchronized boolean isChunkCommitted(final int chunkIndex) {
+        return committedChunks.get(chunkIndex);
+    }
+
+    /**
+     * Records that the file is durable on disk up to the given offset.
+     *
+     * @param offset       number of bytes durable on disk.
+     * @param md5OfPrefix  MD5 of the first {@code offset} bytes.
+     * @throws IOException in case journal cannot be written.
+     */
+    public synchronized void commitOffset(final long offset,
+                                          final String md5OfPrefix) throws IOException {
+        committedOffset = offset;
+        committedMD5 = md5OfPrefix;
+        save();
+    }
+
+    /**
+     * Records that the range with the given index is durable on disk.
+     *
+     * @param chunkIndex range index.
+     * @throws IOException in case journal cannot be written.
+     */
+    public synchronized void commitChunk(final int chunkIndex) throws IOException {
+        committedChunks.set(chunkIndex);
+        save();
+    }
+
+    /**
+     * Forgets all committed progress, the next checkpoint starts the journal afresh.
+     */
+    public synchronized void reset() {
+        committedOffset = 0;
+        committedMD5 = null;
+        committedChunks.clear();
+    }
+
+    public void delete() throws IOException {
+        if (isEnabled()) {
+            deleteIfExists(journalPath);
+        }
+    }
+
+    private void save() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        final Properties properties = new Properties();
+        properties.setProperty(SOURCE, source);
+        properties.setProperty(FILE_SIZE, String.valueOf(fileSize));
+        properties.setProperty(CHUNK_SIZE, String.valueOf(chunkSize));
+        properties.setProperty(COMMITTED_OFFSET, String.valueOf(committedOffset));
+        if (committedMD5 != null) {
+            properties.setProperty(COMMITTED_MD5, committedMD5);
+        }
+        properties.setProperty(COMMITTED_CHUNKS, committedChunks.stream()
+                .mapToObj(String::valueOf)
+                .collect(joining(",")));
+
+        final Path tempJournalPath = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try (final Writer writer = newBufferedWriter(tempJournalPath)) {
+            properties.store(writer, "Globus file handler download journal");
+        }
+        move(tempJournalPath, journalPath, ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculator;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferStage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.lang.Math.min;
+
+/**
+ * Copies a stream into a {@link FileChannel} through a pooled direct buffer. Reads are
+ * handed to the checksums as they arrive and gathered in the direct buffer, which is written with a
+ * single system call once full, avoiding the per-write temporary buffer of
+ * {@link java.io.FileOutputStream}. Nothing is allocated per chunk.
+ */
+public class FileChannelSink {
+    private final DirectBufferPool bufferPool;
+    private final int readSize;
+    private final TransferMetrics transferMetrics;
+
+    /**
+     * @param bufferPool      pool of direct buffers gathering data before it's written.
+     * @param readSize        upper bound of the number of bytes read from the input stream at once.
+     * @param transferMetrics meters recording the time spent writing.
+     */
+    public FileChannelSink(final DirectBufferPool bufferPool,
+                           final int readSize,
+                           final TransferMetrics transferMetrics) {
+        this.bufferPool = bufferPool;
+        this.readSize = min(readSize, bufferPool.getBufferSize());
+        this.transferMetrics = transferMetrics;
+    }
+
+    /**
+     * @param inputStream      stream to copy.
+     * @param fileChannel      destination channel, written from its current position.
+     * @param checksumCalculator checksums updated with every byte copied.
+     * @param progressListener listener notified with the total number of bytes written.
+     * @param tuningSession    session providing the number of bytes read at once.
+     * @return number of bytes copied.
+     * @throws IOException in case of read or write failure.
+     */
+    public long transfer(final InputStream inputStream,
+                         final FileChannel fileChannel,
+                         final ChecksumCalculator checksumCalculator,
+                         final ProgressListener progressListener,
+                         final TransferTuner.Session tuningSession) throws IOException {
+        final ByteBuffer buffer = bufferPool.acquire();
+        final byte[] chunk = new byte[readSize];
+        long bytesWritten = 0;
+        try {
+            int read;
+            while ((read = inputStream.read(chunk, 0, min(chunk.length, tuningSession.getBufferSize()))) != -1) {
+                tuningSession.record(read);
+                checksumCalculator.update(chunk, 0, read);
+                if (buffer.remaining() < read) {
+                    bytesWritten += drain(buffer, fileChannel);
+                    progressListener.progress(bytesWritten);
+                }
+                buffer.put(chunk, 0, read);
+            }
+            bytesWritten += drain(buffer, fileChannel);
+            progressListener.progress(bytesWritten);
+            return bytesWritten;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private int drain(final ByteBuffer buffer,
+                      final FileChannel fileChannel) throws IOException {
+        buffer.flip();
+        final int bytes = buffer.remaining();
+        final long startNanos = System.nanoTime();
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+        transferMetrics.recordStage(TransferStage.DISK, System.nanoTime() - startNanos);
+        buffer.clear();
+        return bytes;
+    }
+}
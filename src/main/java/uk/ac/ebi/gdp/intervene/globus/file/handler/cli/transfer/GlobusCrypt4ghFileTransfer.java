@@ -0,0 +1,138 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculator;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumOutputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghInputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghPrivateKey;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.crypt4gh.Crypt4ghWarmUp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * Downloads a crypt4gh encrypted file and decrypts it in-stream inside the JVM, the
+ * plaintext is written straight to the destination file. With more than one decryption
+ * thread, segments are decrypted concurrently within a bounded reorder window.
+ */
+public class GlobusCrypt4ghFileTransfer extends DefaultGlobusFileTransfer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GlobusCrypt4ghFileTransfer.class);
+    private final Crypt4gh crypt4gh;
+    private final char[] passphrase;
+    private final int decryptionThreads;
+    private final int reorderWindow;
+
+    public GlobusCrypt4ghFileTransfer(final WebClient webClient,
+                                      final RetryTemplate retryTemplate,
+                                      final int pipeSize,
+                                      final Crypt4gh crypt4gh,
+                                      final char[] passphrase,
+                                      final int bufferSize,
+                                      final int decryptionThreads,
+                                      final int reorderWindow,
+                                      final TransferOptions transferOptions) {
+        super(webClient, retryTemplate, pipeSize, bufferSize, transferOptions.singleStream());
+        if (decryptionThreads < 1) {
+            throw new IllegalArgumentException("Decryption threads should be at least 1, found %s".formatted(decryptionThreads));
+        }
+        this.crypt4gh = crypt4gh;
+        this.passphrase = passphrase;
+        this.decryptionThreads = decryptionThreads;
+        this.reorderWindow = reorderWindow;
+    }
+
+    /**
+     * Decrypted size isn't derived from the encrypted one, sync relies on the other criteria.
+     */
+    @Override
+    protected long destinationSize(final long remoteFileSize) {
+        return UNKNOWN_FILE_SIZE;
+    }
+
+    /**
+     * Decrypts a small file encrypted in memory for the private key, which is then removed as after a download.
+     */
+    @Override
+    public void warmUp() throws IOException {
+        final ExecutorService decryptionExecutorService = decryptionThreads > 1 ?
+                newFixedThreadPool(decryptionThreads) : null;
+        try {
+            Crypt4ghWarmUp.run(Crypt4ghPrivateKey.load(crypt4gh.getPrivateKeyAbsolutePath(), passphrase),
+                    decryptionExecutorService, reorderWindow, transferMetrics);
+            LOGGER.info("Crypt4gh decryption warmed up");
+        } finally {
+            if (decryptionExecutorService != null) {
+                decryptionExecutorService.shutdownNow();
+            }
+            LOGGER.info("Delete secret key if present: {}", crypt4gh.deleteSecKey());
+        }
+    }
+
+    @Override
+    public Map<ChecksumAlgorithm, String> doDownloadFile(final URI downloadFileSource,
+                                                         final URI destinationFile,
+                                                         final long fileSize,
+                                                         final ChecksumAlgorithm requiredAlgorithm,
+                                                         final ProgressListener progressListener) throws Exception {
+        final ExecutorService decryptionExecutorService = decryptionThreads > 1 ?
+                newFixedThreadPool(decryptionThreads) : null;
+        try {
+            final Crypt4ghPrivateKey privateKey = Crypt4ghPrivateKey.load(crypt4gh.getPrivateKeyAbsolutePath(), passphrase);
+
+            LOGGER.info("Establishing connection for Globus InputStream");
+            final Map<ChecksumAlgorithm, String> checksums;
+            try (final ChecksumCalculator checksumCalculator = createChecksumCalculator(requiredAlgorithm);
+                 final TransferTuner.Session tuningSession = transferTuner.start(downloadFileSource.getPath())) {
+                try (final InputStream crypt4ghInputStream = decompressor.decompress(new Crypt4ghInputStream(
+                        new SourceProgressInputStream(
+                                getGlobusDownloadInputStream(downloadFileSource, fileSize), progressListener),
+                        privateKey,
+                        decryptionExecutorService,
+                        reorderWindow,
+                        transferMetrics), downloadFileSource.getPath());
+                     final OutputStream checksumOutputStream = new ChecksumOutputStream(
+                             transferMetrics.meterDisk(OutputDestination.open(destinationFile)),
+                             checksumCalculator)) {
+                    copy(crypt4ghInputStream, checksumOutputStream, tuningSession);
+                }
+                checksums = checksumCalculator.finish();
+            }
+            LOGGER.info("File {} has been successfully downloaded at {}, decrypted file {}",
+                    downloadFileSource.getPath(), destinationFile.getPath(), formatChecksums(checksums));
+            return checksums;
+        } finally {
+            if (decryptionExecutorService != null) {
+                decryptionExecutorService.shutdownNow();
+            }
+            LOGGER.info("Delete secret key if present: {}", crypt4gh.deleteSecKey());
+        }
+    }
+}
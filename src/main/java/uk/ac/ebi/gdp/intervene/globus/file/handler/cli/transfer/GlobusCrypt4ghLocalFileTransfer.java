@@ -23,14 +23,18 @@ import org.springframework.retry.support.RetryTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
 import uk.ac.ebi.gdp.file.handler.core.stream.ProgressListenerOutputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumAlgorithm;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhase;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.TransferPhaseEvent;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
-import static org.apache.commons.io.IOUtils.copy;
+import static java.lang.ProcessBuilder.Redirect.INHERIT;
 import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.exception.SystemException.systemException;
 
 public class GlobusCrypt4ghLocalFileTransfer extends DefaultGlobusFileTransfer {
@@ -43,37 +47,64 @@ public class GlobusCrypt4ghLocalFileTransfer extends DefaultGlobusFileTransfer {
                                            final int pipeSize,
                                            final Crypt4gh crypt4gh,
                                            final List<String> shellInterpreterCmd,
-                                           final int bufferSize) {
-        super(webClient, retryTemplate, pipeSize, bufferSize);
+                                           final int bufferSize,
+                                           final TransferOptions transferOptions) {
+        super(webClient, retryTemplate, pipeSize, bufferSize, transferOptions.singleStream());
         this.crypt4gh = crypt4gh;
         this.shellInterpreterCmd = shellInterpreterCmd;
     }
 
+    /**
+     * Decrypted size isn't derived from the encrypted one, sync relies on the other criteria.
+     */
     @Override
-    public void doDownloadFile(final URI downloadFileSource,
-                               final URI destinationFile,
-                               final long fileSize,
-                               final ProgressListener progressListener) throws Exception {
+    protected long destinationSize(final long remoteFileSize) {
+        return UNKNOWN_FILE_SIZE;
+    }
+
+    /**
+     * Decrypted bytes are written by the crypt4gh process and never pass through the JVM.
+     */
+    @Override
+    protected boolean computesChecksums() {
+        return false;
+    }
+
+    @Override
+    public Map<ChecksumAlgorithm, String> doDownloadFile(final URI downloadFileSource,
+                                                         final URI destinationFile,
+                                                         final long fileSize,
+                                                         final ChecksumAlgorithm requiredAlgorithm,
+                                                         final ProgressListener progressListener) throws Exception {
         LOGGER.info("Establishing connection for Globus InputStream");
         try (final InputStream globusDownloadInputStream = getGlobusDownloadInputStream(downloadFileSource, fileSize)) {
             final ProcessBuilder processBuilder = processBuilder(crypt4gh.crypt4ghDecryptBashCmd(destinationFile));
+            if (OutputDestination.isStdout(destinationFile)) {
+                processBuilder.redirectOutput(INHERIT);
+            }
+            OutputDestination.prepare(destinationFile);
 
             LOGGER.info("Bash process is about to start");
             final Process process = processBuilder.start();
             LOGGER.info("Bash process is running");
 
             try (final OutputStream progressListenerOutputStream = new ProgressListenerOutputStream(process.getOutputStream(),
-                    progressListener)) {
+                    progressListener);
+                 final TransferTuner.Session tuningSession = transferTuner.start(downloadFileSource.getPath())) {
                 LOGGER.info("Copying Globus InputStream to stdin");
-                copy(globusDownloadInputStream, progressListenerOutputStream, bufferSize);
+                copy(globusDownloadInputStream, progressListenerOutputStream, tuningSession);
             }
 
             // Wait for the script to finish
+            final TransferPhaseEvent processWaitEvent = TransferPhaseEvent.begin(TransferPhase.DECRYPT_PROCESS_WAIT, destinationFile.getPath());
             final int exitCode = process.waitFor();
+            processWaitEvent.commit();
 
             if (exitCode == 0) {
                 LOGGER.info("File {} has been successfully downloaded at {}",
                         downloadFileSource.getPath(), destinationFile.getPath());
+                // Decrypted bytes never pass through the JVM, no checksum is available
+                return Map.of();
             } else {
                 LOGGER.error("Process finished with exit-code: {}", exitCode);
                 throw systemException("Unable to download file! Process builder terminated with error code %s".formatted(exitCode));
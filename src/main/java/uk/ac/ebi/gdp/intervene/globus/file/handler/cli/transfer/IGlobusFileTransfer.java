@@ -20,11 +20,37 @@ package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
 import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
 import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.constant.ApplicationStatus;
 
+import java.io.IOException;
 import java.net.URI;
 
 public interface IGlobusFileTransfer {
+    /**
+     * File size passed when it isn't known, the size is then looked up with a {@code HEAD} request.
+     */
+    long UNKNOWN_FILE_SIZE = -1;
+
+    default ApplicationStatus downloadFile(URI fileDownloadSource,
+                                           URI fileDownloadDestination,
+                                           long fileSize,
+                                           ProgressListener progressListener) {
+        return downloadFile(fileDownloadSource, fileDownloadDestination, fileSize, null, progressListener);
+    }
+
+    /**
+     * @param fileSize         size of the Globus file in bytes, {@link #UNKNOWN_FILE_SIZE} to look it up.
+     * @param expectedChecksum checksum of the downloaded file as {@code [algorithm:]hex}, null if unknown.
+     */
     ApplicationStatus downloadFile(URI fileDownloadSource,
                                    URI fileDownloadDestination,
                                    long fileSize,
+                                   String expectedChecksum,
                                    ProgressListener progressListener);
+
+    /**
+     * Loads the classes of a download without downloading anything, called by the class data sharing training run.
+     *
+     * @throws IOException in case the transfer cannot be prepared.
+     */
+    default void warmUp() throws IOException {
+    }
 }
@@ -0,0 +1,29 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import java.io.IOException;
+
+public interface IGlobusFileTransferFactory {
+    /**
+     * @param crypt4ghPrivateKeyPath private key used to decrypt the file, null to use the one supplied on the command line.
+     * @return file transfer for a single file.
+     * @throws IOException in case private key cannot be provisioned.
+     */
+    IGlobusFileTransfer create(String crypt4ghPrivateKeyPath) throws IOException;
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Path;
+
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.isRegularFile;
+
+/**
+ * Resolves where downloaded bytes are written. Besides local files, {@code -} streams to the
+ * standard output and {@code fifo:///path} to a named pipe, which is created when missing.
+ * Writes to a pipe block while its reader is behind, so the consumer applies back-pressure
+ * all the way to the Globus connection. A streaming destination can only be written once,
+ * front to back, it is never resumed, read back, deleted or given checksum sidecars.
+ */
+public final class OutputDestination {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutputDestination.class);
+    public static final String STDOUT = "-";
+    public static final String FIFO_SCHEME = "fifo";
+
+    private OutputDestination() {
+    }
+
+    public static boolean isStdout(final URI destination) {
+        return STDOUT.equals(destination.toString());
+    }
+
+    public static boolean isFifo(final URI destination) {
+        return FIFO_SCHEME.equals(destination.getScheme());
+    }
+
+    public static boolean isStreaming(final URI destination) {
+        return isStdout(destination) || isFifo(destination);
+    }
+
+    /**
+     * Creates the named pipe of a {@code fifo://} destination if it doesn't exist yet.
+     *
+     * @param destination destination URI.
+     * @throws IOException in case the path exists as a regular file or the pipe cannot be created.
+     */
+    public static void prepare(final URI destination) throws IOException {
+        if (!isFifo(destination)) {
+            return;
+        }
+        final Path fifo = Path.of(destination.getPath());
+        if (exists(fifo)) {
+            if (isRegularFile(fifo)) {
+                throw new IOException("%s is a regular file, not a named pipe".formatted(fifo));
+            }
+            return;
+        }
+        LOGGER.info("Creating named pipe {}", fifo);
+        try {
+            final Process process = new ProcessBuilder("mkfifo", "-m", "600", fifo.toString())
+                    .inheritIO()
+                    .start();
+            if (process.waitFor() != 0) {
+                throw new IOException("mkfifo failed to create %s".formatted(fifo));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating named pipe %s".formatted(fifo), e);
+        }
+    }
+
+    /**
+     * Opens the destination for writing. Opening a named pipe blocks until a reader opens it.
+     * Closing the returned stream of {@code -} closes the standard output, signalling the end
+     * of data to the consumer.
+     *
+     * @param destination destination URI.
+     * @return stream writing to the destination, the caller closes it.
+     * @throws IOException in case destination cannot be opened.
+     */
+    public static OutputStream open(final URI destination) throws IOException {
+        if (isStdout(destination)) {
+            return new FileOutputStream(FileDescriptor.out);
+        }
+        prepare(destination);
+        if (isFifo(destination)) {
+            LOGGER.info("Waiting for a reader on named pipe {}", destination.getPath());
+        }
+        return new FileOutputStream(Path.of(destination.getPath()).toFile());
+    }
+}
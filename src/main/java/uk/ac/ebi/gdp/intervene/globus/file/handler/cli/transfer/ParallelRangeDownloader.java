@@ -0,0 +1,265 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
+import uk.ac.ebi.gdp.file.handler.core.stream.RetryInputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculator;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.jfr.ConnectTracingInputStream;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferStage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * Downloads a file as a set of byte ranges fetched concurrently, each range is written
+ * at its own offset in the destination file. Ranges are handed to the digest strictly in
+ * file order once all preceding ranges are on disk, so the checksums match the one
+ * computed by a single stream download. Ranges already committed to the journal by a
+ * previous run are not downloaded again.
+ */
+public class ParallelRangeDownloader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelRangeDownloader.class);
+    private final WebClient webClient;
+    private final RetryTemplate retryTemplate;
+    private final int bufferSize;
+    private final int parallelism;
+    private final long chunkSize;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final StallDetector stallDetector;
+    private final TransferMetrics transferMetrics;
+
+    public ParallelRangeDownloader(final WebClient webClient,
+                                   final RetryTemplate retryTemplate,
+                                   final int bufferSize,
+                                   final int parallelism,
+                                   final long chunkSize,
+                                   final BandwidthLimiter bandwidthLimiter,
+                                   final StallDetector stallDetector,
+                                   final TransferMetrics transferMetrics) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be at least 1, found %s".formatted(parallelism));
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size should be at least 1 byte, found %s".formatted(chunkSize));
+        }
+        this.webClient = webClient;
+        this.retryTemplate = retryTemplate;
+        this.bufferSize = bufferSize;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.stallDetector = stallDetector;
+        this.transferMetrics = transferMetrics;
+    }
+
+    /**
+     * @param downloadFileSourceURI Globus file path.
+     * @param destinationFile       local file to write ranges into.
+     * @param fileSize              total size of the file in bytes.
+     * @param checksumCalculator    checksums updated with the file content in order.
+     * @param progressListener      listener notified with the total number of bytes written.
+     * @param journal               checkpoint journal recording ranges durable on disk.
+     * @param tuningSession         session providing the read and pipe sizes of each range.
+     * @throws Exception in case any of the ranges fails to download.
+     */
+    public void download(final URI downloadFileSourceURI,
+                         final Path destinationFile,
+                         final long fileSize,
+                         final ChecksumCalculator checksumCalculator,
+                         final ProgressListener progressListener,
+                         final DownloadJournal journal,
+                         final TransferTuner.Session tuningSession) throws Exception {
+        final int chunkCount = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        final int streams = max(1, min(parallelism, chunkCount));
+        LOGGER.info("Downloading {} in {} ranges using {} streams", downloadFileSourceURI.getPath(), chunkCount, streams);
+
+        final ExecutorService executorService = newFixedThreadPool(streams);
+        try (final FileChannel fileChannel = openDestination(destinationFile, journal.isResumed())) {
+            if (fileChannel.size() > fileSize) {
+                fileChannel.truncate(fileSize);
+            }
+            final OrderedDigest orderedDigest = new OrderedDigest(fileChannel, checksumCalculator, fileSize, chunkCount);
+            final AtomicLong bytesTransferred = new AtomicLong();
+            final List<Future<Void>> futures = new ArrayList<>(chunkCount);
+
+            for (int index = 0; index < chunkCount; index++) {
+                final long start = index * chunkSize;
+                final long end = min(start + chunkSize, fileSize) - 1;
+                final int chunkIndex = index;
+                if (journal.isChunkCommitted(chunkIndex)) {
+                    progressListener.progress(bytesTransferred.addAndGet(end - start + 1));
+                    orderedDigest.complete(chunkIndex);
+                    continue;
+                }
+                futures.add(executorService.submit(() -> {
+                    downloadRange(downloadFileSourceURI, fileChannel, start, end, bytesTransferred, progressListener, tuningSession);
+                    if (journal.isEnabled()) {
+                        final long forceStartNanos = System.nanoTime();
+                        fileChannel.force(false);
+                        transferMetrics.recordStage(TransferStage.DISK, System.nanoTime() - forceStartNanos);
+                        journal.commitChunk(chunkIndex);
+                    }
+                    orderedDigest.complete(chunkIndex);
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private FileChannel openDestination(final Path destinationFile,
+                                        final boolean resumed) throws IOException {
+        return resumed ?
+                FileChannel.open(destinationFile, CREATE, READ, WRITE) :
+                FileChannel.open(destinationFile, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+    }
+
+    private void downloadRange(final URI downloadFileSourceURI,
+                               final FileChannel fileChannel,
+                               final long start,
+                               final long end,
+                               final AtomicLong bytesTransferred,
+                               final ProgressListener progressListener,
+                               final TransferTuner.Session tuningSession) throws IOException {
+        final byte[] buffer = new byte[tuningSession.getMaxBufferSize()];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long position = start;
+        final long openStartNanos = System.nanoTime();
+        try (final InputStream rangeInputStream = new RateLimitedInputStream(
+                transferMetrics.meterNetwork(
+                        stallDetector.open(downloadFileSourceURI.getPath(), offset ->
+                                ConnectTracingInputStream.open(downloadFileSourceURI.getPath(), () -> new RetryInputStream(
+                                        webClient,
+                                        retryTemplate,
+                                        Path.of(downloadFileSourceURI.getPath()),
+                                        offset,
+                                        end,
+                                        tuningSession.getPipeSize())),
+                                start,
+                                end),
+                        openStartNanos),
+                bandwidthLimiter)) {
+            int read;
+            while ((read = rangeInputStream.read(buffer, 0, tuningSession.getBufferSize())) != -1) {
+                tuningSession.record(read);
+                byteBuffer.clear().limit(read);
+                final long writeStartNanos = System.nanoTime();
+                while (byteBuffer.hasRemaining()) {
+                    position += fileChannel.write(byteBuffer, position);
+                }
+                transferMetrics.recordStage(TransferStage.DISK, System.nanoTime() - writeStartNanos);
+                progressListener.progress(bytesTransferred.addAndGet(read));
+            }
+        }
+        if (position != end + 1) {
+            throw new IOException("Range %s-%s of %s ended prematurely at %s"
+                    .formatted(start, end, downloadFileSourceURI.getPath(), position));
+        }
+    }
+
+    private void awaitAll(final List<Future<Void>> futures) throws Exception {
+        try {
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Feeds completed ranges to the checksums in file order. Ranges finishing ahead of their
+     * predecessors are read back from the destination (normally still in the page cache)
+     * once the gap before them is closed.
+     */
+    private class OrderedDigest {
+        private final FileChannel fileChannel;
+        private final ChecksumCalculator checksumCalculator;
+        private final long fileSize;
+        private final int chunkCount;
+        private final BitSet completed;
+        private final ByteBuffer readBuffer;
+        private int nextChunk;
+
+        private OrderedDigest(final FileChannel fileChannel,
+                              final ChecksumCalculator checksumCalculator,
+                              final long fileSize,
+                              final int chunkCount) {
+            this.fileChannel = fileChannel;
+            this.checksumCalculator = checksumCalculator;
+            this.fileSize = fileSize;
+            this.chunkCount = chunkCount;
+            this.completed = new BitSet(chunkCount);
+            this.readBuffer = ByteBuffer.allocate(bufferSize);
+            this.nextChunk = 0;
+        }
+
+        private synchronized void complete(final int chunkIndex) throws IOException {
+            completed.set(chunkIndex);
+            while (nextChunk < chunkCount && completed.get(nextChunk)) {
+                digestChunk(nextChunk++);
+            }
+        }
+
+        private void digestChunk(final int chunkIndex) throws IOException {
+            long position = chunkIndex * chunkSize;
+            final long end = min(position + chunkSize, fileSize);
+            while (position < end) {
+                readBuffer.clear().limit((int) min(readBuffer.capacity(), end - position));
+                final int read = fileChannel.read(readBuffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file while computing checksum at %s".formatted(position));
+                }
+                readBuffer.flip();
+                checksumCalculator.update(readBuffer);
+                position += read;
+            }
+        }
+    }
+}
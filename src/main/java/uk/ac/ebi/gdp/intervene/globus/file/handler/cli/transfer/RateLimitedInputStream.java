@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Throttles reads of the wrapped stream through a shared {@link BandwidthLimiter}.
+ */
+public class RateLimitedInputStream extends FilterInputStream {
+    private final BandwidthLimiter bandwidthLimiter;
+
+    public RateLimitedInputStream(final InputStream in,
+                                  final BandwidthLimiter bandwidthLimiter) {
+        super(in);
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        if (read != -1) {
+            bandwidthLimiter.acquire(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] b,
+                    final int off,
+                    final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if (read > 0) {
+            bandwidthLimiter.acquire(read);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import java.time.Instant;
+
+/**
+ * Attributes of a Globus file returned by a {@code HEAD} request.
+ *
+ * @param size         size in bytes, -1 if the collection didn't return a {@code Content-Length}.
+ * @param lastModified last modification time, null if the collection didn't return a {@code Last-Modified}.
+ */
+public record RemoteFile(long size, Instant lastModified) {
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import uk.ac.ebi.gdp.file.handler.core.listener.ProgressListener;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports progress in bytes read from Globus, matching the file size given on the command
+ * line whatever the decryption or decompression applied before the bytes are written.
+ */
+class SourceProgressInputStream extends FilterInputStream {
+    private final ProgressListener progressListener;
+    private long bytesRead;
+
+    SourceProgressInputStream(final InputStream inputStream,
+                              final ProgressListener progressListener) {
+        super(inputStream);
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        if (read != -1) {
+            progressListener.progress(++bytesRead);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(final byte[] bytes,
+                    final int offset,
+                    final int length) throws IOException {
+        final int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            progressListener.progress(bytesRead += read);
+        }
+        return read;
+    }
+}
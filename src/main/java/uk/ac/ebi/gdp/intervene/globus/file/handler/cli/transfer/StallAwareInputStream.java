@@ -0,0 +1,312 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Math.min;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Range stream of a {@link StallDetector}. The watchdog interrupts a read blocked on a stalled
+ * connection, the stream then closes it and reopens the range from the first byte not read yet.
+ * The interrupt is only delivered while the reader is inside the read of the delegate and cleared
+ * before the read returns, so it never reaches the file channels of the caller.
+ */
+class StallAwareInputStream extends InputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StallAwareInputStream.class);
+    private static final int FIRST_READ_SIZE = 64 * 1024;
+    private final StallDetector stallDetector;
+    private final String target;
+    private final StallDetector.RangeOpener opener;
+    private final long end;
+    private final Object lock = new Object();
+    private InputStream delegate;
+    private long position;
+    private int reconnects;
+    private byte[] firstBytes;
+    private int firstBytesOffset;
+    private int firstBytesLength;
+    private boolean closed;
+
+    // Guarded by lock, shared with the watchdog
+    private Thread reader;
+    private long readStartNanos;
+    private long windowReadNanos;
+    private long windowBytes;
+    private boolean stalled;
+
+    StallAwareInputStream(final StallDetector stallDetector,
+                          final String target,
+                          final StallDetector.RangeOpener opener,
+                          final long start,
+                          final long end) throws IOException {
+        this.stallDetector = stallDetector;
+        this.target = target;
+        this.opener = opener;
+        this.position = start;
+        this.end = end;
+        if (position <= end) {
+            open();
+        }
+        stallDetector.register(this);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        final int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b,
+                    final int off,
+                    final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (position > end) {
+            return -1;
+        }
+        if (firstBytesLength > 0) {
+            final int read = min(len, firstBytesLength);
+            System.arraycopy(firstBytes, firstBytesOffset, b, off, read);
+            firstBytesOffset += read;
+            firstBytesLength -= read;
+            position += read;
+            return read;
+        }
+        while (true) {
+            if (delegate == null) {
+                open();
+                continue;
+            }
+            beginRead();
+            final int read;
+            try {
+                read = delegate.read(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                if (endRead(0)) {
+                    reconnect(e);
+                    continue;
+                }
+                throw e;
+            }
+            if (endRead(read) && read <= 0) {
+                reconnect(null);
+                continue;
+            }
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stallDetector.unregister(this);
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return target;
+    }
+
+    /**
+     * Called by the watchdog, marks the stream as stalled and interrupts its reader if the read
+     * throughput of the last window is below the floor.
+     */
+    void checkThroughput(final long now) {
+        synchronized (lock) {
+            final long readNanos = windowReadNanos + (reader != null ? now - readStartNanos : 0);
+            if (stalled || readNanos < stallDetector.getWindowNanos()) {
+                return;
+            }
+            final double bytesPerSecond = windowBytes * 1e9 / readNanos;
+            windowReadNanos = 0;
+            windowBytes = 0;
+            if (reader != null) {
+                readStartNanos = now;
+            }
+            if (bytesPerSecond >= stallDetector.getMinBytesPerSecond() || reader == null) {
+                return;
+            }
+            stalled = true;
+            LOGGER.warn("{} stalled at offset {}, {} bytes/s over the last {} ms",
+                    target, position, (long) bytesPerSecond, NANOSECONDS.toMillis(readNanos));
+            reader.interrupt();
+        }
+    }
+
+    private void beginRead() {
+        synchronized (lock) {
+            reader = Thread.currentThread();
+            readStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return true if the read was interrupted by the watchdog, the interrupt status is cleared.
+     */
+    private boolean endRead(final int read) {
+        synchronized (lock) {
+            windowReadNanos += System.nanoTime() - readStartNanos;
+            if (read > 0) {
+                windowBytes += read;
+            }
+            reader = null;
+            if (!stalled) {
+                return false;
+            }
+            stalled = false;
+            Thread.interrupted();
+            return true;
+        }
+    }
+
+    private void reconnect(final Exception cause) throws IOException {
+        closeQuietly(delegate);
+        delegate = null;
+        if (++reconnects > stallDetector.getMaxReconnects()) {
+            final IOException exception = new IOException("%s stalled %s times, giving up at offset %s"
+                    .formatted(target, reconnects, position));
+            if (cause != null) {
+                exception.addSuppressed(cause);
+            }
+            throw exception;
+        }
+        stallDetector.getTransferMetrics().recordReconnect("stall");
+        LOGGER.info("Reopening {} from offset {} ({}/{})", target, position, reconnects, stallDetector.getMaxReconnects());
+    }
+
+    private void open() throws IOException {
+        synchronized (lock) {
+            windowReadNanos = 0;
+            windowBytes = 0;
+        }
+        if (stallDetector.getHedgeDelayNanos() == 0) {
+            delegate = opener.open(position);
+            return;
+        }
+        final FirstRead firstRead = hedgedOpen(position);
+        delegate = firstRead.inputStream();
+        if (firstRead.length() > 0) {
+            firstBytes = firstRead.bytes();
+            firstBytesOffset = 0;
+            firstBytesLength = firstRead.length();
+        }
+    }
+
+    /**
+     * Opens the range and reads its first bytes, sending a duplicate request if nothing is read
+     * within the hedge delay. The first attempt to read bytes wins, the other is closed once done.
+     */
+    private FirstRead hedgedOpen(final long offset) throws IOException {
+        final CompletableFuture<FirstRead> winner = new CompletableFuture<>();
+        final AtomicInteger attempts = new AtomicInteger(1);
+        final AtomicInteger failures = new AtomicInteger();
+        race(winner, firstRead(offset), attempts, failures);
+        try {
+            try {
+                return winner.get(stallDetector.getHedgeDelayNanos(), NANOSECONDS);
+            } catch (TimeoutException e) {
+                LOGGER.info("No byte from {} at offset {} after {} ms, sending a hedged request",
+                        target, offset, NANOSECONDS.toMillis(stallDetector.getHedgeDelayNanos()));
+                stallDetector.getTransferMetrics().recordReconnect("hedge");
+                attempts.incrementAndGet();
+                race(winner, firstRead(offset), attempts, failures);
+            }
+            return winner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening %s".formatted(target));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw new IOException("Unable to open %s".formatted(target), e.getCause());
+        }
+    }
+
+    private CompletableFuture<FirstRead> firstRead(final long offset) {
+        return supplyAsync(() -> {
+            try {
+                final InputStream inputStream = opener.open(offset);
+                final byte[] bytes = new byte[(int) min(FIRST_READ_SIZE, end - offset + 1)];
+                final int read = inputStream.read(bytes, 0, bytes.length);
+                return new FirstRead(inputStream, bytes, read);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, stallDetector.getHedgeExecutor());
+    }
+
+    private static void race(final CompletableFuture<FirstRead> winner,
+                             final CompletableFuture<FirstRead> attempt,
+                             final AtomicInteger attempts,
+                             final AtomicInteger failures) {
+        attempt.whenComplete((firstRead, throwable) -> {
+            if (throwable == null) {
+                if (!winner.complete(firstRead)) {
+                    closeQuietly(firstRead.inputStream());
+                }
+            } else if (failures.incrementAndGet() >= attempts.get()) {
+                winner.completeExceptionally(throwable instanceof CompletionException ?
+                        throwable.getCause() : throwable);
+            }
+        });
+    }
+
+    private static void closeQuietly(final InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close stalled stream. {}", e.getMessage());
+        }
+    }
+
+    private record FirstRead(InputStream inputStream, byte[] bytes, int length) {
+    }
+}
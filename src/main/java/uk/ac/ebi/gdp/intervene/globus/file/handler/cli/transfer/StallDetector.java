@@ -0,0 +1,187 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Detects Globus streams whose throughput stays below a floor for a whole window and reopens them
+ * from the current offset, instead of waiting for the read timeout or a reset. Only the time spent
+ * blocked reading from Globus counts, so a stream held back by the bandwidth limiter or a slow disk
+ * is not taken for a stalled one. Optionally sends a duplicate request when the first bytes of a
+ * stream are late and keeps whichever answers first.
+ */
+public class StallDetector implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StallDetector.class);
+    private static final long MAX_CHECK_INTERVAL_MILLIS = 1000;
+    private final long minBytesPerSecond;
+    private final long windowNanos;
+    private final int maxReconnects;
+    private final long hedgeDelayNanos;
+    private final TransferMetrics transferMetrics;
+    private final Set<StallAwareInputStream> streams;
+    private final ScheduledExecutorService watchdog;
+    private final ExecutorService hedgeExecutor;
+
+    /**
+     * @param minBytesPerSecond throughput floor, 0 to disable stall detection.
+     * @param windowMillis      time a stream should stay below the floor to be reopened.
+     * @param maxReconnects     number of times a stream may be reopened before the read fails.
+     * @param hedgeDelayMillis  time without a first byte after which a duplicate request is sent, 0 to disable.
+     * @param transferMetrics   meters updated on reconnects, null to record nothing.
+     */
+    public StallDetector(final long minBytesPerSecond,
+                         final long windowMillis,
+                         final int maxReconnects,
+                         final long hedgeDelayMillis,
+                         final TransferMetrics transferMetrics) {
+        if (minBytesPerSecond < 0 || hedgeDelayMillis < 0) {
+            throw new IllegalArgumentException("Stall rate and hedge delay should not be negative, found %s and %s"
+                    .formatted(minBytesPerSecond, hedgeDelayMillis));
+        }
+        if (minBytesPerSecond > 0 && windowMillis < 1) {
+            throw new IllegalArgumentException("Stall window should be at least 1 ms, found %s".formatted(windowMillis));
+        }
+        this.minBytesPerSecond = minBytesPerSecond;
+        this.windowNanos = MILLISECONDS.toNanos(windowMillis);
+        this.maxReconnects = maxReconnects;
+        this.hedgeDelayNanos = MILLISECONDS.toNanos(hedgeDelayMillis);
+        this.transferMetrics = transferMetrics != null ? transferMetrics : TransferMetrics.noop();
+        this.streams = ConcurrentHashMap.newKeySet();
+        if (minBytesPerSecond > 0) {
+            final long checkIntervalMillis = max(1, min(MAX_CHECK_INTERVAL_MILLIS, windowMillis / 4));
+            this.watchdog = new ScheduledThreadPoolExecutor(1, daemonThreads("stall-watchdog"));
+            this.watchdog.scheduleWithFixedDelay(this::check, checkIntervalMillis, checkIntervalMillis, MILLISECONDS);
+        } else {
+            this.watchdog = null;
+        }
+        this.hedgeExecutor = hedgeDelayMillis > 0 ? newCachedThreadPool(daemonThreads("hedged-open")) : null;
+    }
+
+    public static StallDetector disabled() {
+        return new StallDetector(0, 0, 0, 0, null);
+    }
+
+    public boolean isEnabled() {
+        return watchdog != null || hedgeExecutor != null;
+    }
+
+    /**
+     * @param target file path, used in logs.
+     * @param opener opens the range from a given offset to {@code end}.
+     * @param start  offset of the first byte.
+     * @param end    offset of the last byte, inclusive.
+     * @return stream reopened from its current offset when it stalls, the stream of the opener if disabled.
+     * @throws IOException in case the stream cannot be opened.
+     */
+    public InputStream open(final String target,
+                            final RangeOpener opener,
+                            final long start,
+                            final long end) throws IOException {
+        if (!isEnabled()) {
+            return opener.open(start);
+        }
+        return new StallAwareInputStream(this, target, opener, start, end);
+    }
+
+    long getMinBytesPerSecond() {
+        return minBytesPerSecond;
+    }
+
+    long getWindowNanos() {
+        return windowNanos;
+    }
+
+    int getMaxReconnects() {
+        return maxReconnects;
+    }
+
+    long getHedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    ExecutorService getHedgeExecutor() {
+        return hedgeExecutor;
+    }
+
+    TransferMetrics getTransferMetrics() {
+        return transferMetrics;
+    }
+
+    void register(final StallAwareInputStream stream) {
+        if (watchdog != null) {
+            streams.add(stream);
+        }
+    }
+
+    void unregister(final StallAwareInputStream stream) {
+        streams.remove(stream);
+    }
+
+    private void check() {
+        final long now = System.nanoTime();
+        for (final StallAwareInputStream stream : streams) {
+            try {
+                stream.checkThroughput(now);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to check the throughput of {}. {}", stream, e.getMessage());
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "%s-%s".formatted(prefix, threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    public interface RangeOpener {
+        InputStream open(long start) throws IOException;
+    }
+}
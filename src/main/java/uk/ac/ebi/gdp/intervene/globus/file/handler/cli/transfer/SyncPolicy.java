@@ -0,0 +1,134 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumVerifier;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ExpectedChecksum;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getLastModifiedTime;
+import static java.nio.file.Files.size;
+import static java.util.stream.Collectors.toCollection;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer.DownloadJournal.JOURNAL_FILE_SUFFIX;
+
+/**
+ * Decides whether an existing destination file is already a complete copy of the Globus file, so
+ * that re-running a workflow skips the files it has already downloaded. Every configured criterion
+ * should match, a criterion that cannot be evaluated (e.g. no {@code Last-Modified} returned by the
+ * collection) counts as a mismatch. A destination with a download journal next to it is a partial
+ * download and is never in sync.
+ */
+public class SyncPolicy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncPolicy.class);
+    private final Set<Criterion> criteria;
+
+    public enum Criterion {
+        /**
+         * Destination size equals the size of the Globus file, not available for decrypted files.
+         */
+        SIZE,
+        /**
+         * Checksum sidecar of the destination matches the expected checksum, or any sidecar exists
+         * when no checksum is expected. Sidecars are only written once a download is verified.
+         */
+        CHECKSUM,
+        /**
+         * Destination was modified after the Globus file.
+         */
+        MTIME
+    }
+
+    public SyncPolicy(final Set<Criterion> criteria) {
+        this.criteria = criteria.isEmpty() ? Set.of() : EnumSet.copyOf(criteria);
+    }
+
+    /**
+     * @return policy under which a file is always downloaded.
+     */
+    public static SyncPolicy disabled() {
+        return new SyncPolicy(Set.of());
+    }
+
+    /**
+     * @param criteria comma separated criteria, e.g. {@code size,mtime}.
+     * @return parsed criteria.
+     */
+    public static Set<Criterion> parseCriteria(final String criteria) {
+        final Set<Criterion> parsedCriteria = Arrays.stream(criteria.split(","))
+                .map(String::strip)
+                .filter(criterion -> !criterion.isEmpty())
+                .map(criterion -> Criterion.valueOf(criterion.toUpperCase(Locale.ROOT)))
+                .collect(toCollection(() -> EnumSet.noneOf(Criterion.class)));
+        if (parsedCriteria.isEmpty()) {
+            throw new IllegalArgumentException("At least one sync criterion is required, found '%s'".formatted(criteria));
+        }
+        return parsedCriteria;
+    }
+
+    public boolean isEnabled() {
+        return !criteria.isEmpty();
+    }
+
+    public boolean requiresChecksum() {
+        return criteria.contains(Criterion.CHECKSUM);
+    }
+
+    /**
+     * @param destinationFile  local file the Globus file is downloaded to.
+     * @param remoteFile       attributes of the Globus file.
+     * @param destinationSize  size of the destination once downloaded, -1 if it cannot be derived from the Globus file.
+     * @param expectedChecksum checksum the destination should match, null if none is known.
+     * @param checksumVerifier verifier reading the checksum sidecars of the destination.
+     * @return true if the destination is already a complete copy of the Globus file.
+     * @throws IOException in case destination attributes cannot be read.
+     */
+    public boolean isInSync(final Path destinationFile,
+                            final RemoteFile remoteFile,
+                            final long destinationSize,
+                            final ExpectedChecksum expectedChecksum,
+                            final ChecksumVerifier checksumVerifier) throws IOException {
+        if (!isEnabled() || !exists(destinationFile)
+                || exists(destinationFile.resolveSibling(destinationFile.getFileName() + JOURNAL_FILE_SUFFIX))) {
+            return false;
+        }
+        for (final Criterion criterion : criteria) {
+            final boolean matches = switch (criterion) {
+                case SIZE -> destinationSize >= 0 && size(destinationFile) == destinationSize;
+                case CHECKSUM -> expectedChecksum != null ?
+                        expectedChecksum.value().equalsIgnoreCase(checksumVerifier.readSidecar(destinationFile, expectedChecksum.algorithm())) :
+                        checksumVerifier.hasSidecar(destinationFile);
+                case MTIME -> remoteFile.lastModified() != null
+                        && !getLastModifiedTime(destinationFile).toInstant().isBefore(remoteFile.lastModified());
+            };
+            if (!matches) {
+                LOGGER.info("Existing {} doesn't match by {}, downloading it again", destinationFile, criterion.name().toLowerCase(Locale.ROOT));
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculatorFactory;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumVerifier;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.compression.Decompressor;
+import uk.ac.ebi.gdp.intervene.globus.file.handler.cli.metrics.TransferMetrics;
+
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+
+import static java.util.Objects.requireNonNull;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumCalculatorFactory.defaultFactory;
+import static uk.ac.ebi.gdp.intervene.globus.file.handler.cli.checksum.ChecksumVerifier.defaultVerifier;
+
+/**
+ * Transfer options of {@link DefaultGlobusFileTransfer}, every option left unset keeps a plain
+ * single stream download without sync, decompression, rate limit or metrics.
+ */
+public class TransferOptions {
+    private static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final int parallelism;
+    private final long chunkSize;
+    private final boolean resume;
+    private final long checkpointInterval;
+    private final DirectBufferPool directBufferPool;
+    private final ChecksumCalculatorFactory checksumCalculatorFactory;
+    private final ChecksumVerifier checksumVerifier;
+    private final TransferTuner transferTuner;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final StallDetector stallDetector;
+    private final SyncPolicy syncPolicy;
+    private final Decompressor decompressor;
+    private final TransferMetrics transferMetrics;
+
+    private TransferOptions(final Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.chunkSize = builder.chunkSize;
+        this.resume = builder.resume;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.directBufferPool = builder.directBufferPool;
+        this.checksumCalculatorFactory = builder.checksumCalculatorFactory;
+        this.checksumVerifier = builder.checksumVerifier;
+        this.transferTuner = builder.transferTuner;
+        this.bandwidthLimiter = builder.bandwidthLimiter;
+        this.stallDetector = builder.stallDetector;
+        this.syncPolicy = builder.syncPolicy;
+        this.decompressor = builder.decompressor;
+        this.transferMetrics = builder.transferMetrics;
+    }
+
+    /**
+     * @return Builder instance with every option unset.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return options with every option unset.
+     */
+    public static TransferOptions defaults() {
+        return builder().build();
+    }
+
+    /**
+     * @return copy of these options downloading as a single stream through a {@link FileOutputStream},
+     * without parallel ranges, resume or direct buffers.
+     */
+    public TransferOptions singleStream() {
+        return builder()
+                .checksumCalculatorFactory(checksumCalculatorFactory)
+                .checksumVerifier(checksumVerifier)
+                .transferTuner(transferTuner)
+                .bandwidthLimiter(bandwidthLimiter)
+                .stallDetector(stallDetector)
+                .syncPolicy(syncPolicy)
+                .decompressor(decompressor)
+                .transferMetrics(transferMetrics)
+                .build();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return pool of direct buffers, null to write single stream downloads through a {@link FileOutputStream}.
+     */
+    public DirectBufferPool getDirectBufferPool() {
+        return directBufferPool;
+    }
+
+    public ChecksumCalculatorFactory getChecksumCalculatorFactory() {
+        return checksumCalculatorFactory;
+    }
+
+    public ChecksumVerifier getChecksumVerifier() {
+        return checksumVerifier;
+    }
+
+    /**
+     * @return transfer tuner, null to keep the buffer and pipe sizes of the transfer.
+     */
+    public TransferTuner getTransferTuner() {
+        return transferTuner;
+    }
+
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    public StallDetector getStallDetector() {
+        return stallDetector;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    public Decompressor getDecompressor() {
+        return decompressor;
+    }
+
+    public TransferMetrics getTransferMetrics() {
+        return transferMetrics;
+    }
+
+    /**
+     * Builder class.
+     */
+    public static class Builder {
+        private int parallelism = 1;
+        private long chunkSize = DEFAULT_CHUNK_SIZE;
+        private boolean resume;
+        private long checkpointInterval = DEFAULT_CHUNK_SIZE;
+        private DirectBufferPool directBufferPool;
+        private ChecksumCalculatorFactory checksumCalculatorFactory = defaultFactory();
+        private ChecksumVerifier checksumVerifier = defaultVerifier();
+        private TransferTuner transferTuner;
+        private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.unlimited();
+        private StallDetector stallDetector = StallDetector.disabled();
+        private SyncPolicy syncPolicy = SyncPolicy.disabled();
+        private Decompressor decompressor = Decompressor.disabled();
+        private TransferMetrics transferMetrics = TransferMetrics.noop();
+
+        private Builder() {
+        }
+
+        /**
+         * @param parallelism number of ranges downloaded concurrently, 1 for a single stream.
+         * @return Builder instance.
+         */
+        public Builder parallelism(final int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param chunkSize size of the ranges downloaded concurrently.
+         * @return Builder instance.
+         */
+        public Builder chunkSize(final long chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param resume true to keep partial downloads and resume them from their journal.
+         * @return Builder instance.
+         */
+        public Builder resume(final boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * @param checkpointInterval bytes written between two checkpoints of a single stream journal.
+         * @return Builder instance.
+         */
+        public Builder checkpointInterval(final long checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * @param directBufferPool pool of direct buffers used to write single stream downloads through a
+         *                         {@link FileChannel}, null to write through a {@link FileOutputStream}.
+         * @return Builder instance.
+         */
+        public Builder directBufferPool(final DirectBufferPool directBufferPool) {
+            this.directBufferPool = directBufferPool;
+            return this;
+        }
+
+        /**
+         * @param checksumCalculatorFactory checksums computed while downloading.
+         * @return Builder instance.
+         */
+        public Builder checksumCalculatorFactory(final ChecksumCalculatorFactory checksumCalculatorFactory) {
+            this.checksumCalculatorFactory = requireNonNull(checksumCalculatorFactory, "Checksum calculator factory cannot be null");
+            return this;
+        }
+
+        /**
+         * @param checksumVerifier verifies downloads against their expected checksum and writes sidecars.
+         * @return Builder instance.
+         */
+        public Builder checksumVerifier(final ChecksumVerifier checksumVerifier) {
+            this.checksumVerifier = requireNonNull(checksumVerifier, "Checksum verifier cannot be null");
+            return this;
+        }
+
+        /**
+         * @param transferTuner tunes the copy buffer and pipe sizes while downloading, null to keep the
+         *                      buffer and pipe sizes of the transfer.
+         * @return Builder instance.
+         */
+        public Builder transferTuner(final TransferTuner transferTuner) {
+            this.transferTuner = transferTuner;
+            return this;
+        }
+
+        /**
+         * @param bandwidthLimiter limits the rate at which bytes are read from Globus.
+         * @return Builder instance.
+         */
+        public Builder bandwidthLimiter(final BandwidthLimiter bandwidthLimiter) {
+            this.bandwidthLimiter = requireNonNull(bandwidthLimiter, "Bandwidth limiter cannot be null");
+            return this;
+        }
+
+        /**
+         * @param stallDetector reopens stalled Globus streams.
+         * @return Builder instance.
+         */
+        public Builder stallDetector(final StallDetector stallDetector) {
+            this.stallDetector = requireNonNull(stallDetector, "Stall detector cannot be null");
+            return this;
+        }
+
+        /**
+         * @param syncPolicy skips files already present at the destination.
+         * @return Builder instance.
+         */
+        public Builder syncPolicy(final SyncPolicy syncPolicy) {
+            this.syncPolicy = requireNonNull(syncPolicy, "Sync policy cannot be null");
+            return this;
+        }
+
+        /**
+         * @param decompressor decompresses files while downloading, downloads are then written as a single stream.
+         * @return Builder instance.
+         */
+        public Builder decompressor(final Decompressor decompressor) {
+            this.decompressor = requireNonNull(decompressor, "Decompressor cannot be null");
+            return this;
+        }
+
+        /**
+         * @param transferMetrics meters updated while downloading.
+         * @return Builder instance.
+         */
+        public Builder transferMetrics(final TransferMetrics transferMetrics) {
+            this.transferMetrics = requireNonNull(transferMetrics, "Transfer metrics cannot be null");
+            return this;
+        }
+
+        /**
+         * @return TransferOptions instance.
+         */
+        public TransferOptions build() {
+            return new TransferOptions(this);
+        }
+    }
+}
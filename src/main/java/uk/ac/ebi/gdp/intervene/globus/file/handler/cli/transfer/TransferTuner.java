@@ -0,0 +1,235 @@
+/*
+ *
+ * Copyright 2024 EMBL - European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package uk.ac.ebi.gdp.intervene.globus.file.handler.cli.transfer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Tunes the copy buffer size and the {@link uk.ac.ebi.gdp.file.handler.core.stream.RetryInputStream}
+ * pipe size from the throughput measured over the first seconds of each download. The buffer size
+ * is doubled while throughput keeps improving, halved when the first step up doesn't help, and the
+ * best size is kept once throughput stops improving or the tuning period is over. The pipe size
+ * follows the buffer size in the configured ratio. A new buffer size applies from the next read,
+ * a new pipe size from the next stream opened. Settled values are the starting point of the next
+ * download.
+ */
+public class TransferTuner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferTuner.class);
+    private static final double MIN_IMPROVEMENT = 0.05;
+    private static final double BYTES_PER_MEBIBYTE = 1024 * 1024;
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final int minPipeSize;
+    private final int maxPipeSize;
+    private final double pipeSizeRatio;
+    private final long sampleIntervalNanos;
+    private final long tuningPeriodNanos;
+    private volatile int bufferSize;
+    private volatile int pipeSize;
+
+    /**
+     * @param bufferSize           initial copy buffer size in bytes.
+     * @param pipeSize             initial pipe size in bytes.
+     * @param minBufferSize        smallest copy buffer size tried.
+     * @param maxBufferSize        largest copy buffer size tried.
+     * @param minPipeSize          smallest pipe size used.
+     * @param maxPipeSize          largest pipe size used.
+     * @param sampleIntervalMillis period over which each throughput sample is measured.
+     * @param tuningPeriodMillis   time after which the best size found so far is kept, 0 disables tuning.
+     */
+    public TransferTuner(final int bufferSize,
+                         final int pipeSize,
+                         final int minBufferSize,
+                         final int maxBufferSize,
+                         final int minPipeSize,
+                         final int maxPipeSize,
+                         final long sampleIntervalMillis,
+                         final long tuningPeriodMillis) {
+        if (minBufferSize < 1 || maxBufferSize < minBufferSize) {
+            throw new IllegalArgumentException("Invalid buffer size limits %s-%s".formatted(minBufferSize, maxBufferSize));
+        }
+        if (minPipeSize < 1 || maxPipeSize < minPipeSize) {
+            throw new IllegalArgumentException("Invalid pipe size limits %s-%s".formatted(minPipeSize, maxPipeSize));
+        }
+        if (sampleIntervalMillis < 1) {
+            throw new IllegalArgumentException("Sample interval should be at least 1 ms, found %s".formatted(sampleIntervalMillis));
+        }
+        this.minBufferSize = minBufferSize;
+        this.maxBufferSize = maxBufferSize;
+        this.minPipeSize = minPipeSize;
+        this.maxPipeSize = maxPipeSize;
+        this.bufferSize = clamp(bufferSize, minBufferSize, maxBufferSize);
+        this.pipeSize = clamp(pipeSize, minPipeSize, maxPipeSize);
+        this.pipeSizeRatio = (double) this.pipeSize / this.bufferSize;
+        this.sampleIntervalNanos = MILLISECONDS.toNanos(sampleIntervalMillis);
+        this.tuningPeriodNanos = MILLISECONDS.toNanos(tuningPeriodMillis);
+    }
+
+    /**
+     * @return tuner keeping the given sizes.
+     */
+    public static TransferTuner fixed(final int bufferSize,
+                                      final int pipeSize) {
+        return new TransferTuner(bufferSize, pipeSize, bufferSize, bufferSize, pipeSize, pipeSize, 1, 0);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getPipeSize() {
+        return pipeSize;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * @param name name of the download, used in logs.
+     * @return tuning session of a single download, safe to share between the streams of the download.
+     */
+    public Session start(final String name) {
+        return new Session(name);
+    }
+
+    private int pipeSizeFor(final int copyBufferSize) {
+        return clamp((int) min(Integer.MAX_VALUE, round(copyBufferSize * pipeSizeRatio)), minPipeSize, maxPipeSize);
+    }
+
+    private static int clamp(final int value,
+                             final int lower,
+                             final int upper) {
+        return max(lower, min(upper, value));
+    }
+
+    public class Session implements AutoCloseable {
+        private final String name;
+        private final long startNanos;
+        private volatile boolean settled;
+        private volatile int currentBufferSize;
+        private long sampleStartNanos;
+        private long sampleBytes;
+        private int samples;
+        private int bestBufferSize;
+        private double bestThroughput;
+        private boolean improved;
+        private boolean growing;
+
+        private Session(final String name) {
+            this.name = name;
+            this.startNanos = System.nanoTime();
+            this.currentBufferSize = bufferSize;
+            this.bestBufferSize = currentBufferSize;
+            this.bestThroughput = -1;
+            this.growing = true;
+            this.settled = tuningPeriodNanos == 0 || minBufferSize == maxBufferSize;
+        }
+
+        public int getBufferSize() {
+            return currentBufferSize;
+        }
+
+        public int getPipeSize() {
+            return pipeSizeFor(currentBufferSize);
+        }
+
+        public int getMaxBufferSize() {
+            return maxBufferSize;
+        }
+
+        /**
+         * @param bytes number of bytes just read.
+         */
+        public void record(final int bytes) {
+            if (settled) {
+                return;
+            }
+            synchronized (this) {
+                if (settled) {
+                    return;
+                }
+                final long now = System.nanoTime();
+                if (sampleStartNanos == 0) {
+                    // the first sample starts with the first bytes, leaving out the connection setup
+                    sampleStartNanos = now;
+                    return;
+                }
+                sampleBytes += bytes;
+                if (now - sampleStartNanos < sampleIntervalNanos) {
+                    return;
+                }
+                final double throughput = sampleBytes * 1e9 / (now - sampleStartNanos);
+                sampleStartNanos = now;
+                sampleBytes = 0;
+                samples++;
+                if (bestThroughput < 0 || throughput > bestThroughput * (1 + MIN_IMPROVEMENT)) {
+                    improved = bestThroughput >= 0;
+                    bestThroughput = throughput;
+                    bestBufferSize = currentBufferSize;
+                    step();
+                } else if (!improved && growing) {
+                    growing = false;
+                    currentBufferSize = bestBufferSize;
+                    step();
+                } else {
+                    settle();
+                }
+                if (!settled && now - startNanos >= tuningPeriodNanos) {
+                    settle();
+                }
+            }
+        }
+
+        private void step() {
+            final int nextBufferSize = growing ?
+                    (int) min(maxBufferSize, 2L * currentBufferSize) :
+                    max(minBufferSize, currentBufferSize / 2);
+            if (nextBufferSize == currentBufferSize) {
+                settle();
+            } else {
+                currentBufferSize = nextBufferSize;
+            }
+        }
+
+        private void settle() {
+            settled = true;
+            currentBufferSize = bestBufferSize;
+            bufferSize = bestBufferSize;
+            pipeSize = pipeSizeFor(bestBufferSize);
+            LOGGER.info("Auto-tuning of {} settled on copy buffer size {} and pipe size {} after {} samples, {} MiB/s",
+                    name, bufferSize, pipeSize, samples, "%.1f".formatted(bestThroughput / BYTES_PER_MEBIBYTE));
+        }
+
+        /**
+         * Keeps the best size measured so far when the download ends before tuning settled.
+         */
+        @Override
+        public synchronized void close() {
+            if (!settled && samples > 0) {
+                settle();
+            }
+        }
+    }
+}